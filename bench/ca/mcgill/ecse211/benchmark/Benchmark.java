@@ -0,0 +1,145 @@
+package ca.mcgill.ecse211.benchmark;
+
+/**
+ * This class is a small microbenchmark harness for the hot paths of the robot. A benchmark runs
+ * {@link #run(int)} in batches: a few warmup iterations let the JIT compile the code, then the
+ * measured iterations report the mean time per operation and its spread.
+ * <p>
+ * Results are fed to {@link #consume(double)} so that the JIT cannot remove the measured work as
+ * dead code.
+ *
+ */
+public abstract class Benchmark {
+  private static final int WARMUP_ITERATIONS = 5;
+  private static final int MEASURED_ITERATIONS = 10;
+  private static final long ITERATION_TIME = 200000000L; // in ns
+
+  private final String name;
+  private volatile double sink = 0;
+  private double accumulator = 0;
+
+  /**
+   * @param name the name printed with the results
+   */
+  public Benchmark(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Runs the benchmarked operation a number of times.
+   *
+   * @param operations the number of times to run the operation
+   */
+  protected abstract void run(int operations);
+
+  /**
+   * Keeps a result alive so the work producing it is not optimized away.
+   *
+   * @param value the result of an operation
+   */
+  protected final void consume(double value) {
+    accumulator += value;
+  }
+
+  /**
+   * @return the name of the benchmark
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Warms up and measures the benchmark.
+   *
+   * @return the results, in ns per operation
+   */
+  public Result measure() {
+    int batch = calibrate();
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      iteration(batch);
+    }
+    double[] samples = new double[MEASURED_ITERATIONS];
+    for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+      samples[i] = iteration(batch);
+    }
+    sink = accumulator;
+    return new Result(name, samples);
+  }
+
+  /**
+   * Finds a batch size so that one iteration takes about ITERATION_TIME.
+   */
+  private int calibrate() {
+    int batch = 1;
+    while (true) {
+      long start = System.nanoTime();
+      run(batch);
+      long elapsed = System.nanoTime() - start;
+      if (elapsed > ITERATION_TIME / 10 || batch >= Integer.MAX_VALUE / 20) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, batch * ITERATION_TIME / Math.max(1, elapsed)));
+      }
+      batch *= 2;
+    }
+  }
+
+  /**
+   * @return the mean time of one operation in ns
+   */
+  private double iteration(int batch) {
+    long start = System.nanoTime();
+    run(batch);
+    return (System.nanoTime() - start) / (double) batch;
+  }
+
+  /**
+   * This class holds the measured times of a benchmark.
+   */
+  public static class Result {
+    private final String name;
+    private final double mean;
+    private final double error;
+    private final double min;
+
+    private Result(String name, double[] samples) {
+      this.name = name;
+      double sum = 0;
+      double min = Double.MAX_VALUE;
+      for (double sample : samples) {
+        sum += sample;
+        min = Math.min(min, sample);
+      }
+      this.mean = sum / samples.length;
+      double variance = 0;
+      for (double sample : samples) {
+        variance += (sample - mean) * (sample - mean);
+      }
+      this.error = Math.sqrt(variance / (samples.length - 1));
+      this.min = min;
+    }
+
+    /**
+     * @return the mean time per operation in ns
+     */
+    public double getMean() {
+      return mean;
+    }
+
+    /**
+     * @return the standard deviation of the iteration means in ns
+     */
+    public double getError() {
+      return error;
+    }
+
+    /**
+     * @return the fastest iteration mean in ns
+     */
+    public double getMin() {
+      return min;
+    }
+
+    public String toString() {
+      return String.format("%-32s %10.2f ns/op  +- %8.2f  (min %.2f)", name, mean, error, min);
+    }
+  }
+}
@@ -0,0 +1,235 @@
+package ca.mcgill.ecse211.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import ca.mcgill.ecse211.game.ColorClassifier;
+import ca.mcgill.ecse211.game.ColorDetector;
+import ca.mcgill.ecse211.game.ColorDetector.Color;
+import ca.mcgill.ecse211.game.Game;
+import ca.mcgill.ecse211.game.Navigation;
+import ca.mcgill.ecse211.odometer.Odometer;
+import ca.mcgill.ecse211.odometer.OdometerData;
+import ca.mcgill.ecse211.odometer.OdometerExceptions;
+import ca.mcgill.ecse211.simulation.SimulatedField;
+import ca.mcgill.ecse211.simulation.SimulatedPlatform;
+import ca.mcgill.ecse211.simulation.SimulatedRobot;
+import ca.mcgill.ecse211.threads.SensorData;
+
+/**
+ * This class benchmarks the math and data access paths that run on every poller or odometer
+ * period. It runs on a desktop JVM against a {@link SimulatedPlatform} whose robot is never
+ * started, so no motor moves and no sensor thread competes for the CPU.
+ * <p>
+ * Usage: {@code CoreBenchmarks [filter]}. Only the benchmarks whose name contains the filter are
+ * run.
+ *
+ */
+public class CoreBenchmarks {
+  private static final long SEED = 211;
+  private static final int COLOR_SAMPLES = 256;
+
+  public static void main(String[] args) throws OdometerExceptions {
+    String filter = args.length > 0 ? args[0] : "";
+    for (Benchmark benchmark : create()) {
+      if (benchmark.getName().contains(filter)) {
+        System.out.println(benchmark.measure());
+      }
+    }
+    System.exit(0);
+  }
+
+  /**
+   * Sets up the simulated platform and the singletons the benchmarks use.
+   *
+   * @return the benchmarks, in the order they should run
+   * @throws OdometerExceptions
+   */
+  public static List<Benchmark> create() throws OdometerExceptions {
+    SimulatedRobot robot = new SimulatedRobot(new SimulatedField(8, 8), Game.TILE / 2,
+        Game.TILE / 2, 0);
+    SimulatedPlatform platform = new SimulatedPlatform(robot, SEED);
+    Game.usePlatform(platform);
+
+    final Odometer odometer = Odometer.getOdometer(robot.getLeftMotor(), robot.getRightMotor(),
+        Game.TRACK, Game.WHEEL_RAD);
+    final OdometerData odoData = OdometerData.getOdometerData();
+    final SensorData sensorData = SensorData.getSensorData();
+    sensorData.setL(new double[] {0.4, 0.4});
+    sensorData.setRGB(0.026f, 0.102f, 0.107f);
+    final ColorDetector detector = new ColorDetector(robot.getLeftMotor(), robot.getRightMotor(),
+        robot.getElbowMotor(), robot.getForeArmMotor());
+
+    List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+    benchmarks.add(new Benchmark("odometer.getXYT") {
+      protected void run(int operations) {
+        for (int i = 0; i < operations; i++) {
+          consume(odoData.getXYT()[0]);
+        }
+      }
+    });
+    benchmarks.add(new Benchmark("odometer.readInto") {
+      private final double[] position = new double[3];
+
+      protected void run(int operations) {
+        for (int i = 0; i < operations; i++) {
+          odoData.readInto(position);
+          consume(position[0]);
+        }
+      }
+    });
+    benchmarks.add(new Benchmark("odometer.update") {
+      protected void run(int operations) {
+        for (int i = 0; i < operations; i++) {
+          odoData.update(0.001, -0.001, 0.1);
+        }
+      }
+    });
+    benchmarks.add(new Benchmark("odometer.setXYT") {
+      protected void run(int operations) {
+        for (int i = 0; i < operations; i++) {
+          odoData.setXYT(1, 1, i % 360);
+        }
+      }
+    });
+    benchmarks.add(new Benchmark("odometer.tick") {
+      protected void run(int operations) {
+        for (int i = 0; i < operations; i++) {
+          odometer.tick();
+        }
+      }
+    });
+    benchmarks.add(new Benchmark("sensor.getL") {
+      protected void run(int operations) {
+        for (int i = 0; i < operations; i++) {
+          consume(sensorData.getL()[0]);
+        }
+      }
+    });
+    benchmarks.add(new Benchmark("sensor.getRGB") {
+      protected void run(int operations) {
+        for (int i = 0; i < operations; i++) {
+          consume(sensorData.getRGB()[0]);
+        }
+      }
+    });
+    benchmarks.add(new Benchmark("sensor.setRGB") {
+      protected void run(int operations) {
+        for (int i = 0; i < operations; i++) {
+          sensorData.setRGB(0.026f, 0.102f, i);
+        }
+      }
+    });
+    benchmarks.add(new Benchmark("color.detectColor") {
+      protected void run(int operations) {
+        sensorData.setRGB(0.026f, 0.102f, 0.107f);
+        for (int i = 0; i < operations; i++) {
+          detector.detectColor();
+        }
+      }
+    });
+    final float[] rgbSamples = randomColors(COLOR_SAMPLES);
+    final ColorClassifier classifier = new ColorClassifier();
+    benchmarks.add(new Benchmark("color.sortBased") {
+      protected void run(int operations) {
+        for (int i = 0; i < operations; i++) {
+          int s = 3 * (i % COLOR_SAMPLES);
+          consume(sortBased(rgbSamples[s], rgbSamples[s + 1], rgbSamples[s + 2]).ordinal());
+        }
+      }
+    });
+    benchmarks.add(new Benchmark("color.classify") {
+      private final ColorClassifier.Result result = new ColorClassifier.Result();
+
+      protected void run(int operations) {
+        for (int i = 0; i < operations; i++) {
+          int s = 3 * (i % COLOR_SAMPLES);
+          consume(classifier.classify(rgbSamples[s], rgbSamples[s + 1], rgbSamples[s + 2], result)
+              .ordinal());
+        }
+      }
+    });
+    benchmarks.add(new Benchmark("color.classifyBatch") {
+      private final Color[] colors = new Color[COLOR_SAMPLES];
+      private final double[] confidences = new double[COLOR_SAMPLES];
+
+      protected void run(int operations) {
+        // one operation is one sample, like the benchmarks above
+        for (int done = 0; done < operations; done += COLOR_SAMPLES) {
+          int count = Math.min(COLOR_SAMPLES, operations - done);
+          classifier.classify(rgbSamples, count, colors, confidences);
+          consume(confidences[0]);
+        }
+      }
+    });
+    benchmarks.add(new Benchmark("navigation.convertDistance") {
+      protected void run(int operations) {
+        for (int i = 0; i < operations; i++) {
+          consume(Navigation.convertDistance(Game.WHEEL_RAD, i & 0xff));
+        }
+      }
+    });
+    benchmarks.add(new Benchmark("navigation.convertAngle") {
+      protected void run(int operations) {
+        for (int i = 0; i < operations; i++) {
+          consume(Navigation.convertAngle(Game.WHEEL_RAD, Game.TRACK, i % 360));
+        }
+      }
+    });
+    return benchmarks;
+  }
+
+  /**
+   * @return count random RGB samples around the ring colors
+   */
+  private static float[] randomColors(int count) {
+    float[][] rings = {{0.026f, 0.102f, 0.107f}, {0.07f, 0.126f, 0.027f},
+        {0.18f, 0.105f, 0.03f}, {0.12f, 0.035f, 0.014f}, {0.013f, 0.001f, 0.008f}};
+    Random random = new Random(SEED);
+    float[] samples = new float[3 * count];
+    for (int i = 0; i < 3 * count; i++) {
+      samples[i] = rings[(i / 3) % rings.length][i % 3] * (float) (1 + 0.1 * random.nextGaussian());
+    }
+    return samples;
+  }
+
+  /**
+   * This method is the sort-based color classification ColorDetector used before
+   * {@link ColorClassifier}, kept as the baseline of the color benchmarks.
+   */
+  private static Color sortBased(float R, float G, float B) {
+    double nR = R / (Math.sqrt(R * R + G * G + B * B));
+    double nG = G / (Math.sqrt(R * R + G * G + B * B));
+    double nB = B / (Math.sqrt(R * R + G * G + B * B));
+    double dBlue = Math.sqrt(Math.pow(nR - 0.1732410055, 2) + Math.pow(nG - 0.6778531281, 2)
+        + Math.pow(nB - 0.7144947101, 2));
+    double dGreen = Math.sqrt(Math.pow(nR - 0.4777487339, 2) + Math.pow(nG - 0.8592604804, 2)
+        + Math.pow(nB - 0.1828320925, 2));
+    double dYellow = Math.sqrt(Math.pow(nR - 0.8541708187, 2) + Math.pow(nG - 0.5005476676, 2)
+        + Math.pow(nB - 0.140869603, 2));
+    double dOrange = Math.sqrt(Math.pow(nR - 0.9547663589, 2) + Math.pow(nG - 0.2766071505, 2)
+        + Math.pow(nB - 0.1091314998, 2));
+    double dEmpty = Math.sqrt(Math.pow(nR - 0.1345000000, 2) + Math.pow(nG - 0.0122500000, 2)
+        + Math.pow(nB - 0.0855000000, 2));
+    double[] list = {dBlue, dGreen, dYellow, dOrange, dEmpty};
+    Arrays.sort(list);
+    if (list[0] == dBlue) {
+      return Color.Blue;
+    }
+    if (list[0] == dGreen) {
+      return Color.Green;
+    }
+    if (list[0] == dYellow) {
+      return Color.Yellow;
+    }
+    if (list[0] == dOrange) {
+      return Color.Orange;
+    }
+    if (list[0] == dEmpty) {
+      return Color.Empty;
+    }
+    return Color.Other;
+  }
+}
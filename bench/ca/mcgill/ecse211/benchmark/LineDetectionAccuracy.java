@@ -0,0 +1,125 @@
+package ca.mcgill.ecse211.benchmark;
+
+import java.util.Random;
+
+import ca.mcgill.ecse211.game.Game;
+import ca.mcgill.ecse211.simulation.SimulatedField;
+import ca.mcgill.ecse211.threads.LineDetector;
+
+/**
+ * This class measures where the back light sensors locate a grid line, at different wheel speeds
+ * and sampling periods. A sensor drives across a line of a {@link SimulatedField} with the noise of
+ * the simulated sensor, starting at a random phase of the sampling, and the position given by the
+ * tacho count of each detection is compared to the line. The first difference detector the light
+ * poller used before, which stamped a crossing with the sample that saw it, is compared to the
+ * {@link LineDetector}.
+ * <p>
+ * The sensor spot of the field is 1 mm wide, so the edge of a line is a step between two samples.
+ * A real sensor sees a wider spot, which makes the edge a ramp over several samples; the runs
+ * with a spot average the field over that width. The bias of a detector is an offset that the
+ * line width explains, and that can be calibrated if it is constant; the spread cannot.
+ * <p>
+ * Usage: {@code LineDetectionAccuracy [trials]}.
+ *
+ */
+public class LineDetectionAccuracy {
+  private static final long SEED = 211;
+  private static final double NOISE = 0.005; // of the simulated light sensor
+  private static final double START = -5; // distance of the start from the line, in cm
+  private static final double END = 5;
+  private static final int[] SPEEDS = {120, 240, 360, 480}; // wheel speeds in deg/s
+  private static final int[] PERIODS = {10, 30, 50}; // sampling periods in ms
+  private static final double[] SPOTS = {0, 0.6}; // widths of the sensor spot in cm
+  private static final int SPOT_POINTS = 13; // field readings averaged over a spot
+
+  // the detector used before: the change of the value times 100 over 30 ms below -5
+  private static final int OLD_THRESHOLD = -5;
+  private static final int OLD_SPAN = 30;
+
+  public static void main(String[] args) {
+    int trials = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+    SimulatedField field = new SimulatedField(8, 8);
+    Random random = new Random(SEED);
+    System.out.println(String.format("%-9s %4s %5s %6s %9s %11s %11s %8s", "detector", "spot",
+        "speed", "period", "bias (mm)", "spread (mm)", "worst (mm)", "missed"));
+    for (double spot : SPOTS) {
+      for (int speed : SPEEDS) {
+        for (int period : PERIODS) {
+          for (boolean adaptive : new boolean[] {false, true}) {
+            System.out.println(measure(field, random, spot, speed, period, adaptive, trials));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Drives the sensor across the line at x = 1 tile for each trial.
+   *
+   * @return a line of the report
+   */
+  private static String measure(SimulatedField field, Random random, double spot, int speed,
+      int period, boolean adaptive, int trials) {
+    double cmPerDegree = Math.PI * Game.WHEEL_RAD / 180;
+    double velocity = speed * cmPerDegree / 1000; // in cm/ms
+    double sum = 0;
+    double squares = 0;
+    double worst = 0;
+    int found = 0;
+    for (int trial = 0; trial < trials; trial++) {
+      LineDetector detector = new LineDetector();
+      int span = Math.max(1, Math.round((float) OLD_SPAN / period));
+      int[] raw = new int[span + 1];
+      double phase = random.nextDouble() * period;
+      double detected = Double.NaN;
+      for (int k = 0;; k++) {
+        double time = phase + k * period;
+        double position = START + velocity * time;
+        if (position > END) {
+          break;
+        }
+        double value = reflectance(field, position, spot) + random.nextGaussian() * NOISE;
+        value = Math.max(0, Math.min(1, value));
+        int tacho = (int) Math.floor((position - START) / cmPerDegree);
+        if (adaptive) {
+          if (detector.update(value, Math.round(time * 1e6), tacho)) {
+            detected = START + detector.getCrossingTacho() * cmPerDegree;
+            break;
+          }
+        } else {
+          raw[k % raw.length] = (int) (value * 100);
+          if (k >= span && raw[k % raw.length] - raw[(k - span) % raw.length] < OLD_THRESHOLD) {
+            detected = START + tacho * cmPerDegree;
+            break;
+          }
+        }
+      }
+      if (!Double.isNaN(detected)) {
+        double error = detected * 10; // from the center of the line, in mm
+        found++;
+        sum += error;
+        squares += error * error;
+        worst = Math.max(worst, Math.abs(error));
+      }
+    }
+    double bias = found > 0 ? sum / found : Double.NaN;
+    double spread = found > 0 ? Math.sqrt(Math.max(0, squares / found - bias * bias)) : Double.NaN;
+    return String.format("%-9s %4.1f %5d %6d %9.2f %11.2f %11.2f %8d",
+        adaptive ? "adaptive" : "first", spot, speed, period, bias, spread, worst, trials - found);
+  }
+
+  /**
+   * @return the reflectance averaged over a spot centered at a distance from the line, in cm
+   */
+  private static double reflectance(SimulatedField field, double position, double spot) {
+    if (spot == 0) {
+      return field.reflectance(Game.TILE + position, Game.TILE / 2);
+    }
+    double sum = 0;
+    for (int i = 0; i < SPOT_POINTS; i++) {
+      double offset = spot * ((double) i / (SPOT_POINTS - 1) - 0.5);
+      sum += field.reflectance(Game.TILE + position + offset, Game.TILE / 2);
+    }
+    return sum / SPOT_POINTS;
+  }
+}
@@ -0,0 +1,170 @@
+package ca.mcgill.ecse211.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import ca.mcgill.ecse211.game.Game;
+import ca.mcgill.ecse211.game.Navigation;
+import ca.mcgill.ecse211.hardware.Clock;
+import ca.mcgill.ecse211.hardware.Motor;
+import ca.mcgill.ecse211.hardware.SampleSource;
+import ca.mcgill.ecse211.metrics.LatencyHistogram;
+import ca.mcgill.ecse211.metrics.Metrics;
+import ca.mcgill.ecse211.odometer.Odometer;
+import ca.mcgill.ecse211.odometer.OdometerExceptions;
+import ca.mcgill.ecse211.simulation.SimulatedPlatform;
+import ca.mcgill.ecse211.simulation.Simulation;
+import ca.mcgill.ecse211.threads.LightPoller;
+import ca.mcgill.ecse211.threads.LineCrossingMonitor;
+import ca.mcgill.ecse211.threads.PollerScheduler;
+import ca.mcgill.ecse211.threads.SensorData;
+
+/**
+ * This class compares the two ways of driving to a grid line on the same simulated light sensor
+ * feed: the loop Navigation used before the line crossing events, which reads the light values
+ * as fast as it can, and {@link Navigation#driveToLine(boolean)}, which sleeps on the
+ * {@link LineCrossingMonitor}. The simulated robot drives back and forth over two lines, with the
+ * two methods taking turns, and only the odometer and the back light poller run.
+ * <p>
+ * For each method the number of times the driving thread checked the lines, its CPU time and the
+ * time from a line crossing to the stop of the wheel are printed. The stop latency is measured as
+ * driveToLine records it in "navigation.line.stop", from the time of the crossing
+ * interpolated by the light poller. Heading control is off, so both methods only wait for lines.
+ * <p>
+ * Usage: {@code LineWaitComparison [drives] [time scale]}. The defaults are 8 drives of each
+ * method and a time scale of 4.
+ *
+ */
+public class LineWaitComparison {
+  private static final int SPEED = 120; // the speed Navigation drives to lines at, in deg/s
+  private static final double SPIN_THRESHOLD = -5; // line threshold of the old loop
+  private static final long LIGHT_PHASE = 5; // in ms
+  private static final int LINES = 2; // lines crossed before turning around
+
+  private static SensorData data;
+  private static LineCrossingMonitor lines;
+  private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+  public static void main(String[] args) throws OdometerExceptions {
+    int drives = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+    double timeScale = args.length > 1 ? Double.parseDouble(args[1]) : 4;
+    Navigation.setHeadingControl(false);
+    SimulatedPlatform platform = Simulation.setUp(timeScale, 0);
+    Navigation navigation = setUp(platform);
+
+    Motor leftMotor = Game.leftMotor;
+    Motor rightMotor = Game.rightMotor;
+    LatencyHistogram awaitLatency = Metrics.histogram("navigation.line.stop");
+    LatencyHistogram awaitWakeups = Metrics.histogram("navigation.line.wakeups");
+    LatencyHistogram spinLatency = Metrics.histogram("benchmark.spin.stop.latency");
+    long spinChecks = 0;
+    long spinCpu = 0;
+    long spinTime = 0;
+    long awaitCpu = 0;
+    long awaitTime = 0;
+    for (int drive = 0; drive < 2 * drives; drive++) {
+      leftMotor.setSpeed(SPEED);
+      rightMotor.setSpeed(SPEED);
+      long cpu = threads.getCurrentThreadCpuTime();
+      long start = Clock.millis();
+      if (drive % 2 == 0) {
+        spinChecks += spinToLine(leftMotor, rightMotor, spinLatency);
+        spinCpu += threads.getCurrentThreadCpuTime() - cpu;
+        spinTime += Clock.millis() - start;
+      } else {
+        navigation.driveToLine(true);
+        awaitCpu += threads.getCurrentThreadCpuTime() - cpu;
+        awaitTime += Clock.millis() - start;
+      }
+      if (drive % LINES == LINES - 1) {
+        navigation.turn(180);
+      }
+    }
+
+    System.out.println(String.format("%-12s %6s %10s %10s %8s %6s %10s %10s", "method", "drives",
+        "checks", "cpu (ms)", "cpu (%)", "stops", "stop (ms)", "max (ms)"));
+    System.out.println(String.format("%-12s %6d %10.1f %10.1f %8.2f %6d %10.1f %10.1f", "spin",
+        drives, (double) spinChecks / drives, spinCpu / 1e6 / drives,
+        cpuShare(spinCpu, spinTime, timeScale), spinLatency.getCount(),
+        spinLatency.getMean() / 1e6, spinLatency.getMax() / 1e6));
+    System.out.println(String.format("%-12s %6d %10.1f %10.1f %8.2f %6d %10.1f %10.1f",
+        "driveToLine", drives, (double) awaitWakeups.getMean(), awaitCpu / 1e6 / drives,
+        cpuShare(awaitCpu, awaitTime, timeScale), awaitLatency.getCount(),
+        awaitLatency.getMean() / 1e6, awaitLatency.getMax() / 1e6));
+    System.exit(0);
+  }
+
+  /**
+   * Starts the odometer and the back light poller on the simulated robot, with the odometer on
+   * the true pose.
+   *
+   * @return the navigation that drives the robot
+   */
+  private static Navigation setUp(SimulatedPlatform platform) throws OdometerExceptions {
+    final Odometer odometer =
+        Odometer.getOdometer(Game.leftMotor, Game.rightMotor, Game.TRACK, Game.WHEEL_RAD);
+    double[] pose = new double[3];
+    platform.getRobot().readPose(pose);
+    odometer.setXYT(pose[0] / Game.TILE, pose[1] / Game.TILE, pose[2]);
+    data = SensorData.getSensorData();
+    lines = data.getLineCrossings();
+    SampleSource[] backLight = platform.getBackLightSensors();
+    LightPoller lightPoller =
+        new LightPoller(backLight, new float[2][backLight[1].sampleSize()], data);
+    lightPoller.setWheels(Game.leftMotor, Game.rightMotor);
+    PollerScheduler scheduler = new PollerScheduler();
+    scheduler.schedule("odometer", new Runnable() {
+      public void run() {
+        odometer.tick();
+      }
+    }, Odometer.getPeriod(), 0);
+    scheduler.schedule("light", lightPoller, LIGHT_PHASE);
+    scheduler.start();
+    return new Navigation(Game.leftMotor, Game.rightMotor);
+  }
+
+  /**
+   * This method is the loop Navigation drove to a line with before the line crossing events, kept
+   * as the baseline: it reads the light values until each one drops below the threshold, and stops
+   * the wheel on that side. The first stop of each wheel is timed against the crossing that the
+   * light poller publishes for the same line.
+   *
+   * @return the number of times the light values were read
+   */
+  private static long spinToLine(Motor leftMotor, Motor rightMotor, LatencyHistogram latency) {
+    double[] lights = new double[2];
+    Motor[] wheels = {leftMotor, rightMotor};
+    long[] seen = {lines.getCount(LineCrossingMonitor.LEFT),
+        lines.getCount(LineCrossingMonitor.RIGHT)};
+    long[] stopped = {-1, -1};
+    long checks = 0;
+    leftMotor.forward();
+    rightMotor.forward();
+    while (leftMotor.isMoving() || rightMotor.isMoving()) {
+      data.readL(lights);
+      checks++;
+      for (int i = 0; i < 2; i++) {
+        if (lights[i] < SPIN_THRESHOLD) {
+          wheels[i].stop(true);
+          if (stopped[i] < 0) {
+            stopped[i] = Clock.millis();
+          }
+        }
+      }
+    }
+    for (int i = 0; i < 2; i++) {
+      // the crossing is published in the same poller run as the light value that stopped the wheel
+      if (stopped[i] >= 0 && lines.getCount(i) > seen[i]) {
+        latency.record((stopped[i] - lines.getTime(i)) * 1000000L);
+      }
+    }
+    return checks;
+  }
+
+  /**
+   * @return the CPU time of the driving thread over the real time it drove, in percent
+   */
+  private static double cpuShare(long cpu, long clockTime, double timeScale) {
+    return clockTime == 0 ? 0 : 100.0 * cpu / (clockTime / timeScale * 1e6);
+  }
+}
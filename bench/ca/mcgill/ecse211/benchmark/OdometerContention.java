@@ -0,0 +1,234 @@
+package ca.mcgill.ecse211.benchmark;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import ca.mcgill.ecse211.odometer.Odometer;
+import ca.mcgill.ecse211.odometer.OdometerData;
+import ca.mcgill.ecse211.odometer.OdometerExceptions;
+
+/**
+ * This class measures the pose reads of {@link OdometerData} while the pose is being written, the
+ * way the odometer and the navigation, localization and poller threads share it on the robot. One
+ * writer thread calls update at the odometer period and N reader threads read the pose in a loop.
+ * The sequence counter reads are compared with the fair lock and condition reads OdometerData used
+ * before, which are kept in {@link FairLockPose}.
+ * <p>
+ * For each case the mean and the worst time of a read and of an update are printed. The reads are
+ * timed one by one, which adds the same clock overhead to every case.
+ * <p>
+ * Usage: {@code OdometerContention [writer period ms] [readers]...}. The default period is the
+ * odometer period, 0 runs the writer back to back, and the default reader counts are 1, 2 and 4.
+ *
+ */
+public class OdometerContention {
+  private static final long WARMUP = 1000; // in ms
+  private static final long DURATION = 3000; // in ms
+
+  private static volatile double sink; // keeps the reads alive
+
+  /**
+   * The pose shared by the threads.
+   */
+  private interface Pose {
+    void read(double[] position);
+
+    void update(double dx, double dy, double dtheta);
+  }
+
+  public static void main(String[] args) throws OdometerExceptions, InterruptedException {
+    long period = args.length > 0 ? Long.parseLong(args[0]) : Odometer.ODOMETER_PERIOD;
+    int[] readerCounts = {1, 2, 4};
+    if (args.length > 1) {
+      readerCounts = new int[args.length - 1];
+      for (int i = 1; i < args.length; i++) {
+        readerCounts[i - 1] = Integer.parseInt(args[i]);
+      }
+    }
+    final OdometerData odoData = OdometerData.getOdometerData();
+    Pose seqlockCopy = new Pose() {
+      public void read(double[] position) {
+        odoData.readInto(position);
+      }
+
+      public void update(double dx, double dy, double dtheta) {
+        odoData.update(dx, dy, dtheta);
+      }
+    };
+    Pose seqlockArray = new Pose() {
+      public void read(double[] position) {
+        position[0] = odoData.getXYT()[0];
+      }
+
+      public void update(double dx, double dy, double dtheta) {
+        odoData.update(dx, dy, dtheta);
+      }
+    };
+    final FairLockPose locked = new FairLockPose();
+    Pose fairLock = new Pose() {
+      public void read(double[] position) {
+        position[0] = locked.getXYT()[0];
+      }
+
+      public void update(double dx, double dy, double dtheta) {
+        locked.update(dx, dy, dtheta);
+      }
+    };
+
+    System.out.println("writer period " + period + " ms");
+    System.out.println(String.format("%-18s %7s %12s %12s %12s %12s", "pose", "readers",
+        "read (ns)", "max (us)", "update (ns)", "max (us)"));
+    for (int readers : readerCounts) {
+      System.out.println(measure("fair lock getXYT", fairLock, readers, period));
+      System.out.println(measure("seqlock getXYT", seqlockArray, readers, period));
+      System.out.println(measure("seqlock readInto", seqlockCopy, readers, period));
+    }
+  }
+
+  /**
+   * Runs one writer and some readers on a pose, warms up, and measures.
+   *
+   * @return a line of results
+   */
+  private static String measure(String name, final Pose pose, int readers, final long period)
+      throws InterruptedException {
+    final Timer[] readTimes = new Timer[readers];
+    final Timer updateTimes = new Timer();
+    final long measureFrom = System.nanoTime() + WARMUP * 1000000L;
+    final long end = measureFrom + DURATION * 1000000L;
+
+    Thread writer = new Thread(new Runnable() {
+      public void run() {
+        long next = System.nanoTime();
+        while (true) {
+          long start = System.nanoTime();
+          if (start >= end) {
+            return;
+          }
+          pose.update(0.001, -0.001, 0.1);
+          updateTimes.record(start, System.nanoTime(), measureFrom);
+          if (period > 0) {
+            next += period * 1000000L;
+            LockSupport.parkNanos(next - System.nanoTime());
+          }
+        }
+      }
+    });
+    Thread[] threads = new Thread[readers];
+    for (int i = 0; i < readers; i++) {
+      final Timer timer = new Timer();
+      readTimes[i] = timer;
+      threads[i] = new Thread(new Runnable() {
+        public void run() {
+          double[] position = new double[3];
+          while (true) {
+            long start = System.nanoTime();
+            if (start >= end) {
+              return;
+            }
+            pose.read(position);
+            timer.record(start, System.nanoTime(), measureFrom);
+            timer.consume(position[0]);
+          }
+        }
+      });
+      threads[i].start();
+    }
+    writer.start();
+    writer.join();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Timer reads = new Timer();
+    for (Timer timer : readTimes) {
+      reads.add(timer);
+    }
+    sink = reads.sink;
+    return String.format("%-18s %7d %12.1f %12.1f %12.1f %12.1f", name, readers, reads.mean(),
+        reads.max / 1000.0, updateTimes.mean(), updateTimes.max / 1000.0);
+  }
+
+  /**
+   * This class sums the times of the operations of one thread.
+   */
+  private static class Timer {
+    private long count;
+    private long total;
+    private long max;
+    private double sink;
+
+    void record(long start, long end, long measureFrom) {
+      if (start < measureFrom) {
+        return; // warming up
+      }
+      long time = end - start;
+      count++;
+      total += time;
+      max = Math.max(max, time);
+    }
+
+    void consume(double value) {
+      sink += value;
+    }
+
+    void add(Timer timer) {
+      count += timer.count;
+      total += timer.total;
+      max = Math.max(max, timer.max);
+      sink += timer.sink;
+    }
+
+    double mean() {
+      return count == 0 ? 0 : (double) total / count;
+    }
+  }
+
+  /**
+   * This class is the pose storage OdometerData used before the sequence counter, kept as the
+   * baseline: readers and writers take the same fair lock, and readers wait on a condition while
+   * a write is in progress.
+   */
+  private static class FairLockPose {
+    private volatile double x;
+    private volatile double y;
+    private volatile double theta;
+    private final Lock lock = new ReentrantLock(true);
+    private volatile boolean isReseting = false;
+    private final Condition doneReseting = lock.newCondition();
+
+    double[] getXYT() {
+      double[] position = new double[4];
+      lock.lock();
+      try {
+        while (isReseting) {
+          doneReseting.await();
+        }
+        position[0] = x;
+        position[1] = y;
+        position[2] = theta;
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+      } finally {
+        lock.unlock();
+      }
+      return position;
+    }
+
+    void update(double dx, double dy, double dtheta) {
+      lock.lock();
+      isReseting = true;
+      try {
+        x += dx;
+        y += dy;
+        theta = (theta + (360 + dtheta) % 360) % 360;
+        isReseting = false;
+        doneReseting.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package ca.mcgill.ecse211.benchmark;
+
+import ca.mcgill.ecse211.game.Game;
+import ca.mcgill.ecse211.odometer.Odometer;
+
+/**
+ * This class measures how precise the odometry integration is at different update periods. A
+ * trajectory of straight runs, turns on the spot and arcs is generated with exact wheel angles,
+ * sampled every period as whole degree tacho counts, and integrated with the forward Euler model
+ * the odometer used before and with the arc model of
+ * {@link Odometer#integrate(double, double, double, double, double[])}. The pose errors are
+ * measured against the exact pose of the trajectory. The models are also run on the exact wheel
+ * angles, which separates their own error from the one of the tacho resolution.
+ * <p>
+ * Usage: {@code OdometryAccuracy [period ms]...}. The default periods are 5, 10, 25 and 50 ms.
+ *
+ */
+public class OdometryAccuracy {
+  private static final double STEP = 0.1; // of the exact trajectory, in ms
+
+  /**
+   * The segments of the trajectory: left wheel speed (deg/s), right wheel speed (deg/s), duration
+   * (ms). The speeds are those Navigation uses to drive, turn and correct.
+   */
+  private static final double[][] SEGMENTS = {
+      {250, 250, 4000}, {150, -150, 1200}, {250, 250, 2500}, {240, 180, 3000},
+      {-150, 150, 2400}, {250, 250, 3300}, {180, 240, 3000}, {150, -150, 600},
+      {-250, -250, 1500}, {210, 250, 5000}, {150, -150, 1800}, {250, 250, 4000}};
+
+  private final int samples;
+  private final double[] wheelL; // exact angles of the wheels in degrees
+  private final double[] wheelR;
+  private final double[][] pose; // exact pose in cm and degrees
+
+  public static void main(String[] args) {
+    long[] periods = {5, 10, 25, 50};
+    if (args.length > 0) {
+      periods = new long[args.length];
+      for (int i = 0; i < args.length; i++) {
+        periods[i] = Long.parseLong(args[i]);
+      }
+    }
+    OdometryAccuracy trajectory = new OdometryAccuracy();
+    System.out.println(String.format("%-6s %-6s %6s %11s %11s %11s %11s", "model", "tacho",
+        "period", "final (cm)", "max (cm)", "final (deg)", "max (deg)"));
+    for (long period : periods) {
+      for (boolean quantized : new boolean[] {true, false}) {
+        System.out.println(trajectory.measure(period, false, quantized));
+        System.out.println(trajectory.measure(period, true, quantized));
+      }
+    }
+  }
+
+  /**
+   * Generates the exact trajectory of the segments.
+   */
+  private OdometryAccuracy() {
+    double duration = 0;
+    for (double[] segment : SEGMENTS) {
+      duration += segment[2];
+    }
+    samples = (int) Math.round(duration / STEP) + 1;
+    wheelL = new double[samples];
+    wheelR = new double[samples];
+    pose = new double[samples][3];
+
+    // with constant wheel speeds the arc model is exact, so small steps follow the trajectory
+    double[] delta = new double[3];
+    int segment = 0;
+    double segmentEnd = SEGMENTS[0][2];
+    for (int i = 1; i < samples; i++) {
+      double time = i * STEP;
+      while (time > segmentEnd + 1e-9 && segment < SEGMENTS.length - 1) {
+        segment++;
+        segmentEnd += SEGMENTS[segment][2];
+      }
+      wheelL[i] = wheelL[i - 1] + SEGMENTS[segment][0] * STEP / 1000;
+      wheelR[i] = wheelR[i - 1] + SEGMENTS[segment][1] * STEP / 1000;
+      Odometer.integrate(pose[i - 1][2], distance(wheelL[i] - wheelL[i - 1]),
+          distance(wheelR[i] - wheelR[i - 1]), Game.TRACK, delta);
+      pose[i][0] = pose[i - 1][0] + delta[0];
+      pose[i][1] = pose[i - 1][1] + delta[1];
+      pose[i][2] = pose[i - 1][2] + delta[2];
+    }
+  }
+
+  /**
+   * Integrates the tacho counts sampled every period and compares the poses to the trajectory.
+   *
+   * @param period the odometer period in ms
+   * @param arc true for the arc model, false for the forward Euler model
+   * @param quantized true to sample whole degree tacho counts, false for the exact wheel angles
+   * @return a line of the report
+   */
+  private String measure(long period, boolean arc, boolean quantized) {
+    int stride = (int) Math.round(period / STEP);
+    double[] estimate = new double[3];
+    double[] delta = new double[3];
+    double tachoL = 0;
+    double tachoR = 0;
+    double maxPosition = 0;
+    double maxHeading = 0;
+    double position = 0;
+    double heading = 0;
+    for (int i = stride; i < samples; i += stride) {
+      double nowTachoL = quantized ? Math.floor(wheelL[i]) : wheelL[i];
+      double nowTachoR = quantized ? Math.floor(wheelR[i]) : wheelR[i];
+      if (arc) {
+        Odometer.integrate(estimate[2], distance(nowTachoL - tachoL), distance(nowTachoR - tachoR),
+            Game.TRACK, delta);
+      } else {
+        euler(estimate[2], nowTachoL - tachoL, nowTachoR - tachoR, delta);
+      }
+      tachoL = nowTachoL;
+      tachoR = nowTachoR;
+      for (int k = 0; k < 3; k++) {
+        estimate[k] += delta[k];
+      }
+      position = Math.hypot(estimate[0] - pose[i][0], estimate[1] - pose[i][1]);
+      heading = Math.abs(estimate[2] - pose[i][2]);
+      maxPosition = Math.max(maxPosition, position);
+      maxHeading = Math.max(maxHeading, heading);
+    }
+    return String.format("%-6s %-6s %6d %11.4f %11.4f %11.4f %11.4f", arc ? "arc" : "euler",
+        quantized ? "1 deg" : "exact", period, position, maxPosition, heading, maxHeading);
+  }
+
+  /**
+   * The integration the odometer used before the arc model: the whole turn is applied before the
+   * move, with pi rounded to 3.14159.
+   */
+  private static void euler(double theta, double tachoL, double tachoR, double[] delta) {
+    double distL = 3.14159 * Game.WHEEL_RAD * tachoL / 180;
+    double distR = 3.14159 * Game.WHEEL_RAD * tachoR / 180;
+    double deltaD = 0.5 * (distL + distR);
+    double deltaT = (distL - distR) / Game.TRACK;
+    double heading = Math.toRadians(theta) + deltaT;
+    delta[0] = deltaD * Math.sin(heading);
+    delta[1] = deltaD * Math.cos(heading);
+    delta[2] = Math.toDegrees(deltaT);
+  }
+
+  /**
+   * @return the distance driven by a wheel turning by the angle in degrees, in cm
+   */
+  private static double distance(double angle) {
+    return Math.PI * Game.WHEEL_RAD * angle / 180;
+  }
+}
@@ -0,0 +1,55 @@
+package ca.mcgill.ecse211.simulation;
+
+import java.util.Random;
+
+import ca.mcgill.ecse211.hardware.SampleSource;
+
+/**
+ * This class models the front color sensor in RGB mode. The sensor sees the ring hanging on the
+ * ring set when the elbow is lowered to the scanning position, and the dark background otherwise.
+ *
+ */
+public class SimulatedColorSensor implements SampleSource {
+  /**
+   * Elbow tacho count below which the sensor faces the ring
+   */
+  public static final int SCAN_POSITION = -100;
+
+  private static final float[] BACKGROUND = {0.012f, 0.010f, 0.008f};
+  private static final double NOISE = 0.003;
+
+  private final SimulatedRobot robot;
+  private final Random random;
+  private volatile float[] ring = BACKGROUND;
+
+  /**
+   * @param robot the robot the sensor is mounted on
+   * @param seed the seed of the sensor noise
+   */
+  public SimulatedColorSensor(SimulatedRobot robot, long seed) {
+    this.robot = robot;
+    this.random = new Random(seed);
+  }
+
+  /**
+   * Sets the raw RGB reading of the ring in front of the sensor.
+   * 
+   * @param r the red reading
+   * @param g the green reading
+   * @param b the blue reading
+   */
+  public void setRing(float r, float g, float b) {
+    ring = new float[] {r, g, b};
+  }
+
+  public int sampleSize() {
+    return 3;
+  }
+
+  public synchronized void fetchSample(float[] sample, int offset) {
+    float[] color = robot.getElbowMotor().getTachoCount() <= SCAN_POSITION ? ring : BACKGROUND;
+    for (int i = 0; i < 3; i++) {
+      sample[offset + i] = (float) Math.max(0, color[i] + random.nextGaussian() * NOISE);
+    }
+  }
+}
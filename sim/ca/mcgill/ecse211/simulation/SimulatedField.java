@@ -0,0 +1,106 @@
+package ca.mcgill.ecse211.simulation;
+
+import ca.mcgill.ecse211.game.Game;
+
+/**
+ * This class models the playing field: a rectangle of tiles surrounded by walls, with black grid
+ * lines every {@link Game#TILE} cm. The origin is the lower left corner, x points east and y
+ * points north.
+ *
+ */
+public class SimulatedField {
+  /**
+   * Width of a black grid line in cm
+   */
+  public static final double LINE_WIDTH = 0.8;
+
+  /**
+   * Red mode reading of the wooden tiles
+   */
+  public static final double TILE_REFLECTANCE = 0.45;
+
+  /**
+   * Red mode reading of a black line
+   */
+  public static final double LINE_REFLECTANCE = 0.08;
+
+  private final int width;
+  private final int height;
+
+  /**
+   * @param width the width of the field in tiles
+   * @param height the height of the field in tiles
+   */
+  public SimulatedField(int width, int height) {
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * @return the width of the field in tiles
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * @return the height of the field in tiles
+   */
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Returns the red mode reading of the floor. The reading blends linearly over the edge of a
+   * line so that a sensor sample can land half on a line.
+   * 
+   * @param x the x position in cm
+   * @param y the y position in cm
+   * @return the reflectance between 0 and 1
+   */
+  public double reflectance(double x, double y) {
+    double coverage = Math.max(lineCoverage(x), lineCoverage(y));
+    return TILE_REFLECTANCE + (LINE_REFLECTANCE - TILE_REFLECTANCE) * coverage;
+  }
+
+  /**
+   * @param position a coordinate in cm
+   * @return how much of a 1 mm sensor spot at position is on a grid line, between 0 and 1
+   */
+  private double lineCoverage(double position) {
+    double offset = Math.abs(position - Math.rint(position / Game.TILE) * Game.TILE);
+    double spot = 0.1;
+    double edge = LINE_WIDTH / 2;
+    if (offset <= edge - spot / 2) {
+      return 1;
+    } else if (offset >= edge + spot / 2) {
+      return 0;
+    }
+    return (edge + spot / 2 - offset) / spot;
+  }
+
+  /**
+   * Casts a ray against the walls.
+   * 
+   * @param x the x position of the start of the ray in cm
+   * @param y the y position of the start of the ray in cm
+   * @param heading the direction of the ray in radians, clockwise from north
+   * @return the distance to the first wall in cm
+   */
+  public double distanceToWall(double x, double y, double heading) {
+    double dx = Math.sin(heading);
+    double dy = Math.cos(heading);
+    double distance = Double.POSITIVE_INFINITY;
+    if (dx > 1e-9) {
+      distance = Math.min(distance, (width * Game.TILE - x) / dx);
+    } else if (dx < -1e-9) {
+      distance = Math.min(distance, -x / dx);
+    }
+    if (dy > 1e-9) {
+      distance = Math.min(distance, (height * Game.TILE - y) / dy);
+    } else if (dy < -1e-9) {
+      distance = Math.min(distance, -y / dy);
+    }
+    return Math.max(0, distance);
+  }
+}
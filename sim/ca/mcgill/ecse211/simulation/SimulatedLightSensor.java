@@ -0,0 +1,46 @@
+package ca.mcgill.ecse211.simulation;
+
+import java.util.Random;
+
+import ca.mcgill.ecse211.hardware.SampleSource;
+
+/**
+ * This class models a light sensor in red mode pointing at the floor. The sensor is mounted
+ * behind the center of the robot and reads the reflectance of the field below it.
+ *
+ */
+public class SimulatedLightSensor implements SampleSource {
+  private static final double NOISE = 0.005;
+
+  private final SimulatedRobot robot;
+  private final double back;
+  private final double side;
+  private final Random random;
+  private final double[] pose = new double[3];
+
+  /**
+   * @param robot the robot the sensor is mounted on
+   * @param back the distance from the center of the robot to the sensor, backward, in cm
+   * @param side the distance from the center of the robot to the sensor, to the right, in cm
+   * @param seed the seed of the sensor noise
+   */
+  public SimulatedLightSensor(SimulatedRobot robot, double back, double side, long seed) {
+    this.robot = robot;
+    this.back = back;
+    this.side = side;
+    this.random = new Random(seed);
+  }
+
+  public int sampleSize() {
+    return 1;
+  }
+
+  public synchronized void fetchSample(float[] sample, int offset) {
+    robot.readPose(pose);
+    double heading = Math.toRadians(pose[2]);
+    double x = pose[0] - back * Math.sin(heading) + side * Math.cos(heading);
+    double y = pose[1] - back * Math.cos(heading) - side * Math.sin(heading);
+    double value = robot.getField().reflectance(x, y) + random.nextGaussian() * NOISE;
+    sample[offset] = (float) Math.max(0, Math.min(1, value));
+  }
+}
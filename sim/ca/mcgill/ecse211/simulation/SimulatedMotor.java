@@ -0,0 +1,137 @@
+package ca.mcgill.ecse211.simulation;
+
+import ca.mcgill.ecse211.hardware.Clock;
+import ca.mcgill.ecse211.hardware.Motor;
+
+/**
+ * This class models a regulated motor. The motor ramps its velocity with the set acceleration,
+ * like the leJOS regulator, and a rotation slows down so that it ends exactly on its target angle.
+ * The motor only moves when {@link SimulatedRobot} steps it, so its motion follows the simulated
+ * clock.
+ *
+ */
+public class SimulatedMotor implements Motor {
+  private static final int DEFAULT_SPEED = 360;
+  private static final int DEFAULT_ACCELERATION = 6000;
+
+  private enum Mode {
+    STOPPED, FORWARD, BACKWARD, ROTATE
+  }
+
+  private Mode mode = Mode.STOPPED;
+  private int speed = DEFAULT_SPEED;
+  private int acceleration = DEFAULT_ACCELERATION;
+  private double angle; // in degrees
+  private double velocity; // in deg/s
+  private double target; // target angle of a rotation
+
+  public synchronized void forward() {
+    mode = Mode.FORWARD;
+  }
+
+  public synchronized void backward() {
+    mode = Mode.BACKWARD;
+  }
+
+  public void stop() {
+    stop(false);
+  }
+
+  public synchronized void stop(boolean immediateReturn) {
+    mode = Mode.STOPPED;
+    if (!immediateReturn) {
+      waitComplete();
+    }
+  }
+
+  public void rotate(int angle) {
+    rotate(angle, false);
+  }
+
+  public synchronized void rotate(int angle, boolean immediateReturn) {
+    target = Math.floor(this.angle) + angle;
+    mode = Mode.ROTATE;
+    notifyAll();
+    if (!immediateReturn) {
+      waitComplete();
+    }
+  }
+
+  public synchronized void waitComplete() {
+    try {
+      while (isMoving()) {
+        Clock.wait(this, 10);
+      }
+    } catch (InterruptedException e) {
+      e.printStackTrace();
+    }
+  }
+
+  public synchronized void setSpeed(int speed) {
+    this.speed = Math.abs(speed);
+  }
+
+  public synchronized int getSpeed() {
+    return speed;
+  }
+
+  public synchronized void setAcceleration(int acceleration) {
+    this.acceleration = Math.abs(acceleration);
+  }
+
+  public synchronized int getTachoCount() {
+    return (int) Math.floor(angle);
+  }
+
+  public synchronized boolean isMoving() {
+    return mode != Mode.STOPPED || velocity != 0;
+  }
+
+  /**
+   * @return the exact angle of the motor in degrees
+   */
+  public synchronized double getAngle() {
+    return angle;
+  }
+
+  /**
+   * Advances the motor by one simulation step.
+   * 
+   * @param dt the length of the step in s
+   */
+  synchronized void step(double dt) {
+    double wanted;
+    switch (mode) {
+      case FORWARD:
+        wanted = speed;
+        break;
+      case BACKWARD:
+        wanted = -speed;
+        break;
+      case ROTATE:
+        double remaining = target - angle;
+        // fastest speed from which the motor can still stop on the target
+        double reachable = Math.sqrt(2 * acceleration * Math.abs(remaining));
+        wanted = Math.signum(remaining) * Math.min(speed, reachable);
+        break;
+      default:
+        wanted = 0;
+    }
+    double maxChange = acceleration * dt;
+    if (Math.abs(wanted - velocity) <= maxChange) {
+      velocity = wanted;
+    } else {
+      velocity += Math.signum(wanted - velocity) * maxChange;
+    }
+    double previous = angle;
+    angle += velocity * dt;
+    if (mode == Mode.ROTATE && (target - previous) * (target - angle) <= 0) {
+      angle = target; // reached or passed the target during this step
+      velocity = 0;
+      mode = Mode.STOPPED;
+    }
+    if (!isMoving()) {
+      notifyAll();
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package ca.mcgill.ecse211.simulation;
+
+import ca.mcgill.ecse211.game.Game;
+import ca.mcgill.ecse211.hardware.Motor;
+import ca.mcgill.ecse211.hardware.Platform;
+import ca.mcgill.ecse211.hardware.SampleSource;
+
+/**
+ * This class is the platform of a {@link SimulatedRobot}. The screen is kept in memory, beeps and
+ * buzzes are counted, and button presses return immediately.
+ *
+ */
+public class SimulatedPlatform implements Platform {
+  /**
+   * Lateral distance between a back light sensor and the center of the robot in cm
+   */
+  public static final double LIGHT_SENSOR_SIDE = Game.SEN_SIDE;
+
+  private final SimulatedRobot robot;
+  private final SampleSource usSensor;
+  private final SampleSource[] backLight;
+  private final SimulatedColorSensor colorSensor;
+  private final String[] screen = new String[8];
+  private int beeps = 0;
+  private int buzzes = 0;
+
+  /**
+   * @param robot the simulated robot
+   * @param seed the seed of the sensor noise
+   */
+  public SimulatedPlatform(SimulatedRobot robot, long seed) {
+    this.robot = robot;
+    this.usSensor = new SimulatedUltrasonicSensor(robot, seed);
+    this.backLight = new SampleSource[] {
+        new SimulatedLightSensor(robot, Game.SEN_DIS, -LIGHT_SENSOR_SIDE, seed + 1),
+        new SimulatedLightSensor(robot, Game.SEN_DIS, LIGHT_SENSOR_SIDE, seed + 2)};
+    this.colorSensor = new SimulatedColorSensor(robot, seed + 3);
+  }
+
+  /**
+   * @return the simulated robot
+   */
+  public SimulatedRobot getRobot() {
+    return robot;
+  }
+
+  /**
+   * @return the simulated front color sensor, to choose the ring it sees
+   */
+  public SimulatedColorSensor getSimulatedColorSensor() {
+    return colorSensor;
+  }
+
+  /**
+   * @return a copy of the rows of the screen, null for empty rows
+   */
+  public synchronized String[] getScreen() {
+    return screen.clone();
+  }
+
+  /**
+   * @return the number of beeps played so far
+   */
+  public synchronized int getBeeps() {
+    return beeps;
+  }
+
+  /**
+   * @return the number of buzzes played so far
+   */
+  public synchronized int getBuzzes() {
+    return buzzes;
+  }
+
+  public Motor getLeftMotor() {
+    return robot.getLeftMotor();
+  }
+
+  public Motor getRightMotor() {
+    return robot.getRightMotor();
+  }
+
+  public Motor getElbowMotor() {
+    return robot.getElbowMotor();
+  }
+
+  public Motor getForeArmMotor() {
+    return robot.getForeArmMotor();
+  }
+
+  public SampleSource getUltrasonicSensor() {
+    return usSensor;
+  }
+
+  public SampleSource[] getBackLightSensors() {
+    return backLight;
+  }
+
+  public SampleSource getColorSensor() {
+    return colorSensor;
+  }
+
+  public synchronized void drawString(String text, int x, int y) {
+    if (y >= 0 && y < screen.length) {
+      screen[y] = text;
+    }
+  }
+
+  public synchronized void clearDisplay() {
+    for (int i = 0; i < screen.length; i++) {
+      screen[i] = null;
+    }
+  }
+
+  public synchronized void beep() {
+    beeps++;
+  }
+
+  public void beepSequence() {}
+
+  public synchronized void buzz() {
+    buzzes++;
+  }
+
+  public void waitForAnyPress() {}
+}
@@ -0,0 +1,142 @@
+package ca.mcgill.ecse211.simulation;
+
+import ca.mcgill.ecse211.game.Game;
+import ca.mcgill.ecse211.hardware.Clock;
+
+/**
+ * This class models the robot as a differential drive with wheels of radius {@link Game#WHEEL_RAD}
+ * spaced by {@link Game#TRACK}. A background thread steps every motor by a fixed time step and
+ * integrates the wheel motions into the pose of the robot, keeping up with the {@link Clock}. The
+ * motion model has no noise, so a run only depends on the commands it receives.
+ *
+ */
+public class SimulatedRobot implements Runnable {
+  /**
+   * Length of a simulation step in ms
+   */
+  public static final double STEP = 1;
+
+  private final SimulatedField field;
+  private final SimulatedMotor leftMotor = new SimulatedMotor();
+  private final SimulatedMotor rightMotor = new SimulatedMotor();
+  private final SimulatedMotor elbowMotor = new SimulatedMotor();
+  private final SimulatedMotor foreArmMotor = new SimulatedMotor();
+
+  // Pose of the robot in the field frame
+  private double x; // in cm
+  private double y; // in cm
+  private double theta; // in radians, clockwise from north
+
+  private double distance; // total distance driven in cm
+  private double time; // simulated time in ms
+
+  /**
+   * @param field the field the robot drives on
+   * @param x the starting x position in cm
+   * @param y the starting y position in cm
+   * @param theta the starting heading in degrees, clockwise from north
+   */
+  public SimulatedRobot(SimulatedField field, double x, double y, double theta) {
+    this.field = field;
+    this.x = x;
+    this.y = y;
+    this.theta = Math.toRadians(theta);
+  }
+
+  /**
+   * Starts the thread that steps the simulation.
+   */
+  public void start() {
+    time = Clock.millis();
+    Thread thread = new Thread(this);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Steps the simulation until it catches up with the clock, then sleeps for a step.
+   */
+  public void run() {
+    try {
+      while (true) {
+        long now = Clock.millis();
+        while (time < now) {
+          step(STEP / 1000);
+          time += STEP;
+        }
+        Clock.sleep((long) STEP);
+      }
+    } catch (InterruptedException e) {
+      // the simulation is over
+    }
+  }
+
+  /**
+   * Advances every motor and the pose by dt.
+   * 
+   * @param dt the length of the step in s
+   */
+  void step(double dt) {
+    double leftBefore = leftMotor.getAngle();
+    double rightBefore = rightMotor.getAngle();
+    leftMotor.step(dt);
+    rightMotor.step(dt);
+    elbowMotor.step(dt);
+    foreArmMotor.step(dt);
+    double distL = Math.toRadians(leftMotor.getAngle() - leftBefore) * Game.WHEEL_RAD;
+    double distR = Math.toRadians(rightMotor.getAngle() - rightBefore) * Game.WHEEL_RAD;
+    double deltaD = 0.5 * (distL + distR);
+    double deltaT = (distL - distR) / Game.TRACK;
+    synchronized (this) {
+      // exact arc integration of the motion during the step
+      double midTheta = theta + deltaT / 2;
+      double chord = Math.abs(deltaT) < 1e-9 ? deltaD : 2 * deltaD / deltaT * Math.sin(deltaT / 2);
+      x += chord * Math.sin(midTheta);
+      y += chord * Math.cos(midTheta);
+      theta += deltaT;
+      distance += Math.abs(deltaD);
+    }
+  }
+
+  /**
+   * Copies the true pose of the robot into pose.
+   * 
+   * @param pose an array of at least 3 elements for x (cm), y (cm) and theta (degrees)
+   */
+  public synchronized void readPose(double[] pose) {
+    pose[0] = x;
+    pose[1] = y;
+    double degrees = Math.toDegrees(theta) % 360;
+    pose[2] = degrees < 0 ? degrees + 360 : degrees;
+  }
+
+  /**
+   * @return the total distance driven by the center of the robot in cm
+   */
+  public synchronized double getDistanceDriven() {
+    return distance;
+  }
+
+  /**
+   * @return the field the robot drives on
+   */
+  public SimulatedField getField() {
+    return field;
+  }
+
+  public SimulatedMotor getLeftMotor() {
+    return leftMotor;
+  }
+
+  public SimulatedMotor getRightMotor() {
+    return rightMotor;
+  }
+
+  public SimulatedMotor getElbowMotor() {
+    return elbowMotor;
+  }
+
+  public SimulatedMotor getForeArmMotor() {
+    return foreArmMotor;
+  }
+}
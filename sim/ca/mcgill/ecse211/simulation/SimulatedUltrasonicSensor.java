@@ -0,0 +1,49 @@
+package ca.mcgill.ecse211.simulation;
+
+import java.util.Random;
+
+import ca.mcgill.ecse211.hardware.SampleSource;
+
+/**
+ * This class models the ultrasonic sensor in distance mode. It casts a few rays over the width of
+ * the sound cone and reports the closest wall, in metres, like the EV3 sensor.
+ *
+ */
+public class SimulatedUltrasonicSensor implements SampleSource {
+  private static final double MAX_RANGE = 255; // in cm
+  private static final double CONE = Math.toRadians(15); // half angle of the sound cone
+  private static final int RAYS = 5;
+  private static final double NOISE = 0.3; // in cm
+
+  private final SimulatedRobot robot;
+  private final Random random;
+  private final double[] pose = new double[3];
+
+  /**
+   * @param robot the robot the sensor is mounted on, facing forward
+   * @param seed the seed of the sensor noise
+   */
+  public SimulatedUltrasonicSensor(SimulatedRobot robot, long seed) {
+    this.robot = robot;
+    this.random = new Random(seed);
+  }
+
+  public int sampleSize() {
+    return 1;
+  }
+
+  public synchronized void fetchSample(float[] sample, int offset) {
+    robot.readPose(pose);
+    double heading = Math.toRadians(pose[2]);
+    double distance = MAX_RANGE;
+    for (int i = 0; i < RAYS; i++) {
+      double ray = heading - CONE + 2 * CONE * i / (RAYS - 1);
+      distance = Math.min(distance, robot.getField().distanceToWall(pose[0], pose[1], ray));
+    }
+    if (distance >= MAX_RANGE) {
+      sample[offset] = Float.POSITIVE_INFINITY; // nothing in range
+    } else {
+      sample[offset] = (float) ((distance + random.nextGaussian() * NOISE) / 100);
+    }
+  }
+}
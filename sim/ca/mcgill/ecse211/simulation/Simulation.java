@@ -0,0 +1,123 @@
+package ca.mcgill.ecse211.simulation;
+
+import ca.mcgill.ecse211.game.Game;
+import ca.mcgill.ecse211.game.GameParameter;
+import ca.mcgill.ecse211.game.MissionPlan;
+import ca.mcgill.ecse211.game.Navigation;
+import ca.mcgill.ecse211.game.RingGame;
+import ca.mcgill.ecse211.hardware.Clock;
+import ca.mcgill.ecse211.localization.LightLocalizer;
+import ca.mcgill.ecse211.metrics.Metrics;
+import ca.mcgill.ecse211.odometer.Odometer;
+import ca.mcgill.ecse211.odometer.OdometerExceptions;
+import ca.mcgill.ecse211.odometer.PoseEstimator;
+import ca.mcgill.ecse211.threads.PollerScheduler;
+
+/**
+ * This class runs the full ring game on a simulated robot, faster than real time, and prints how
+ * long the mission took and how far the odometer drifted from the true pose.
+ * <p>
+ * Usage:
+ * {@code Simulation [timeScale] [startHeading] [profiles] [scheduled] [control] [sweep] [rotating]}.
+ * The robot starts in the center of the corner tile given by {@link GameParameter#GreenCorner}.
+ * Motion profiles are planned unless profiles is false. The self localizations on the way only run
+ * when the pose is uncertain, unless scheduled is false. Straight drives hold their heading and
+ * pass the lines on the way, unless control is false. The robot localizes in its corner with a
+ * single turn, unless sweep is false; otherwise the light localization that follows the ultrasonic
+ * one rotates near the intersection, unless rotating is false.
+ * 
+ */
+public class Simulation {
+  private static final int FIELD_WIDTH = 8; // in tiles
+  private static final int FIELD_HEIGHT = 8; // in tiles
+  private static final long SEED = 211;
+
+  private static SimulatedPlatform platform;
+
+  public static void main(String[] args) throws OdometerExceptions {
+    double timeScale = args.length > 0 ? Double.parseDouble(args[0]) : 10;
+    double heading = args.length > 1 ? Double.parseDouble(args[1]) : 30;
+    Navigation.setProfiles(args.length > 2 ? Boolean.parseBoolean(args[2]) : true);
+    Navigation.setScheduledLocalization(args.length > 3 ? Boolean.parseBoolean(args[3]) : true);
+    Navigation.setHeadingControl(args.length > 4 ? Boolean.parseBoolean(args[4]) : true);
+    MissionPlan.setSweepLocalization(args.length > 5 ? Boolean.parseBoolean(args[5]) : true);
+    LightLocalizer.setRotating(args.length > 6 ? Boolean.parseBoolean(args[6]) : true);
+
+    setUp(timeScale, heading);
+    RingGame.preparation();
+    System.out.println("Mission plan: " + RingGame.getMission());
+
+    long start = Clock.millis();
+    long realStart = System.currentTimeMillis();
+    RingGame.playGame();
+    report(Clock.millis() - start, System.currentTimeMillis() - realStart);
+    System.exit(0);
+  }
+
+  /**
+   * Creates the simulated robot in its starting corner and makes it the platform of the game.
+   * 
+   * @param timeScale the number of simulated ms per real ms
+   * @param heading the starting heading of the robot in degrees
+   * @return the simulated platform
+   */
+  public static SimulatedPlatform setUp(double timeScale, double heading) {
+    Clock.setTimeScale(timeScale);
+    SimulatedField field = new SimulatedField(FIELD_WIDTH, FIELD_HEIGHT);
+    int corner = GameParameter.GreenCorner;
+    double x = (corner == 1 || corner == 2 ? FIELD_WIDTH - 0.5 : 0.5) * Game.TILE;
+    double y = (corner == 2 || corner == 3 ? FIELD_HEIGHT - 0.5 : 0.5) * Game.TILE;
+    SimulatedRobot robot = new SimulatedRobot(field, x, y, heading);
+    platform = new SimulatedPlatform(robot, SEED);
+    // the ring on the ring set reads as a blue ring
+    platform.getSimulatedColorSensor().setRing(0.026f, 0.102f, 0.107f);
+    Game.usePlatform(platform);
+    robot.start();
+    return platform;
+  }
+
+  /**
+   * Prints the duration of the mission and the odometer error.
+   * 
+   * @param simulated the simulated duration in ms
+   * @param real the real duration in ms
+   * @throws OdometerExceptions
+   */
+  public static void report(long simulated, long real) throws OdometerExceptions {
+    double[] truth = new double[3];
+    platform.getRobot().readPose(truth);
+    double[] odometer = Odometer.getOdometer().getXYT();
+    System.out.println("Mission time: " + simulated / 1000.0 + " s (" + real / 1000.0 + " s real)");
+    System.out.println("Distance driven: " + platform.getRobot().getDistanceDriven() + " cm");
+    System.out.println("Motion profiles saved: " + Metrics.counter("navigation.profile.saved").get()
+        / 1000.0 + " s (planned)");
+    PoseEstimator estimator = Odometer.getOdometer().getEstimator();
+    System.out.println("Pose estimator: " + Metrics.counter("odometer.ekf.updates").get()
+        + " line updates, " + Metrics.counter("odometer.ekf.rejected").get() + " rejected, error " + estimator.getPositionError() + " cm, " + estimator.getHeadingError() + " deg");
+    System.out.println("Self localizations: " + Metrics.counter("navigation.localize.skipped").get()
+        + " skipped, " + Metrics.counter("navigation.localize.partial").get() + " partial, "
+        + Metrics.counter("navigation.localize.saved").get() / 1000.0 + " s saved (planned), "
+        + Metrics.counter("navigation.line.missed").get() + " missed lines, "
+        + Metrics.counter("navigation.line.stops").get() + " line stops");
+    System.out.println("Start localization: " + (Metrics.histogram("phase.usLocalization").getMax()
+        + Metrics.histogram("phase.lightLocalization").getMax()) / 1e9 + " s");
+    System.out.println("Ring retrieval: "
+        + Metrics.histogram("phase.ringRetrieval").getMax() / 1e9 + " s");
+    System.out.println("True pose: " + truth[0] / Game.TILE + ", " + truth[1] / Game.TILE + ", "
+        + truth[2]);
+    System.out.println("Odometer: " + odometer[0] + ", " + odometer[1] + ", " + odometer[2]);
+    System.out.println("Sounds: " + platform.getBeeps() + " beeps, " + platform.getBuzzes()
+        + " buzzes");
+    for (String row : platform.getScreen()) {
+      if (row != null) {
+        System.out.println("Screen: " + row);
+      }
+    }
+    for (PollerScheduler.Task task : RingGame.getScheduler().getTasks()) {
+      System.out.println(task.getName() + ": " + task.getRuns() + " runs, period "
+          + task.getMeanPeriod() / 1e6 + " ms (" + task.getMinPeriod() / 1e6 + " - "
+          + task.getMaxPeriod() / 1e6 + "), jitter " + task.getMeanJitter() / 1e6 + " ms (max "
+          + task.getMaxJitter() / 1e6 + "), " + task.getOverruns() + " overruns");
+    }
+  }
+}
@@ -0,0 +1,257 @@
+package ca.mcgill.ecse211.game;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.mcgill.ecse211.hardware.Clock;
+import ca.mcgill.ecse211.hardware.Motor;
+import ca.mcgill.ecse211.metrics.LatencyHistogram;
+import ca.mcgill.ecse211.metrics.Metrics;
+
+/**
+ * This class runs a declared sequence of arm and drive keyframes. A keyframe
+ * rotates one or more motors by fixed angles, and starts as soon as the
+ * keyframes it depends on are done, so independent motions overlap. A keyframe
+ * always waits for the previous keyframe of each of its motors; every other
+ * dependency is declared.
+ * <p>
+ * Choreographies are built once with a {@link Builder} and never change. They
+ * run in the calling thread with {@link #run()}, or on a worker thread with
+ * {@link #start()}. The run time of each choreography is recorded in the
+ * histogram "choreography." followed by its name.
+ *
+ */
+public final class Choreography implements Motion.Command {
+
+	private static final long POLL = 5; // time between checks of the running keyframes, in ms
+
+	private final String name;
+	private final List<Keyframe> keyframes;
+	private final LatencyHistogram runTime;
+
+	private Choreography(String name, List<Keyframe> keyframes) {
+		this.name = name;
+		this.keyframes = Collections.unmodifiableList(keyframes);
+		this.runTime = Metrics.histogram("choreography." + name);
+	}
+
+	/**
+	 * This method runs the keyframes and returns when all of them are done.
+	 */
+	public void run() {
+		long start = Clock.nanos();
+		int count = keyframes.size();
+		boolean[] started = new boolean[count];
+		boolean[] done = new boolean[count];
+		int remaining = count;
+		while (remaining > 0) {
+			for (int i = 0; i < count; i++) {
+				if (!started[i] && keyframes.get(i).isReady(done)) {
+					keyframes.get(i).start();
+					started[i] = true;
+				}
+			}
+			boolean finished = false;
+			for (int i = 0; i < count; i++) {
+				if (started[i] && !done[i] && !keyframes.get(i).isMoving()) {
+					done[i] = true;
+					finished = true;
+					remaining--;
+				}
+			}
+			if (remaining > 0 && !finished) {
+				try {
+					Clock.sleep(POLL);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		runTime.record(Clock.nanos() - start);
+	}
+
+	/**
+	 * This method runs the choreography on a worker thread.
+	 *
+	 * @return the handle of the motion
+	 */
+	public Motion start() {
+		return Motion.submit(new Runnable() {
+			public void run() {
+				Choreography.this.run();
+			}
+		});
+	}
+
+	/**
+	 * @return the name of the choreography
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public String toString() {
+		StringBuilder text = new StringBuilder(name);
+		for (Keyframe keyframe : keyframes) {
+			text.append('\n').append(keyframe);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * This class builds a choreography, one keyframe at a time. A keyframe may
+	 * only depend on keyframes added before it.
+	 */
+	public static final class Builder {
+		private final String name;
+		private final List<Keyframe> keyframes = new ArrayList<Keyframe>();
+		private final Map<String, Integer> byName = new HashMap<String, Integer>();
+
+		/**
+		 * @param name the name of the choreography
+		 */
+		public Builder(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * This method adds a keyframe rotating one motor.
+		 *
+		 * @param name  the name of the keyframe
+		 * @param motor the motor
+		 * @param angle the angle to rotate by in degrees
+		 * @param speed the speed in deg/s
+		 * @param after the names of the keyframes to wait for
+		 * @return this builder
+		 * @throws IllegalArgumentException if the name is taken or a keyframe to wait
+		 *                                  for was not added before
+		 */
+		public Builder rotate(String name, Motor motor, int angle, int speed, String... after) {
+			return rotate(name, new Motor[] { motor }, new int[] { angle }, speed, after);
+		}
+
+		/**
+		 * This method adds a keyframe driving straight with both wheels.
+		 *
+		 * @param name       the name of the keyframe
+		 * @param leftMotor  the left wheel motor
+		 * @param rightMotor the right wheel motor
+		 * @param distance   the distance in cm, negative to drive backward
+		 * @param speed      the speed of the wheels in deg/s
+		 * @param after      the names of the keyframes to wait for
+		 * @return this builder
+		 * @throws IllegalArgumentException if the name is taken or a keyframe to wait
+		 *                                  for was not added before
+		 */
+		public Builder drive(String name, Motor leftMotor, Motor rightMotor, double distance, int speed,
+				String... after) {
+			int angle = Navigation.convertDistance(Game.WHEEL_RAD, distance);
+			return rotate(name, new Motor[] { leftMotor, rightMotor }, new int[] { angle, angle }, speed, after);
+		}
+
+		private Builder rotate(String name, Motor[] motors, int[] angles, int speed, String[] after) {
+			if (byName.containsKey(name)) {
+				throw new IllegalArgumentException("Keyframe " + name + " is already in " + this.name);
+			}
+			List<Integer> dependencies = new ArrayList<Integer>();
+			for (String dependency : after) {
+				Integer index = byName.get(dependency);
+				if (index == null) {
+					throw new IllegalArgumentException("Keyframe " + name + " waits for unknown " + dependency);
+				}
+				dependencies.add(index);
+			}
+			// the previous keyframe of each motor
+			for (Motor motor : motors) {
+				for (int i = keyframes.size() - 1; i >= 0; i--) {
+					if (keyframes.get(i).uses(motor)) {
+						if (!dependencies.contains(i)) {
+							dependencies.add(i);
+						}
+						break;
+					}
+				}
+			}
+			int[] indices = new int[dependencies.size()];
+			for (int i = 0; i < indices.length; i++) {
+				indices[i] = dependencies.get(i);
+			}
+			byName.put(name, keyframes.size());
+			keyframes.add(new Keyframe(name, motors, angles, speed, indices));
+			return this;
+		}
+
+		/**
+		 * @return the choreography
+		 */
+		public Choreography build() {
+			return new Choreography(name, new ArrayList<Keyframe>(keyframes));
+		}
+	}
+
+	/**
+	 * This class is one keyframe: the motors rotate together by their angles.
+	 */
+	private static final class Keyframe {
+		private final String name;
+		private final Motor[] motors;
+		private final int[] angles;
+		private final int speed;
+		private final int[] dependencies;
+
+		private Keyframe(String name, Motor[] motors, int[] angles, int speed, int[] dependencies) {
+			this.name = name;
+			this.motors = motors.clone();
+			this.angles = angles.clone();
+			this.speed = speed;
+			this.dependencies = dependencies;
+		}
+
+		private boolean isReady(boolean[] done) {
+			for (int dependency : dependencies) {
+				if (!done[dependency]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean uses(Motor motor) {
+			for (Motor used : motors) {
+				if (used == motor) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void start() {
+			for (int i = 0; i < motors.length; i++) {
+				motors[i].setSpeed(speed);
+			}
+			for (int i = 0; i < motors.length; i++) {
+				motors[i].rotate(angles[i], true);
+			}
+		}
+
+		private boolean isMoving() {
+			for (Motor motor : motors) {
+				if (motor.isMoving()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public String toString() {
+			StringBuilder text = new StringBuilder(name);
+			for (int angle : angles) {
+				text.append(' ').append(angle);
+			}
+			return text.append(" at ").append(speed).toString();
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package ca.mcgill.ecse211.game;
+
+import ca.mcgill.ecse211.game.ColorDetector.Color;
+
+/**
+ * This class classifies RGB samples of the front color sensor as one of the ring colors. The
+ * sample is normalized once and compared to the mean normalized color of each ring with squared
+ * distances, and the nearest one wins. Nothing is allocated, so it can run on every sample. A
+ * classifier must not be shared between threads.
+ *
+ */
+public class ColorClassifier {
+
+	/**
+	 * The colors a sample can be classified as, in the order of the centroids
+	 */
+	private static final Color[] COLORS = { Color.Blue, Color.Green, Color.Yellow, Color.Orange, Color.Empty };
+
+	// average NORMALIZED values of RGB for each ring, in the order of COLORS. Data
+	// was collected by the test engineer.
+	private static final double[] MEAN_R = { 0.1732410055, 0.4777487339, 0.8541708187, 0.9547663589, 0.1345000000 };
+	private static final double[] MEAN_G = { 0.6778531281, 0.8592604804, 0.5005476676, 0.2766071505, 0.0122500000 };
+	private static final double[] MEAN_B = { 0.7144947101, 0.1828320925, 0.140869603, 0.1091314998, 0.0855000000 };
+
+	private final Result scratch = new Result(); // used by the batch classification
+
+	/**
+	 * This class holds the result of a classification. It is filled by the
+	 * classifier so that one instance can be reused for every sample.
+	 */
+	public static class Result {
+		private Color color = Color.Other;
+		private double confidence = 0;
+		private double distance = Double.NaN;
+		private double intensity = 0;
+
+		/**
+		 * @return the nearest color, or Other if the sample was empty
+		 */
+		public Color getColor() {
+			return color;
+		}
+
+		/**
+		 * @return how much nearer the winning color is than the runner-up, between 0
+		 *         (a tie) and 1 (an exact match)
+		 */
+		public double getConfidence() {
+			return confidence;
+		}
+
+		/**
+		 * @return the distance between the normalized sample and the winning color
+		 */
+		public double getDistance() {
+			return distance;
+		}
+
+		/**
+		 * @return the length of the sample before normalization, i.e. how much light
+		 *         reached the sensor
+		 */
+		public double getIntensity() {
+			return intensity;
+		}
+	}
+
+	/**
+	 * This method classifies one sample.
+	 *
+	 * @param r      the red value
+	 * @param g      the green value
+	 * @param b      the blue value
+	 * @param result the result to fill
+	 * @return the nearest color, also stored in result
+	 */
+	public Color classify(float r, float g, float b, Result result) {
+		double norm = Math.sqrt(r * r + g * g + b * b);
+		result.intensity = norm;
+		if (!(norm > 0)) {
+			result.color = Color.Other;
+			result.confidence = 0;
+			result.distance = Double.NaN;
+			return Color.Other;
+		}
+		double nR = r / norm;
+		double nG = g / norm;
+		double nB = b / norm;
+
+		int best = 0;
+		double bestD = Double.MAX_VALUE;
+		double secondD = Double.MAX_VALUE;
+		for (int i = 0; i < COLORS.length; i++) {
+			double dR = nR - MEAN_R[i];
+			double dG = nG - MEAN_G[i];
+			double dB = nB - MEAN_B[i];
+			double d = dR * dR + dG * dG + dB * dB;
+			if (d < bestD) {
+				secondD = bestD;
+				bestD = d;
+				best = i;
+			} else if (d < secondD) {
+				secondD = d;
+			}
+		}
+		// only the two nearest need a square root, for the confidence
+		result.color = COLORS[best];
+		result.distance = Math.sqrt(bestD);
+		result.confidence = 1 - result.distance / Math.sqrt(secondD);
+		return result.color;
+	}
+
+	/**
+	 * This method classifies one sample stored as {r, g, b}.
+	 *
+	 * @param rgb    the sample
+	 * @param result the result to fill
+	 * @return the nearest color, also stored in result
+	 */
+	public Color classify(float[] rgb, Result result) {
+		return classify(rgb[0], rgb[1], rgb[2], result);
+	}
+
+	/**
+	 * This method classifies a batch of samples, e.g. the history of the color
+	 * sensor. The samples are interleaved as r, g, b in the array.
+	 *
+	 * @param samples     the samples, 3 values each
+	 * @param count       the number of samples
+	 * @param colors      an array of at least count elements to store the colors
+	 * @param confidences an array of at least count elements to store the
+	 *                    confidences, or null if they are not needed
+	 */
+	public void classify(float[] samples, int count, Color[] colors, double[] confidences) {
+		for (int s = 0; s < count; s++) {
+			colors[s] = classify(samples[3 * s], samples[3 * s + 1], samples[3 * s + 2], scratch);
+			if (confidences != null) {
+				confidences[s] = scratch.confidence;
+			}
+		}
+	}
+}
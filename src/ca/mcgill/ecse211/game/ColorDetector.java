@@ -1,18 +1,11 @@
 
 package ca.mcgill.ecse211.game;
 
-import java.util.Arrays;
-
-import lejos.hardware.Sound;
-import lejos.hardware.ev3.LocalEV3;
-import lejos.hardware.lcd.TextLCD;
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
-import lejos.hardware.motor.EV3MediumRegulatedMotor;
-import lejos.hardware.motor.NXTRegulatedMotor;
-import lejos.hardware.sensor.EV3ColorSensor;
-import lejos.hardware.sensor.SensorModes;
-import lejos.robotics.SampleProvider;
+import ca.mcgill.ecse211.hardware.Clock;
+import ca.mcgill.ecse211.hardware.Motor;
+import ca.mcgill.ecse211.hardware.Platform;
 import ca.mcgill.ecse211.odometer.*;
+import ca.mcgill.ecse211.threads.SampleBuffer;
 import ca.mcgill.ecse211.threads.SensorData;
 
 /**
@@ -30,12 +23,12 @@ import ca.mcgill.ecse211.threads.SensorData;
 
 public class ColorDetector {
 
-	static EV3LargeRegulatedMotor leftMotor;
-	static EV3LargeRegulatedMotor rightMotor;
-	private static NXTRegulatedMotor elbowMotor;
-	private static EV3MediumRegulatedMotor foreArmMotor;
+	static Motor leftMotor;
+	static Motor rightMotor;
+	private static Motor elbowMotor;
+	private static Motor foreArmMotor;
 	private SensorData rgbData;
-	private TextLCD display = LocalEV3.get().getTextLCD();
+	private Platform display = Game.getPlatform();
 
 	
 	private int foreArmSpeed = 150;
@@ -43,43 +36,45 @@ public class ColorDetector {
 
 	private Color currentColor;
 
-	// average NORMALIZED values of RGB for each ring. Data was collected by the
-	// test engineer.
-	// all color data to be used in the class are NORMALIZED
-
-	private double mBlueR = 0.1732410055;
-	private double mBlueG = 0.6778531281;
-	private double mBlueB = 0.7144947101;
-	private double mGreenR = 0.4777487339;
-	private double mGreenG = 0.8592604804;
-	private double mGreenB = 0.1828320925;
-	private double mYellowR = 0.8541708187;
-	private double mYellowG = 0.5005476676;
-	private double mYellowB = 0.140869603;
-	private double mOrangeR = 0.9547663589;
-	private double mOrangeG = 0.2766071505;
-	private double mOrangeB = 0.1091314998;
-	private double mEmptyR = 0.1345000000;
-	private double mEmptyB = 0.0855000000;
-	private double mEmptyG = 0.0122500000;
-
-	private float R, G, B;
-	private double nR, nG, nB;
-	private double dBlue, dGreen, dYellow, dOrange, dEmpty;
+	private final ColorClassifier classifier = new ColorClassifier();
+	private final ColorClassifier.Result result = new ColorClassifier.Result();
+	private final float[] rgb = new float[3];
+
+	// voting color detection: share of the vote to reach, and the number of
+	// samples to take at least and at most
+	private static final double VOTE_THRESHOLD = 0.8;
+	private static final int VOTE_MIN_SAMPLES = 3;
+	private static final int VOTE_MAX_SAMPLES = 40;
+	private static final long SAMPLE_WAIT = 5;
+	private static final long SAMPLE_TIMEOUT = 1000;
+
+	// arm rotations from the resting position to the upper ring, and the part of
+	// the elbow motion, before the end, in which the ring can be in view
+	private static final int ELBOW_SCAN_ANGLE = -142;
+	private static final int FOREARM_SCAN_ANGLE = -25;
+	private static final int SWEEP_WINDOW = 60;
+	// a ring in front of the sensor reflects much more light than the background
+	private static final double RING_INTENSITY = 0.05;
+
+	private final float[] sweepSample = new float[4];
+	private double ringAngle = Double.NaN;
+	private boolean lowered = false; // the arm was lowered to the sweep window before the scan
+	private int rest; // elbow tacho count of the resting position when lowered
+
+	private final ColorVote vote = new ColorVote(VOTE_THRESHOLD, VOTE_MIN_SAMPLES);
 
 	public enum Color {
-		Blue, Green, Yellow, Orange, Other
+		Blue, Green, Yellow, Orange, Empty, Other
 	}
 
 	/*
-	 * Calculations explanation: 1- Calculate mean normalized RGB data for each ring
-	 * 2- Collect RGB color sample using the sample. 3- Normalize the collected
-	 * sample. 4- Calculate the deviation from the mean data for each ring. 5- The
-	 * ring with the smallest deviation is the found color.
+	 * Calculations explanation: see ColorClassifier. A single RGB sample is
+	 * normalized and the ring with the nearest mean normalized color is the found
+	 * color.
 	 */
 
-	public ColorDetector(EV3LargeRegulatedMotor leftMotor, EV3LargeRegulatedMotor rightMotor,
-			NXTRegulatedMotor elbowMotor, EV3MediumRegulatedMotor foreArmMotor) throws OdometerExceptions {
+	public ColorDetector(Motor leftMotor, Motor rightMotor,
+			Motor elbowMotor, Motor foreArmMotor) throws OdometerExceptions {
 		this.leftMotor = leftMotor;
 		this.rightMotor = rightMotor;
 		this.elbowMotor = elbowMotor;
@@ -123,91 +118,191 @@ public class ColorDetector {
 
 	public void detectColor() {
 		while (true) {
-			display.clear();
-			R = rgbData.getRGB()[0];
-			G = rgbData.getRGB()[1];
-			B = rgbData.getRGB()[2];
-
-			display.drawString("0: " + R, 0, 1);
-			display.drawString("1: " + G, 0, 2);
-			display.drawString("2: " + B, 0, 3);
-			// display.drawString("Co: " + currentBrightness, 0, 4);
-			getColor(R,G,B);
-			
-			// normalize
-			nR = R / (Math.sqrt(R * R + G * G + B * B));
-			nG = G / (Math.sqrt(R * R + G * G + B * B));
-			nB = B / (Math.sqrt(R * R + G * G + B * B));
-			
-			//calculate deviation for each ring
-			dBlue = Math.sqrt(Math.pow(nR - mBlueR, 2) + Math.pow(nG - mBlueG, 2) + Math.pow(nB - mBlueB, 2));
-			dGreen = Math.sqrt(Math.pow(nR - mGreenR, 2) + Math.pow(nG - mGreenG, 2) + Math.pow(nB - mGreenB, 2));
-			dYellow = Math.sqrt(Math.pow(nR - mYellowR, 2) + Math.pow(nG - mYellowG, 2) + Math.pow(nB - mYellowB, 2));
-			dOrange = Math.sqrt(Math.pow(nR - mOrangeR, 2) + Math.pow(nG - mOrangeG, 2) + Math.pow(nB - mOrangeB, 2));
-			dEmpty = Math.sqrt(Math.pow(nR - mEmptyR, 2) + Math.pow(nG - mEmptyG, 2) + Math.pow(nB - mEmptyB, 2));
-			
-			double[] list = {dBlue, dGreen, dYellow, dOrange, dEmpty};
-
-			//sorted array
-			Arrays.sort(list);
-
-			//print list[0] which is going to the detected color
-			if(list[0] == dBlue) {
-				display.drawString("Blue detected", 0, 5);
-				//Sound.beep();
-				break;
-			}
-			
-			if(list[0] == dGreen) {
-				display.drawString("Green detected", 0, 5);
-				//Sound.beep();
-				//Sound.beep();
-				break;
-			}
+			display.clearDisplay();
+			// one snapshot, so the three channels come from the same sample
+			rgbData.readRGB(rgb);
 
-			if(list[0] == dYellow) {
-				display.drawString("Yellow detected", 0, 5);
-				//Sound.beep();
-				//Sound.beep();
-				//Sound.beep();
-				break;
-			}
+			display.drawString("0: " + rgb[0], 0, 1);
+			display.drawString("1: " + rgb[1], 0, 2);
+			display.drawString("2: " + rgb[2], 0, 3);
+			getColor(rgb[0], rgb[1], rgb[2]);
 
-			if(list[0] == dOrange) {
-				display.drawString("Orange detected", 0, 5);
-				//Sound.beep();
-				//Sound.beep();
-				//Sound.beep();
-				//Sound.beep();
+			currentColor = classifier.classify(rgb, result);
+			if (currentColor == Color.Empty) {
+				display.drawString("Empty", 0, 5);
 				break;
 			}
-			
-			if (list[0] == dEmpty) {
-				display.drawString("Empty", 0, 5);
-				//Sound.buzz();
-				//rotateSensor();
+			if (currentColor != Color.Other) {
+				display.drawString(currentColor + " detected", 0, 5);
 				break;
 			}
-			
+
+			// no sample yet, try again
 			try {
-				Thread.sleep(500);
+				Clock.sleep(500);
 			} catch (InterruptedException e) {
 				e.printStackTrace();
 			}
-			display.clear();
-		}	
+			display.clearDisplay();
+		}
+	}
+
+	/**
+	 * This method detects the color from a burst of samples of the RGB poller. Each
+	 * new sample is classified and votes for its color, and the detection stops as
+	 * soon as one color holds VOTE_THRESHOLD of the vote, or after
+	 * VOTE_MAX_SAMPLES samples.
+	 * 
+	 * @return the detected color, Other if no sample was available
+	 */
+	public Color detectColorByVote() {
+		SampleBuffer history = rgbData.getRGBHistory();
+		vote.reset();
+		long seen = history.count();
+		long waited = 0;
+		while (vote.getSamples() < VOTE_MAX_SAMPLES && !vote.isDecided()) {
+			if (history.count() == seen) {
+				// give up if the poller stopped producing samples
+				if (waited > SAMPLE_TIMEOUT) {
+					break;
+				}
+				try {
+					Clock.sleep(SAMPLE_WAIT);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+				waited += SAMPLE_WAIT;
+				continue;
+			}
+			seen = history.count();
+			waited = 0;
+			history.latest(rgb);
+			classifier.classify(rgb, result);
+			vote.add(result);
+		}
+		currentColor = vote.getWinner();
+		showVote();
+		return currentColor;
+	}
+
+	/**
+	 * This method shows the outcome of the last vote on the screen.
+	 */
+	private void showVote() {
+		display.clearDisplay();
+		display.drawString("n: " + vote.getSamples(), 0, 1);
+		display.drawString("c: " + vote.getConfidence(), 0, 2);
+		if (currentColor == Color.Empty) {
+			display.drawString("Empty", 0, 5);
+		} else if (currentColor != Color.Other) {
+			display.drawString(currentColor + " detected", 0, 5);
+		}
+	}
+
+	/**
+	 * @return the votes of the last voting color detection
+	 */
+	public ColorVote getVote() {
+		return vote;
+	}
+
+	/**
+	 * @return the color found by the last color detection
+	 */
+	public Color getCurrentColor() {
+		return currentColor;
+	}
+
+	/**
+	 * @return the result of the last color detection, with its confidence
+	 */
+	public ColorClassifier.Result getResult() {
+		return result;
 	}
 	
 	
+	/**
+	 * This method starts lowering the arm down to the sweep window of the scan,
+	 * where the ring cannot be in view yet, so that it can move while the robot
+	 * approaches the ring set. {@link #scanUpperRing()} then continues from there.
+	 * 
+	 * @return the handle of the arm motion
+	 */
+	public Motion lowerArmForScan() {
+		elbowMotor.setSpeed(50);
+		rest = elbowMotor.getTachoCount();
+		lowered = true;
+		elbowMotor.rotate(ELBOW_SCAN_ANGLE + SWEEP_WINDOW, true);
+		return Motion.of(elbowMotor);
+	}
+
+	/**
+	 * This method scans the upper ring while the arm is moving. The RGB samples are
+	 * tagged with the elbow tacho count, and the ones taken in the last
+	 * SWEEP_WINDOW degrees of the motion vote as they arrive. The arm stops as soon
+	 * as a ring color is confidently identified; if it reaches the scan position
+	 * first, the detection finishes there. The arm then goes back by the angle it
+	 * actually moved.
+	 */
 	public void scanUpperRing() {
 		foreArmMotor.setSpeed(70);
 		elbowMotor.setSpeed(50);
-		elbowMotor.rotate(-142);
-		foreArmMotor.rotate(-25);
-		detectColor();
-		foreArmMotor.rotate(25);
-		elbowMotor.rotate(142);
-		
+		int start = lowered ? rest : elbowMotor.getTachoCount();
+		lowered = false;
+		int windowStart = start + ELBOW_SCAN_ANGLE + SWEEP_WINDOW;
+
+		SampleBuffer history = rgbData.getRGBHistory();
+		vote.reset();
+		ringAngle = Double.NaN;
+		long seen = history.count();
+		elbowMotor.rotate(start + ELBOW_SCAN_ANGLE - elbowMotor.getTachoCount(), true);
+		while (elbowMotor.isMoving()) {
+			if (history.count() == seen) {
+				try {
+					Clock.sleep(SAMPLE_WAIT);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+				continue;
+			}
+			seen = history.count();
+			history.latest(sweepSample);
+			if (sweepSample[3] > windowStart) {
+				continue;
+			}
+			// the dark background reads like a random color or an empty ring, so only
+			// bright samples of ring colors vote while moving
+			Color color = classifier.classify(sweepSample, result);
+			if (color == Color.Empty || color == Color.Other || result.getIntensity() < RING_INTENSITY) {
+				continue;
+			}
+			if (Double.isNaN(ringAngle)) {
+				ringAngle = sweepSample[3];
+			}
+			vote.add(result);
+			if (vote.isDecided()) {
+				elbowMotor.stop();
+				break;
+			}
+		}
+
+		foreArmMotor.rotate(FOREARM_SCAN_ANGLE);
+		if (vote.isDecided()) {
+			currentColor = vote.getWinner();
+			showVote();
+		} else {
+			detectColorByVote();
+		}
+		foreArmMotor.rotate(-FOREARM_SCAN_ANGLE);
+		elbowMotor.rotate(start - elbowMotor.getTachoCount());
+	}
+
+	/**
+	 * @return the elbow tacho count at which the ring was first seen during the
+	 *         last scan, NaN if it was not seen while moving
+	 */
+	public double getRingAngle() {
+		return ringAngle;
 	}
 	
 	public void ringScanTest() {
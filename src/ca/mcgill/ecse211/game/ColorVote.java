@@ -0,0 +1,124 @@
+package ca.mcgill.ecse211.game;
+
+import ca.mcgill.ecse211.game.ColorDetector.Color;
+
+/**
+ * This class accumulates the classifications of a burst of color samples. Each
+ * sample votes for its color with a weight equal to its confidence, and the
+ * vote is decided once the leading color holds a large enough share of the
+ * total weight. A clean reading is decided after a few samples, while a noisy
+ * one keeps sampling.
+ *
+ */
+public class ColorVote {
+
+	private static final Color[] COLORS = Color.values();
+
+	private final double threshold;
+	private final int minSamples;
+	private final int[] votes = new int[COLORS.length];
+	private final double[] weights = new double[COLORS.length];
+	private final double[] distances = new double[COLORS.length];
+	private int samples = 0;
+	private double totalWeight = 0;
+
+	/**
+	 * @param threshold  the share of the total vote weight the leading color needs,
+	 *                   between 0.5 and 1
+	 * @param minSamples the number of samples to take before deciding
+	 */
+	public ColorVote(double threshold, int minSamples) {
+		this.threshold = threshold;
+		this.minSamples = minSamples;
+	}
+
+	/**
+	 * This method clears the votes for a new ring.
+	 */
+	public void reset() {
+		for (int i = 0; i < COLORS.length; i++) {
+			votes[i] = 0;
+			weights[i] = 0;
+			distances[i] = 0;
+		}
+		samples = 0;
+		totalWeight = 0;
+	}
+
+	/**
+	 * This method adds the classification of one sample. Samples that could not be
+	 * classified (Other) are counted but carry no weight.
+	 *
+	 * @param result the classification of the sample
+	 */
+	public void add(ColorClassifier.Result result) {
+		samples++;
+		if (result.getColor() == Color.Other) {
+			return;
+		}
+		int i = result.getColor().ordinal();
+		votes[i]++;
+		// a vote always has some weight, so that a run of exact ties still decides
+		double weight = Math.max(result.getConfidence(), 0.01);
+		weights[i] += weight;
+		distances[i] += result.getDistance();
+		totalWeight += weight;
+	}
+
+	/**
+	 * @return true if enough samples were taken and the leading color holds the
+	 *         required share of the vote weight
+	 */
+	public boolean isDecided() {
+		return samples >= minSamples && getConfidence() >= threshold;
+	}
+
+	/**
+	 * @return the color with the largest vote weight, or Other if no sample could
+	 *         be classified
+	 */
+	public Color getWinner() {
+		int best = -1;
+		for (int i = 0; i < COLORS.length; i++) {
+			if (weights[i] > 0 && (best < 0 || weights[i] > weights[best])) {
+				best = i;
+			}
+		}
+		return best < 0 ? Color.Other : COLORS[best];
+	}
+
+	/**
+	 * @return the share of the vote weight held by the winner, between 0 and 1
+	 */
+	public double getConfidence() {
+		if (totalWeight == 0) {
+			return 0;
+		}
+		return weights[getWinner().ordinal()] / totalWeight;
+	}
+
+	/**
+	 * @param color a ring color
+	 * @return the number of samples classified as color
+	 */
+	public int getVotes(Color color) {
+		return votes[color.ordinal()];
+	}
+
+	/**
+	 * @param color a ring color
+	 * @return the mean distance of the samples classified as color, or NaN if
+	 *         there are none
+	 */
+	public double getMeanDistance(Color color) {
+		int i = color.ordinal();
+		return votes[i] == 0 ? Double.NaN : distances[i] / votes[i];
+	}
+
+	/**
+	 * @return the number of samples added since the last reset
+	 */
+	public int getSamples() {
+		return samples;
+	}
+}
@@ -1,21 +1,8 @@
 package ca.mcgill.ecse211.game;
 
-import ca.mcgill.ecse211.odometer.Odometer;
-import ca.mcgill.ecse211.odometer.OdometerExceptions;
-import ca.mcgill.ecse211.threads.LightPoller;
-import ca.mcgill.ecse211.threads.SensorData;
-import ca.mcgill.ecse211.threads.ThreadControl;
-import ca.mcgill.ecse211.threads.UltrasonicPoller;
-import lejos.hardware.ev3.LocalEV3;
-import lejos.hardware.lcd.TextLCD;
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
-import lejos.hardware.motor.EV3MediumRegulatedMotor;
-import lejos.hardware.motor.NXTRegulatedMotor;
-import lejos.hardware.port.Port;
-import lejos.hardware.sensor.EV3ColorSensor;
-import lejos.hardware.sensor.EV3UltrasonicSensor;
-import lejos.hardware.sensor.SensorModes;
-import lejos.robotics.SampleProvider;
+import ca.mcgill.ecse211.hardware.Motor;
+import ca.mcgill.ecse211.hardware.Platform;
+import ca.mcgill.ecse211.hardware.RecordedMotor;
 
 /**
  * This class is for the parameter values used for the robot
@@ -30,29 +17,45 @@ import lejos.robotics.SampleProvider;
 public enum Game {
 	INSTANCE;
 
+	/**
+	 * The platform providing the motors and sensors, either the EV3 brick or the
+	 * simulator
+	 */
+	private static Platform platform;
+
 	/**
 	 * Motor object instance that allows control of the left motor connected to port
-	 * D
+	 * C
 	 */
-	public static final EV3LargeRegulatedMotor leftMotor = new EV3LargeRegulatedMotor(LocalEV3.get().getPort("C"));
-//c
+	public static Motor leftMotor;
+
 	/**
 	 * Motor object instance that allows control of the right motor connected to
-	 * port C
+	 * port D
 	 */
-	public static final EV3LargeRegulatedMotor rightMotor = new EV3LargeRegulatedMotor(LocalEV3.get().getPort("D"));
-	
+	public static Motor rightMotor;
+
 	/**
-	 * 
+	 * Motor object instance that allows control of the elbow of the arm connected
+	 * to port B
 	 */
-	public static final NXTRegulatedMotor elbowMotor = new NXTRegulatedMotor(LocalEV3.get().getPort("B"));
-	
+	public static Motor elbowMotor;
+
 	/**
-	 * 
+	 * Motor object instance that allows control of the fore arm connected to port
+	 * A
+	 */
+	public static Motor foreArmMotor;
+
+	/**
+	 * The numbers of the left, right, elbow and fore arm motors in the flight
+	 * recorder log
 	 */
-	public static final EV3MediumRegulatedMotor foreArmMotor = new EV3MediumRegulatedMotor(LocalEV3.get().getPort("A"));;
-	
-//d
+	public static final int LEFT_MOTOR = 0;
+	public static final int RIGHT_MOTOR = 1;
+	public static final int ELBOW_MOTOR = 2;
+	public static final int FORE_ARM_MOTOR = 3;
+
 	/**
 	 * This variable stores the length of a tile in cm
 	 */
@@ -75,5 +78,39 @@ public enum Game {
 	 */
 	public static final double SEN_DIS = 11;
 
+	/**
+	 * This variable stores the lateral distance between a back light sensor and the
+	 * center of the robot in cm
+	 */
+	public static final double SEN_SIDE = 5.5;
+
+	/**
+	 * This variable stores the distance between the edge of a grid line, where a
+	 * back light sensor detects it, and the center of the line in cm
+	 */
+	public static final double LINE_EDGE = 0.4;
+
+	/**
+	 * This method selects the platform the game runs on and takes the motors from
+	 * it. It must be called before anything else in the game is set up. The
+	 * commands sent to the motors are recorded while a
+	 * {@link ca.mcgill.ecse211.metrics.FlightRecorder} runs.
+	 * 
+	 * @param platform the EV3 brick or a simulated robot
+	 */
+	public static void usePlatform(Platform platform) {
+		Game.platform = platform;
+		leftMotor = new RecordedMotor(platform.getLeftMotor(), LEFT_MOTOR);
+		rightMotor = new RecordedMotor(platform.getRightMotor(), RIGHT_MOTOR);
+		elbowMotor = new RecordedMotor(platform.getElbowMotor(), ELBOW_MOTOR);
+		foreArmMotor = new RecordedMotor(platform.getForeArmMotor(), FORE_ARM_MOTOR);
+	}
+
+	/**
+	 * @return the platform the game runs on
+	 */
+	public static Platform getPlatform() {
+		return platform;
+	}
 
 }
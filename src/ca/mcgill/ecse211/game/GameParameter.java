@@ -1,7 +1,5 @@
 package ca.mcgill.ecse211.game;
 
-import lejos.hardware.Sound;
-
 /**
  * This class contains all the game parameter for the competition
  * 
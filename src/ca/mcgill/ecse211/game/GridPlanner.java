@@ -0,0 +1,341 @@
+package ca.mcgill.ecse211.game;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * This class plans routes between grid intersections with A*. The robot can
+ * stop on an intersection only if it lies strictly inside one of the allowed
+ * zones (the starting zone and the island), so that the whole robot stays on
+ * the zone. Intersections on the tunnel footprint and around the ring set are
+ * blocked.
+ * <p>
+ * A search state is an intersection and a heading, so that turns can be
+ * weighted with their real cost: every turn costs the turn itself, plus the
+ * line approach and back off that each straight segment of
+ * {@link Navigation#moveWithCorrection(double, double)} adds. Routes are
+ * cached, so each one is only searched once.
+ *
+ */
+public class GridPlanner {
+
+	// headings, in the order of increasing theta
+	private static final int NORTH = 0;
+	private static final int EAST = 1;
+	private static final int SOUTH = 2;
+	private static final int WEST = 3;
+	private static final int[] DX = { 0, 1, 0, -1 };
+	private static final int[] DY = { 1, 0, -1, 0 };
+
+	private final int width;
+	private final int height;
+	private final boolean[] usable;
+	private final double tileCost;
+	private final double[] turnCost = new double[3]; // for 90, 180 and 270 degrees
+	private final Map<String, List<int[]>> routes = new HashMap<String, List<int[]>>();
+
+	/**
+	 * This constructor creates a planner where no intersection is usable yet.
+	 *
+	 * @param width       the largest x coordinate of an intersection
+	 * @param height      the largest y coordinate of an intersection
+	 * @param tileCost    the time to drive one tile, in s
+	 * @param quarterTurn the time to turn by 90 degrees and start a new segment,
+	 *                    in s
+	 * @param halfTurn    the time to turn by 180 degrees and start a new segment,
+	 *                    in s
+	 */
+	public GridPlanner(int width, int height, double tileCost, double quarterTurn, double halfTurn) {
+		this.width = width;
+		this.height = height;
+		this.usable = new boolean[(width + 1) * (height + 1)];
+		this.tileCost = tileCost;
+		this.turnCost[0] = quarterTurn;
+		this.turnCost[1] = halfTurn;
+		this.turnCost[2] = quarterTurn;
+	}
+
+	/**
+	 * This method creates the planner of the current game parameters: the robot
+	 * may drive in the green zone and on the island, but not on the tunnel or next
+	 * to the ring set. The costs come from the motion profiles of
+	 * {@link Navigation}.
+	 *
+	 * @return the planner
+	 */
+	public static GridPlanner fromParameters() {
+		int[] islandLL = GameParameter.Island_LL;
+		int[] islandUR = GameParameter.Island_UR;
+		if (islandUR[0] == 0 && islandUR[1] == 0) {
+			// no parameters were received, use the default island of the green team
+			islandLL = GameParameter.IslandG_LL;
+			islandUR = GameParameter.IslandG_UR;
+		}
+		int width = Math.max(Math.max(GameParameter.Green_UR[0], islandUR[0]), GameParameter.TNG_RR[0]);
+		int height = Math.max(Math.max(GameParameter.Green_UR[1], islandUR[1]), GameParameter.TNG_RR[1]);
+
+		GridPlanner planner = new GridPlanner(width, height, Navigation.estimateTileTime(),
+				Navigation.estimateTurnTime(90), Navigation.estimateTurnTime(180));
+		planner.allowZone(GameParameter.Green_LL, GameParameter.Green_UR);
+		planner.allowZone(islandLL, islandUR);
+		planner.blockZone(GameParameter.TNG_LL, GameParameter.TNG_RR);
+		int[] tree = GameParameter.TG;
+		planner.block(tree[0], tree[1]);
+		for (int h = NORTH; h <= WEST; h++) {
+			planner.block(tree[0] + DX[h], tree[1] + DY[h]);
+		}
+		return planner;
+	}
+
+	/**
+	 * This method makes the intersections strictly inside a zone usable.
+	 *
+	 * @param ll the lower left corner of the zone
+	 * @param ur the upper right corner of the zone
+	 */
+	public void allowZone(int[] ll, int[] ur) {
+		for (int x = ll[0] + 1; x < ur[0]; x++) {
+			for (int y = ll[1] + 1; y < ur[1]; y++) {
+				if (contains(x, y)) {
+					usable[index(x, y)] = true;
+				}
+			}
+		}
+		routes.clear();
+	}
+
+	/**
+	 * This method blocks every intersection of a zone, including its border.
+	 *
+	 * @param ll the lower left corner of the zone
+	 * @param ur the upper right corner of the zone
+	 */
+	public void blockZone(int[] ll, int[] ur) {
+		for (int x = ll[0]; x <= ur[0]; x++) {
+			for (int y = ll[1]; y <= ur[1]; y++) {
+				block(x, y);
+			}
+		}
+	}
+
+	/**
+	 * This method blocks one intersection.
+	 *
+	 * @param x the x coordinate of the intersection
+	 * @param y the y coordinate of the intersection
+	 */
+	public void block(int x, int y) {
+		if (contains(x, y)) {
+			usable[index(x, y)] = false;
+		}
+		routes.clear();
+	}
+
+	/**
+	 * @param x the x coordinate of an intersection
+	 * @param y the y coordinate of an intersection
+	 * @return true if the robot can drive through the intersection
+	 */
+	public boolean isUsable(int x, int y) {
+		return contains(x, y) && usable[index(x, y)];
+	}
+
+	/**
+	 * @return a description of the grid the routes are planned on: its size, the
+	 *         costs, and a row of usable ('+') and blocked ('.') intersections for
+	 *         each y
+	 */
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		text.append(width).append('x').append(height).append(' ').append(tileCost);
+		for (double cost : turnCost) {
+			text.append('/').append(cost);
+		}
+		for (int y = 0; y <= height; y++) {
+			text.append(' ');
+			for (int x = 0; x <= width; x++) {
+				text.append(usable[index(x, y)] ? '+' : '.');
+			}
+		}
+		return text.toString();
+	}
+
+	/**
+	 * This method plans the fastest route between two intersections.
+	 *
+	 * @param fromX   the x coordinate of the start
+	 * @param fromY   the y coordinate of the start
+	 * @param heading the heading of the robot at the start, in degrees
+	 * @param toX     the x coordinate of the destination
+	 * @param toY     the y coordinate of the destination
+	 * @return the corners of the route followed by the destination, not including
+	 *         the start, or null if there is no route
+	 */
+	public List<int[]> plan(int fromX, int fromY, double heading, int toX, int toY) {
+		int start = headingIndex(heading);
+		String key = fromX + "," + fromY + "," + start + ">" + toX + "," + toY;
+		if (routes.containsKey(key)) {
+			return routes.get(key);
+		}
+		List<int[]> route = search(fromX, fromY, start, toX, toY);
+		routes.put(key, route);
+		return route;
+	}
+
+	/**
+	 * This method estimates how long a route takes, including the turn to a final
+	 * heading, see {@link #plan(int, int, double, int, int)}.
+	 *
+	 * @param finalHeading the heading to face at the destination, in degrees
+	 * @return the time in s, or infinity if there is no route
+	 */
+	public double cost(int fromX, int fromY, double heading, int toX, int toY, double finalHeading) {
+		List<int[]> route = plan(fromX, fromY, heading, toX, toY);
+		if (route == null) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double cost = 0;
+		int x = fromX;
+		int y = fromY;
+		int h = headingIndex(heading);
+		for (int[] corner : route) {
+			int next = headingBetween(x, y, corner[0], corner[1]);
+			if (next != h) {
+				cost += turnCost[(next - h + 3) % 4];
+			}
+			cost += tileCost * (Math.abs(corner[0] - x) + Math.abs(corner[1] - y));
+			x = corner[0];
+			y = corner[1];
+			h = next;
+		}
+		int last = headingIndex(finalHeading);
+		if (last != h) {
+			cost += turnCost[(last - h + 3) % 4];
+		}
+		return cost;
+	}
+
+	/**
+	 * @return the heading in degrees of a straight move between two intersections
+	 *         on the same line
+	 */
+	public static double headingOf(int fromX, int fromY, int toX, int toY) {
+		return headingBetween(fromX, fromY, toX, toY) * 90;
+	}
+
+	private List<int[]> search(int fromX, int fromY, int startHeading, int toX, int toY) {
+		if (!contains(fromX, fromY) || !isUsable(toX, toY)) {
+			return null;
+		}
+		int states = usable.length * 4;
+		final double[] cost = new double[states];
+		final double[] estimate = new double[states];
+		int[] parent = new int[states];
+		boolean[] closed = new boolean[states];
+		for (int i = 0; i < states; i++) {
+			cost[i] = Double.POSITIVE_INFINITY;
+			parent[i] = -1;
+		}
+		PriorityQueue<Integer> open = new PriorityQueue<Integer>(16, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(estimate[a], estimate[b]);
+			}
+		});
+
+		int first = index(fromX, fromY) * 4 + startHeading;
+		cost[first] = 0;
+		estimate[first] = heuristic(fromX, fromY, toX, toY);
+		open.add(first);
+		int goal = -1;
+		while (!open.isEmpty()) {
+			int state = open.poll();
+			if (closed[state]) {
+				continue;
+			}
+			closed[state] = true;
+			int node = state / 4;
+			int h = state % 4;
+			int x = node % (width + 1);
+			int y = node / (width + 1);
+			if (x == toX && y == toY) {
+				goal = state;
+				break;
+			}
+			// drive one tile ahead
+			int nx = x + DX[h];
+			int ny = y + DY[h];
+			if (isUsable(nx, ny)) {
+				relax(state, (index(nx, ny)) * 4 + h, tileCost, nx, ny, toX, toY, cost, estimate, parent, open);
+			}
+			// or turn on the spot
+			for (int turn = 1; turn <= 3; turn++) {
+				relax(state, node * 4 + (h + turn) % 4, turnCost[turn - 1], x, y, toX, toY, cost, estimate, parent,
+						open);
+			}
+		}
+		if (goal < 0) {
+			return null;
+		}
+
+		// walk back from the goal and keep the intersections where the heading
+		// changes
+		List<int[]> route = new ArrayList<int[]>();
+		int state = goal;
+		int previousHeading = -1;
+		while (parent[state] >= 0) {
+			int node = state / 4;
+			int h = state % 4;
+			if (h != previousHeading && parent[state] / 4 != node) {
+				route.add(0, new int[] { node % (width + 1), node / (width + 1) });
+				previousHeading = h;
+			}
+			state = parent[state];
+		}
+		return route;
+	}
+
+	private void relax(int from, int to, double step, int x, int y, int toX, int toY, double[] cost,
+			double[] estimate, int[] parent, PriorityQueue<Integer> open) {
+		double candidate = cost[from] + step;
+		if (candidate < cost[to]) {
+			cost[to] = candidate;
+			estimate[to] = candidate + heuristic(x, y, toX, toY);
+			parent[to] = from;
+			open.add(to);
+		}
+	}
+
+	/**
+	 * @return a lower bound of the time from an intersection to the destination
+	 */
+	private double heuristic(int x, int y, int toX, int toY) {
+		return tileCost * (Math.abs(toX - x) + Math.abs(toY - y));
+	}
+
+	private static int headingIndex(double heading) {
+		return (int) Math.round(((heading % 360) + 360) % 360 / 90) % 4;
+	}
+
+	private static int headingBetween(int fromX, int fromY, int toX, int toY) {
+		if (toY > fromY) {
+			return NORTH;
+		} else if (toX > fromX) {
+			return EAST;
+		} else if (toY < fromY) {
+			return SOUTH;
+		}
+		return WEST;
+	}
+
+	private boolean contains(int x, int y) {
+		return x >= 0 && y >= 0 && x <= width && y <= height;
+	}
+
+	private int index(int x, int y) {
+		return y * (width + 1) + x;
+	}
+}
@@ -0,0 +1,88 @@
+package ca.mcgill.ecse211.game;
+
+/**
+ * This class is a PID controller of the heading of the robot while it drives
+ * straight. Its output is the difference of speed to add to the left wheel and
+ * remove from the right wheel, which turns the robot clockwise when positive.
+ * The integral is clamped with the output, so it does not wind up while the
+ * correction is saturated.
+ *
+ */
+public class HeadingController {
+
+	private final double kp;
+	private final double ki;
+	private final double kd;
+	private double target;
+	private double integral;
+	private double previousError;
+	private boolean first;
+
+	/**
+	 * This constructor creates a controller.
+	 *
+	 * @param kp the proportional gain in (deg/s) per degree
+	 * @param ki the integral gain in (deg/s) per degree second
+	 * @param kd the derivative gain in (deg/s) per deg/s
+	 */
+	public HeadingController(double kp, double ki, double kd) {
+		this.kp = kp;
+		this.ki = ki;
+		this.kd = kd;
+		reset(0);
+	}
+
+	/**
+	 * This method starts controlling towards a new heading.
+	 *
+	 * @param target the heading to hold in degrees
+	 */
+	public void reset(double target) {
+		this.target = target;
+		this.integral = 0;
+		this.previousError = 0;
+		this.first = true;
+	}
+
+	/**
+	 * This method computes the correction for the current heading.
+	 *
+	 * @param theta   the heading of the robot in degrees
+	 * @param dt      the time since the last update in s
+	 * @param maximum the largest correction in deg/s
+	 * @return the speed to add to the left wheel and remove from the right wheel,
+	 *         in deg/s
+	 */
+	public double update(double theta, double dt, double maximum) {
+		double error = error(theta);
+		double derivative = first || dt <= 0 ? 0 : (error - previousError) / dt;
+		first = false;
+		previousError = error;
+		if (dt > 0) {
+			integral += error * dt;
+		}
+		if (ki > 0) {
+			double limit = maximum / ki;
+			integral = Math.max(-limit, Math.min(limit, integral));
+		}
+		double output = kp * error + ki * integral + kd * derivative;
+		return Math.max(-maximum, Math.min(maximum, output));
+	}
+
+	/**
+	 * @param theta the heading of the robot in degrees
+	 * @return the heading error between -180 and 180 degrees, positive when the
+	 *         robot must turn clockwise
+	 */
+	public double error(double theta) {
+		double error = target - theta;
+		return error - 360 * Math.floor((error + 180) / 360);
+	}
+
+	/**
+	 * @return the heading held in degrees
+	 */
+	public double getTarget() {
+		return target;
+	}
+}
@@ -0,0 +1,342 @@
+package ca.mcgill.ecse211.game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.mcgill.ecse211.threads.SamplingPolicy.Profile;
+
+/**
+ * This class is the whole mission compiled from the game parameters: the
+ * waypoints and the routes between them, the headings, the localization
+ * checkpoints and the arm actions, in the order the robot performs them.
+ * <p>
+ * A plan is compiled once the parameters are known, before the game starts, so
+ * that the routing decisions of {@link Navigation#goToTunnel(int[], int[], int)}
+ * and {@link Navigation#goToRingSet(int[])} are not made while the robot waits.
+ * The decisions that depend on where the robot is use the pose it is expected to
+ * have at that point of the mission. Plans never change once compiled, and are
+ * cached per field layout.
+ *
+ */
+public final class MissionPlan {
+
+	// This is an enumeration class for the actions of the steps
+	public enum Action {
+		PHASE, US_LOCALIZE, LIGHT_LOCALIZE, SWEEP_LOCALIZE, TRAVEL, TURN_TO, TURN, MOVE, DRIVE_TO_LINE, BACK_BY_OFFSET,
+		THROUGH_TUNNEL, LOCALIZE, BEEP, APPROACH_FOR_DETECTION, SCAN_RING, APPROACH_FOR_RETRIEVAL,
+		GRAB_UPPER, GRAB_LOWER, BACK_OFF
+	}
+
+	private static final Map<String, MissionPlan> cache = new HashMap<String, MissionPlan>();
+	private static boolean sweepLocalization = true;
+
+	private final String layout;
+	private final List<Step> steps;
+
+	private MissionPlan(String layout, List<Step> steps) {
+		this.layout = layout;
+		this.steps = Collections.unmodifiableList(steps);
+	}
+
+	/**
+	 * This method chooses how the robot localizes in its starting corner: with a
+	 * single turn that fits both walls, or with the two passes of the ultrasonic
+	 * localizer followed by the light localization.
+	 *
+	 * @param sweep true to localize with a single turn
+	 */
+	public static synchronized void setSweepLocalization(boolean sweep) {
+		sweepLocalization = sweep;
+	}
+
+	/**
+	 * This method returns the plan of the current game parameters, compiling it
+	 * the first time a field layout is seen.
+	 *
+	 * @param planner the planner used for the routes, or null for the fixed
+	 *                routing
+	 * @return the plan
+	 * @throws IllegalArgumentException if the parameters do not describe a
+	 *                                  playable field
+	 */
+	public static synchronized MissionPlan forParameters(GridPlanner planner) {
+		String layout = layout(planner != null);
+		// the routes also depend on the grid the planner searches, which includes the island
+		String key = planner == null ? layout : layout + " " + planner;
+		MissionPlan plan = cache.get(key);
+		if (plan == null) {
+			plan = compile(layout, planner);
+			cache.put(key, plan);
+		}
+		return plan;
+	}
+
+	/**
+	 * @return the layout of the field the plan was compiled for
+	 */
+	public String getLayout() {
+		return layout;
+	}
+
+	/**
+	 * @return the steps of the mission, in order
+	 */
+	public List<Step> getSteps() {
+		return steps;
+	}
+
+	public String toString() {
+		StringBuilder text = new StringBuilder(layout);
+		for (Step step : steps) {
+			text.append('\n').append(step);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * @return a description of the field layout and of the options the plan
+	 *         depends on. The grid of the planner is left out, as it is long
+	 */
+	private static String layout(boolean planned) {
+		return GameParameter.GreenCorner + " " + Arrays.toString(GameParameter.SC) + " "
+				+ Arrays.toString(GameParameter.Green_LL) + Arrays.toString(GameParameter.Green_UR) + " "
+				+ Arrays.toString(GameParameter.TNG_LL) + Arrays.toString(GameParameter.TNG_RR) + " "
+				+ Arrays.toString(GameParameter.TG) + (planned ? " planned" : "") + (sweepLocalization ? " sweep" : "");
+	}
+
+	private static MissionPlan compile(String layout, GridPlanner planner) {
+		int[] start = GameParameter.SC;
+		int[] tunnelLL = GameParameter.TNG_LL;
+		int[] tunnelUR = GameParameter.TNG_RR;
+		int[] tree = GameParameter.TG;
+		if (GameParameter.GreenCorner < 0 || GameParameter.GreenCorner > 3) {
+			throw new IllegalArgumentException("Invalid starting corner " + GameParameter.GreenCorner);
+		}
+		if (!isZone(GameParameter.Green_LL, GameParameter.Green_UR) || !isZone(tunnelLL, tunnelUR)) {
+			throw new IllegalArgumentException("Invalid zone in " + layout);
+		}
+		GameParameter.TunnelHeading heading = GameParameter.determineTunnelHeading(tunnelLL, tunnelUR);
+		if (heading == null) {
+			throw new IllegalArgumentException("Unknown tunnel heading in " + layout);
+		}
+
+		List<Step> steps = new ArrayList<Step>();
+		steps.add(Step.phase("usLocalization", Profile.ULTRASONIC_LOCALIZATION));
+		if (sweepLocalization) {
+			steps.add(new Step(Action.SWEEP_LOCALIZE, start[0], start[1], start[2], null, -1, -1));
+		} else {
+			steps.add(new Step(Action.US_LOCALIZE));
+			steps.add(Step.phase("lightLocalization", Profile.LINE_FOLLOWING));
+			steps.add(new Step(Action.LIGHT_LOCALIZE, start[0], start[1], start[2], null, -1, -1));
+		}
+
+		// navigate to the tunnel entrance, as in Navigation.goToTunnel
+		steps.add(Step.phase("toTunnel", Profile.LINE_FOLLOWING));
+		int[][] edge = Navigation.tunnelEdge(tunnelLL, tunnelUR, start[0], start[1], start[2]);
+		steps.add(travel(planner, start[0], start[1], start[2], edge[0][0], edge[0][1]));
+		double edgeTheta = GridPlanner.headingOf(edge[0][0], edge[0][1], edge[1][0], edge[1][1]);
+		steps.add(new Step(Action.TURN_TO, edgeTheta));
+		steps.add(new Step(Action.DRIVE_TO_LINE));
+		steps.add(new Step(Action.MOVE, Navigation.TUNNEL_CENTER_OFFSET));
+		steps.add(new Step(Action.TURN, Navigation.tunnelTurn(edge, heading)));
+
+		// go through the tunnel, which localizes on the other side
+		steps.add(Step.phase("throughTunnel", null));
+		steps.add(new Step(Action.THROUGH_TUNNEL));
+
+		// navigate to the ring set (two tiles away from the ring set), as in
+		// Navigation.goToRingSet
+		steps.add(Step.phase("toRingSet", null));
+		int[] exit = Navigation.tunnelExit(tunnelLL, tunnelUR);
+		int[] approach = Navigation.ringSetApproach(tree, exit[0], exit[1]);
+		if (approach == null) {
+			throw new IllegalArgumentException("The tunnel ends next to the ring set in " + layout);
+		}
+		steps.add(travel(planner, exit[0], exit[1], exit[2], approach[0], approach[1]));
+		steps.add(new Step(Action.TURN_TO, approach[2]));
+		steps.add(new Step(Action.DRIVE_TO_LINE));
+		steps.add(new Step(Action.BACK_BY_OFFSET));
+		steps.add(new Step(Action.LOCALIZE));
+		steps.add(new Step(Action.BEEP, 3));
+		steps.add(new Step(Action.APPROACH_FOR_DETECTION));
+
+		// color detection and ring retrieval
+		steps.add(Step.phase("colorDetection", Profile.COLOR_SCAN));
+		steps.add(new Step(Action.SCAN_RING));
+		steps.add(Step.phase("ringRetrieval", Profile.LINE_FOLLOWING));
+		steps.add(new Step(Action.APPROACH_FOR_RETRIEVAL));
+		steps.add(Step.phase(null, Profile.RING_RETRIEVAL));
+		steps.add(new Step(Action.GRAB_UPPER));
+		steps.add(new Step(Action.GRAB_LOWER));
+		steps.add(Step.phase("backOff", Profile.LINE_FOLLOWING));
+		steps.add(new Step(Action.BACK_OFF));
+		return new MissionPlan(layout, steps);
+	}
+
+	/**
+	 * @return a step driving from an intersection to another, with its route if the
+	 *         planner finds one
+	 */
+	private static Step travel(GridPlanner planner, int fromX, int fromY, double heading, int toX, int toY) {
+		List<int[]> route = planner == null ? null : planner.plan(fromX, fromY, heading, toX, toY);
+		return new Step(Action.TRAVEL, toX, toY, 0, route, fromX, fromY);
+	}
+
+	/**
+	 * @return true if the lower left corner is below and left of the upper right
+	 *         corner
+	 */
+	private static boolean isZone(int[] ll, int[] ur) {
+		return ll[0] < ur[0] && ll[1] < ur[1];
+	}
+
+	/**
+	 * This class is one step of a mission plan. Which fields are used depends on
+	 * the action.
+	 */
+	public static final class Step {
+		private final Action action;
+		private final int x;
+		private final int y;
+		private final double value;
+		private final List<int[]> route;
+		private final int fromX;
+		private final int fromY;
+		private final String phase;
+		private final Profile profile;
+
+		private Step(Action action) {
+			this(action, 0);
+		}
+
+		private Step(Action action, double value) {
+			this(action, 0, 0, value, null, -1, -1);
+		}
+
+		private Step(Action action, int x, int y, double value, List<int[]> route, int fromX, int fromY) {
+			this(action, x, y, value, route, fromX, fromY, null, null);
+		}
+
+		private Step(Action action, int x, int y, double value, List<int[]> route, int fromX, int fromY,
+				String phase, Profile profile) {
+			this.action = action;
+			this.x = x;
+			this.y = y;
+			this.value = value;
+			this.fromX = fromX;
+			this.fromY = fromY;
+			this.phase = phase;
+			this.profile = profile;
+			if (route == null) {
+				this.route = null;
+			} else {
+				List<int[]> corners = new ArrayList<int[]>();
+				for (int[] corner : route) {
+					corners.add(corner.clone());
+				}
+				this.route = Collections.unmodifiableList(corners);
+			}
+		}
+
+		private static Step phase(String name, Profile profile) {
+			return new Step(Action.PHASE, 0, 0, 0, null, -1, -1, name, profile);
+		}
+
+		/**
+		 * @return the action of the step
+		 */
+		public Action getAction() {
+			return action;
+		}
+
+		/**
+		 * @return the x coordinate of the waypoint of a TRAVEL step, or the starting
+		 *         x of a LIGHT_LOCALIZE or SWEEP_LOCALIZE step
+		 */
+		public int getX() {
+			return x;
+		}
+
+		/**
+		 * @return the y coordinate of the waypoint of a TRAVEL step, or the starting
+		 *         y of a LIGHT_LOCALIZE or SWEEP_LOCALIZE step
+		 */
+		public int getY() {
+			return y;
+		}
+
+		/**
+		 * @return the heading of a TURN_TO, LIGHT_LOCALIZE or SWEEP_LOCALIZE step
+		 *         and the angle of a TURN step in degrees, the distance of a MOVE
+		 *         step in cm, or the number of beeps of a BEEP step
+		 */
+		public double getValue() {
+			return value;
+		}
+
+		/**
+		 * @return the planned corners of a TRAVEL step followed by the waypoint, or
+		 *         null if it was not planned. The corners must not be modified.
+		 */
+		public List<int[]> getRoute() {
+			return route;
+		}
+
+		/**
+		 * @param x the x coordinate of the robot
+		 * @param y the y coordinate of the robot
+		 * @return true if the route of a TRAVEL step was planned from the
+		 *         intersection the robot is on
+		 */
+		public boolean startsAt(int x, int y) {
+			return route != null && x == fromX && y == fromY;
+		}
+
+		/**
+		 * @return the name of the game phase a PHASE step begins, or null if it only
+		 *         changes the sampling profile
+		 */
+		public String getPhase() {
+			return phase;
+		}
+
+		/**
+		 * @return the sampling profile a PHASE step switches to, or null to keep the
+		 *         current one
+		 */
+		public Profile getProfile() {
+			return profile;
+		}
+
+		public String toString() {
+			switch (action) {
+			case PHASE:
+				return "PHASE " + phase + " " + profile;
+			case LIGHT_LOCALIZE:
+			case SWEEP_LOCALIZE:
+				return action + " " + x + "," + y + " " + value;
+			case TRAVEL:
+				StringBuilder text = new StringBuilder(action + " " + fromX + "," + fromY + " >");
+				if (route == null) {
+					text.append(" ").append(x).append(",").append(y).append(" (unplanned)");
+				} else {
+					for (int[] corner : route) {
+						text.append(" ").append(corner[0]).append(",").append(corner[1]);
+					}
+				}
+				return text.toString();
+			case TURN_TO:
+			case TURN:
+			case MOVE:
+			case BEEP:
+				return action + " " + value;
+			default:
+				return action.toString();
+			}
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package ca.mcgill.ecse211.game;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import ca.mcgill.ecse211.hardware.Motor;
+
+/**
+ * This class is the completion handle of a motion command that runs while the
+ * caller goes on. A handle is done when the motors of the command have stopped,
+ * or when the command, run on a worker thread, has returned.
+ * <p>
+ * Handles compose: {@link #all(Motion...)} waits for motions running in
+ * parallel, such as the arm moving while the robot drives, and
+ * {@link #then(Command)} starts a command once a motion is done. The motors of
+ * a motion must not be used by another command until it is done.
+ *
+ */
+public abstract class Motion {
+
+	private static final ExecutorService composer = Executors.newCachedThreadPool(daemon("motion"));
+
+	/**
+	 * This interface is a motion command that has not started yet.
+	 */
+	public interface Command {
+		/**
+		 * Starts the command and returns immediately.
+		 *
+		 * @return the handle of the motion
+		 */
+		Motion start();
+	}
+
+	/**
+	 * @return true if the motion is over
+	 */
+	public abstract boolean isDone();
+
+	/**
+	 * Waits until the motion is over. If the command failed, its exception is
+	 * thrown here.
+	 */
+	public abstract void await();
+
+	/**
+	 * This method returns a handle that is done when the motion is over and the
+	 * command is done.
+	 *
+	 * @param next the command to start when the motion is over
+	 * @return the handle of the whole sequence
+	 */
+	public Motion then(final Command next) {
+		return submit(new Runnable() {
+			public void run() {
+				await();
+				next.start().await();
+			}
+		});
+	}
+
+	/**
+	 * This method returns the handle of rotations started on motors with
+	 * immediate return.
+	 *
+	 * @param motors the motors
+	 * @return a handle that is done when none of the motors moves
+	 */
+	public static Motion of(final Motor... motors) {
+		return new Motion() {
+			public boolean isDone() {
+				for (Motor motor : motors) {
+					if (motor.isMoving()) {
+						return false;
+					}
+				}
+				return true;
+			}
+
+			public void await() {
+				for (Motor motor : motors) {
+					motor.waitComplete();
+				}
+			}
+		};
+	}
+
+	/**
+	 * This method runs a blocking command on an executor.
+	 *
+	 * @param executor the executor, which orders the commands submitted to it
+	 * @param command  the command
+	 * @return a handle that is done when the command returns
+	 */
+	public static Motion submit(ExecutorService executor, Runnable command) {
+		final Future<?> future = executor.submit(command);
+		return new Motion() {
+			public boolean isDone() {
+				return future.isDone();
+			}
+
+			public void await() {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					} else if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new IllegalStateException(cause);
+				}
+			}
+		};
+	}
+
+	/**
+	 * This method runs a blocking command on a worker thread of its own.
+	 *
+	 * @param command the command
+	 * @return a handle that is done when the command returns
+	 */
+	public static Motion submit(Runnable command) {
+		return submit(composer, command);
+	}
+
+	/**
+	 * @param motions the motions running in parallel
+	 * @return a handle that is done when all the motions are done
+	 */
+	public static Motion all(final Motion... motions) {
+		return new Motion() {
+			public boolean isDone() {
+				for (Motion motion : motions) {
+					if (!motion.isDone()) {
+						return false;
+					}
+				}
+				return true;
+			}
+
+			public void await() {
+				for (Motion motion : motions) {
+					motion.await();
+				}
+			}
+		};
+	}
+
+	/**
+	 * @return a handle that is already done
+	 */
+	public static Motion done() {
+		return all();
+	}
+
+	/**
+	 * @param name the name of the threads
+	 * @return a factory of daemon threads, which do not keep the program running
+	 */
+	static ThreadFactory daemon(final String name) {
+		return new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+}
@@ -0,0 +1,143 @@
+package ca.mcgill.ecse211.game;
+
+import ca.mcgill.ecse211.hardware.Motor;
+
+/**
+ * This class plans the velocity profile of a wheel motion of known length. A
+ * trapezoidal profile accelerates at a constant rate up to the cruise speed and
+ * decelerates symmetrically; if the motion is too short to reach the cruise
+ * speed, the profile becomes a triangle with a lower peak. An S-curve profile
+ * also limits the jerk, so the acceleration itself ramps up and down.
+ * <p>
+ * The regulated motors only take a speed and a constant acceleration, so an
+ * S-curve is applied as the trapezoid with the same peak speed and ramp time.
+ * All values are in degrees of wheel rotation.
+ *
+ */
+public class MotionProfile {
+
+	private static final int SEARCH_STEPS = 30; // bisection steps for the S-curve peak speed
+
+	private final double distance;
+	private final double peakSpeed;
+	private final double rampTime;
+	private final double duration;
+
+	private MotionProfile(double distance, double peakSpeed, double rampTime) {
+		this.distance = distance;
+		this.peakSpeed = peakSpeed;
+		this.rampTime = rampTime;
+		this.duration = peakSpeed > 0 ? rampTime + distance / peakSpeed : 0;
+	}
+
+	/**
+	 * This method plans a trapezoidal profile.
+	 *
+	 * @param distance        the length of the motion in degrees
+	 * @param maxSpeed        the cruise speed in deg/s
+	 * @param maxAcceleration the acceleration in deg/s^2
+	 * @return the profile
+	 */
+	public static MotionProfile trapezoidal(double distance, double maxSpeed, double maxAcceleration) {
+		distance = Math.abs(distance);
+		// the ramps cover peak^2 / acceleration together
+		double peak = Math.min(maxSpeed, Math.sqrt(maxAcceleration * distance));
+		return new MotionProfile(distance, peak, peak / maxAcceleration);
+	}
+
+	/**
+	 * This method plans a jerk-limited S-curve profile.
+	 *
+	 * @param distance        the length of the motion in degrees
+	 * @param maxSpeed        the cruise speed in deg/s
+	 * @param maxAcceleration the acceleration in deg/s^2
+	 * @param maxJerk         the jerk in deg/s^3
+	 * @return the profile
+	 */
+	public static MotionProfile sCurve(double distance, double maxSpeed, double maxAcceleration, double maxJerk) {
+		distance = Math.abs(distance);
+		double peak = maxSpeed;
+		// both ramps together cover peak * rampTime, which grows with the peak speed
+		if (peak * rampTime(peak, maxAcceleration, maxJerk) > distance) {
+			double low = 0;
+			double high = maxSpeed;
+			for (int i = 0; i < SEARCH_STEPS; i++) {
+				double mid = (low + high) / 2;
+				if (mid * rampTime(mid, maxAcceleration, maxJerk) > distance) {
+					high = mid;
+				} else {
+					low = mid;
+				}
+			}
+			peak = low;
+		}
+		return new MotionProfile(distance, peak, rampTime(peak, maxAcceleration, maxJerk));
+	}
+
+	/**
+	 * @return the time to go from rest to speed with limited acceleration and jerk
+	 */
+	private static double rampTime(double speed, double maxAcceleration, double maxJerk) {
+		if (speed >= maxAcceleration * maxAcceleration / maxJerk) {
+			// the acceleration saturates between the two jerk phases
+			return speed / maxAcceleration + maxAcceleration / maxJerk;
+		}
+		return 2 * Math.sqrt(speed / maxJerk);
+	}
+
+	/**
+	 * This method computes how long a motion takes with a fixed speed and
+	 * acceleration, as the motors did before profiles were planned.
+	 *
+	 * @param distance     the length of the motion in degrees
+	 * @param speed        the speed in deg/s
+	 * @param acceleration the acceleration in deg/s^2
+	 * @return the duration in s
+	 */
+	public static double duration(double distance, double speed, double acceleration) {
+		return trapezoidal(distance, speed, acceleration).getDuration();
+	}
+
+	/**
+	 * This method sets the speed and acceleration of the motors to follow the
+	 * profile.
+	 *
+	 * @param motors the motors doing the motion
+	 */
+	public void apply(Motor... motors) {
+		int speed = Math.max(1, (int) Math.round(peakSpeed));
+		int acceleration = Math.max(1, (int) Math.round(getAcceleration()));
+		for (Motor motor : motors) {
+			motor.setSpeed(speed);
+			motor.setAcceleration(acceleration);
+		}
+	}
+
+	/**
+	 * @return the length of the motion in degrees
+	 */
+	public double getDistance() {
+		return distance;
+	}
+
+	/**
+	 * @return the highest speed of the motion in deg/s
+	 */
+	public double getPeakSpeed() {
+		return peakSpeed;
+	}
+
+	/**
+	 * @return the mean acceleration of the ramps in deg/s^2
+	 */
+	public double getAcceleration() {
+		return rampTime > 0 ? peakSpeed / rampTime : 0;
+	}
+
+	/**
+	 * @return the duration of the motion in s
+	 */
+	public double getDuration() {
+		return duration;
+	}
+}
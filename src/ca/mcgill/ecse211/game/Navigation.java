@@ -1,10 +1,20 @@
 package ca.mcgill.ecse211.game;
 
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ca.mcgill.ecse211.hardware.Clock;
+import ca.mcgill.ecse211.hardware.Motor;
+import ca.mcgill.ecse211.localization.LocalizationScheduler;
+import ca.mcgill.ecse211.metrics.Counter;
+import ca.mcgill.ecse211.metrics.LatencyHistogram;
+import ca.mcgill.ecse211.metrics.Metrics;
 import ca.mcgill.ecse211.odometer.Odometer;
 import ca.mcgill.ecse211.odometer.OdometerExceptions;
+import ca.mcgill.ecse211.odometer.PoseEstimator;
+import ca.mcgill.ecse211.threads.LineCrossingMonitor;
 import ca.mcgill.ecse211.threads.SensorData;
-import lejos.hardware.Sound;
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
 
 /**
  * This class implements the navigation functionality of the robot. The travelTo() method 
@@ -14,6 +24,11 @@ import lejos.hardware.motor.EV3LargeRegulatedMotor;
  * 
  * It also contains helper methods which facilitates the robot's movement.
  * 
+ * The methods ending in Async return a {@link Motion} handle instead of blocking. Their commands
+ * run one at a time on a wheel thread, in the order they were started, so the caller can move the
+ * arm or plan the next step meanwhile. A blocking method must not be called while an asynchronous
+ * command is still running.
+ * 
  * @author Ajay Patel
  * @author Fandi Yi
  * @author Lucas Bellido
@@ -27,30 +42,167 @@ public class Navigation {
 	private static final int FORWARD_SPEED = 120;
 	private static final int ROTATE_SPEED = 80;
 	private static final int ACCELERATION = 300;
+	private static final long LINE_WAIT = 50; // max time between motor checks while waiting for a line, in ms
+	private static final double MAX_LINE_DISTANCE = 1.2 * Game.TILE; // driven before a line is missed, in cm
+	static final double TUNNEL_CENTER_OFFSET = 5.5; // from the edge in front of the tunnel to its center, in cm
+
+	// limits of the motion profiles of long straight runs and turns, in deg/s,
+	// deg/s^2 and deg/s^3 of wheel rotation
+	private static final int CRUISE_SPEED = 320;
+	private static final int CRUISE_ACCELERATION = 600;
+	private static final int MAX_ROTATE_SPEED = 160;
+	private static final int ROTATE_ACCELERATION = 400;
+	private static final int JERK = 4000;
+	// heading control while driving straight: PID gains on the odometer heading, period of the
+	// control ticks, largest correction as a share of the wheel speed, and largest distance from
+	// a grid direction that is snapped to it
+	private static final double HEADING_KP = 5;
+	private static final double HEADING_KI = 1;
+	private static final double HEADING_KD = 0.2;
+	private static final long CONTROL_PERIOD = 20; // in ms
+	private static final double MAX_CORRECTION = 0.3;
+	private static final double SNAP_ANGLE = 20; // in degrees
+	private static final double MAX_ARC_ANGLE = 90; // largest bearing of an arcTo target from the heading, in degrees
+
+	// largest pose errors (1 sigma) of the pose estimator, or expected errors of the localization
+	// scheduler, for which a self localization is skipped, in cm and degrees
+	private static final double MAX_POSITION_ERROR = 1.5;
+	private static final double MAX_HEADING_ERROR = 1.5;
 
-	private EV3LargeRegulatedMotor leftMotor;
-	private EV3LargeRegulatedMotor rightMotor;
+	private static boolean useProfiles = true;
+	private static boolean headingControl = true;
+	private static GridPlanner planner = null;
+	private static boolean scheduledLocalization = true;
+	private static final LocalizationScheduler localization = new LocalizationScheduler(MAX_POSITION_ERROR,
+			MAX_HEADING_ERROR);
+	// the commands started by the asynchronous methods, one at a time
+	private static final ExecutorService wheels = Executors.newSingleThreadExecutor(Motion.daemon("wheels"));
+
+	private Motor leftMotor;
+	private Motor rightMotor;
 	private Odometer odometer;
 	private SensorData data;
+	private LineCrossingMonitor lines;
+	private final LatencyHistogram lineWakeups = Metrics.histogram("navigation.line.wakeups");
+	private final LatencyHistogram lineStopLatency = Metrics.histogram("navigation.line.stop");
+	private final Counter profileSaved = Metrics.counter("navigation.profile.saved"); // in ms
+	private final Counter localizationsSkipped = Metrics.counter("navigation.localize.skipped");
+	private final Counter localizationsPartial = Metrics.counter("navigation.localize.partial");
+	private final Counter localizationSaved = Metrics.counter("navigation.localize.saved"); // in ms
+	private final Counter missedLines = Metrics.counter("navigation.line.missed");
+	private final Counter lineStops = Metrics.counter("navigation.line.stops");
+	private final HeadingController heading = new HeadingController(HEADING_KP, HEADING_KI, HEADING_KD);
+	private final double[] pose = new double[3]; // the pose driveToLine reads, so its control loop does not allocate
 
 	/**
 	 * This navigation class constructor sets up our robot to begin navigating a
 	 * particular map
 	 * 
-	 * @param leftMotor  The EV3LargeRegulatedMotor instance for our left motor
-	 * @param rightMotor The EV3LargeRegulatedMotor instance for our right motor
+	 * @param leftMotor  The Motor instance for our left motor
+	 * @param rightMotor The Motor instance for our right motor
 	 */
-	public Navigation(EV3LargeRegulatedMotor leftMotor, EV3LargeRegulatedMotor rightMotor) throws OdometerExceptions {
+	public Navigation(Motor leftMotor, Motor rightMotor) throws OdometerExceptions {
 		this.odometer = Odometer.getOdometer();
 		this.leftMotor = leftMotor;
 		this.rightMotor = rightMotor;
 		this.data = SensorData.getSensorData();
-		for (EV3LargeRegulatedMotor motor : new EV3LargeRegulatedMotor[] { this.leftMotor, this.rightMotor }) {
+		this.lines = data.getLineCrossings();
+		for (Motor motor : new Motor[] { this.leftMotor, this.rightMotor }) {
 			motor.stop();
 			motor.setAcceleration(ACCELERATION);
 		}
 	}
 
+	/**
+	 * This method chooses whether straight drives hold their heading with a
+	 * controller, which lets them pass the grid lines on the way without stopping,
+	 * or drive open loop and square on every line.
+	 * 
+	 * @param enabled true to control the heading
+	 */
+	public static void setHeadingControl(boolean enabled) {
+		headingControl = enabled;
+	}
+
+	/**
+	 * This method chooses whether moves and turns follow planned motion profiles,
+	 * or use the fixed speeds.
+	 * 
+	 * @param enabled true to plan motion profiles
+	 */
+	public static void setProfiles(boolean enabled) {
+		useProfiles = enabled;
+	}
+
+	/**
+	 * This method sets the planner used to route travelTo() around the zones. Without
+	 * a planner, the robot moves along Y first and then along X.
+	 * 
+	 * @param gridPlanner the planner, or null to use the fixed routing
+	 */
+	public static void setPlanner(GridPlanner gridPlanner) {
+		planner = gridPlanner;
+	}
+
+	/**
+	 * This method chooses whether the self localizations on the way are run only when the
+	 * localization scheduler or the pose estimator find the pose uncertain, or every time.
+	 * 
+	 * @param scheduled true to skip the localizations that are not needed
+	 */
+	public static void setScheduledLocalization(boolean scheduled) {
+		scheduledLocalization = scheduled;
+	}
+
+	/**
+	 * @return the scheduler that tracks the expected drift of the pose
+	 */
+	public static LocalizationScheduler getLocalization() {
+		return localization;
+	}
+
+	/**
+	 * @return the planner used by travelTo(), or null
+	 */
+	public static GridPlanner getPlanner() {
+		return planner;
+	}
+
+	/**
+	 * This method estimates the time to drive one tile in the middle of a
+	 * straight segment.
+	 * 
+	 * @return the time in s
+	 */
+	public static double estimateTileTime() {
+		int tile = convertDistance(Game.WHEEL_RAD, Game.TILE);
+		if (!useProfiles) {
+			return MotionProfile.duration(tile, FORWARD_SPEED, ACCELERATION);
+		}
+		MotionProfile cruise = MotionProfile.sCurve(2 * tile, CRUISE_SPEED, CRUISE_ACCELERATION, JERK);
+		return MotionProfile.duration(tile, cruise.getPeakSpeed(), cruise.getAcceleration());
+	}
+
+	/**
+	 * This method estimates the time to turn on the spot and start a new straight
+	 * segment, which drives slowly to its last line and backs off by the sensor
+	 * offset.
+	 * 
+	 * @param angle the angle of the turn in degrees
+	 * @return the time in s
+	 */
+	public static double estimateTurnTime(double angle) {
+		int wheelAngle = convertAngle(Game.WHEEL_RAD, Game.TRACK, angle);
+		int tile = convertDistance(Game.WHEEL_RAD, Game.TILE);
+		int offset = convertDistance(Game.WHEEL_RAD, Game.SEN_DIS);
+		double turn = useProfiles
+				? MotionProfile.sCurve(wheelAngle, MAX_ROTATE_SPEED, ROTATE_ACCELERATION, JERK).getDuration()
+				: MotionProfile.duration(wheelAngle, ROTATE_SPEED, ACCELERATION);
+		double segment = MotionProfile.duration(tile, FORWARD_SPEED, ACCELERATION) - estimateTileTime()
+				+ 2 * MotionProfile.duration(offset, FORWARD_SPEED, ACCELERATION);
+		return turn + segment;
+	}
+
 	/**
 	 * This method travel the robot to desired position by following the line
 	 * (Always rotate 90 degree), along with a correction
@@ -65,10 +217,20 @@ public class Navigation {
 	 *          sensor to avoid abstacle when navigating
 	 */
 	public void travelTo(int x, int y) {
-		double dX = x - odometer.getXYT()[0];
-		double dY = y - odometer.getXYT()[1];
+		double[] position = odometer.getXYT();
+		if (planner != null) {
+			List<int[]> route = planner.plan((int) Math.round(position[0]), (int) Math.round(position[1]), position[2],
+					x, y);
+			if (route != null) {
+				followRoute(route);
+				return;
+			}
+		}
+
+		double dX = x - position[0];
+		double dY = y - position[1];
 
-		double theta = odometer.getXYT()[2];
+		double theta = position[2];
 
 		if (dY > 0.1) {
 			turnTo(0);
@@ -93,6 +255,26 @@ public class Navigation {
 
 	}
 
+	/**
+	 * This method drives along a planned route, one straight segment per corner.
+	 * 
+	 * @param route the corners of the route followed by the destination
+	 */
+	public void followRoute(List<int[]> route) {
+		double[] position = odometer.getXYT();
+		int x = (int) Math.round(position[0]);
+		int y = (int) Math.round(position[1]);
+		for (int[] corner : route) {
+			double theta = GridPlanner.headingOf(x, y, corner[0], corner[1]);
+			turnTo(theta);
+			moveWithCorrection(Math.abs(corner[0] - x) + Math.abs(corner[1] - y), theta);
+			odometer.setX(corner[0]);
+			odometer.setY(corner[1]);
+			x = corner[0];
+			y = corner[1];
+		}
+	}
+
 	/**
 	 * Move a certain distance with correction (using coordinate system)
 	 * 
@@ -105,43 +287,161 @@ public class Navigation {
 
 		// correct error of the distance
 		int tiles = Math.abs((int) Math.round(distance)) + 1;
+		if (headingControl) {
+			// pass the lines on the way and approach the last one slowly
+			if (useProfiles && tiles > 1) {
+				MotionProfile profile = MotionProfile.sCurve(convertDistance(Game.WHEEL_RAD, tiles * Game.TILE),
+						CRUISE_SPEED, CRUISE_ACCELERATION, JERK);
+				profile.apply(leftMotor, rightMotor);
+				recordSaving(convertDistance(Game.WHEEL_RAD, tiles * Game.TILE), profile, FORWARD_SPEED);
+			} else {
+				setSpeedAndAcceleration(FORWARD_SPEED);
+			}
+			driveToLine(true, tiles, FORWARD_SPEED);
+			odometer.setTheta(theta);
+			moveBackByOffset();
+			return;
+		}
+		// the wheels stop at every line, so each profile only covers the tile driven
+		int tileAngle = convertDistance(Game.WHEEL_RAD, Game.TILE);
 		for (int i = 0; i < tiles; i++) {
+			// hurry while more than one tile is left, approach the last line slowly
+			if (useProfiles && tiles - i > 1) {
+				MotionProfile profile = MotionProfile.sCurve(tileAngle, CRUISE_SPEED, CRUISE_ACCELERATION, JERK);
+				profile.apply(leftMotor, rightMotor);
+				recordSaving(tileAngle, profile, FORWARD_SPEED);
+			} else {
+				setSpeedAndAcceleration(FORWARD_SPEED);
+			}
 			moveOneTileWithCorrection(theta);
 		}
-		leftMotor.rotate(-convertDistance(Game.WHEEL_RAD, Game.SEN_DIS), true);
-		rightMotor.rotate(-convertDistance(Game.WHEEL_RAD, Game.SEN_DIS), false);
+		moveBackByOffset();
 	}
 
-	private void moveOneTileWithCorrection(double theta) {
-		leftMotor.forward();
-		rightMotor.forward();
-		while (leftMotor.isMoving() || rightMotor.isMoving()) {
-			double left = data.getL()[0];
-			double right = data.getL()[1];
-			if (left < -5) {
-				leftMotor.stop(true);
-			}
-			if (right < -5) {
-				rightMotor.stop(true);
+	/**
+	 * This method starts {@link #moveWithCorrection(double, double)}.
+	 * 
+	 * @param tiles the number of tiles to cover
+	 * @param theta the heading set at each line
+	 * @return the handle of the motion
+	 */
+	public Motion moveTilesAsync(final double tiles, final double theta) {
+		return Motion.submit(wheels, new Runnable() {
+			public void run() {
+				moveWithCorrection(tiles, theta);
 			}
-		}
+		});
+	}
+
+	private void moveOneTileWithCorrection(double theta) {
+		driveToLine(true);
 		odometer.setTheta(theta);
 	}
 	
 	
 	public void moveOneTileWithCorrection() {
-		leftMotor.forward();
-		rightMotor.forward();
+		driveToLine(true);
+	}
+
+	/**
+	 * This method drives both wheels until each of the back light sensors crosses a grid line. Each
+	 * wheel stops as soon as its own sensor sees the line, which squares the robot to the line. The
+	 * thread sleeps on the line crossing events published by the light poller instead of polling
+	 * the sensor values.
+	 * 
+	 * @param forward true to drive forward, false to drive backward
+	 */
+	public void driveToLine(boolean forward) {
+		driveToLine(forward, 1, leftMotor.getSpeed());
+	}
+
+	/**
+	 * This method drives both wheels until each of the back light sensors has crossed a number of
+	 * grid lines, and squares the robot on the last one. With heading control, the wheel speeds are
+	 * corrected every CONTROL_PERIOD to hold the grid direction closest to the heading, until one
+	 * wheel stops.
+	 * 
+	 * @param forward       true to drive forward, false to drive backward
+	 * @param count         the number of lines to cross
+	 * @param approachSpeed the speed after the line before the last one, in deg/s
+	 */
+	private void driveToLine(boolean forward, int count, int approachSpeed) {
+		int leftStart = leftMotor.getTachoCount();
+		int rightStart = rightMotor.getTachoCount();
+		long leftSeen = lines.getCount(LineCrossingMonitor.LEFT);
+		long rightSeen = lines.getCount(LineCrossingMonitor.RIGHT);
+		long leftLast = leftSeen + count;
+		long rightLast = rightSeen + count;
+		boolean leftStopped = false;
+		boolean rightStopped = false;
+		boolean steering = headingControl;
+		int speed = leftMotor.getSpeed();
+		odometer.readInto(pose);
+		double theta = pose[2];
+		double grid = 90 * Math.round(theta / 90);
+		heading.reset(Math.abs(grid - theta) < SNAP_ANGLE ? grid : theta);
+		long lastControl = Clock.nanos();
+		int wakeups = 0;
+		if (forward) {
+			leftMotor.forward();
+			rightMotor.forward();
+		} else {
+			leftMotor.backward();
+			rightMotor.backward();
+		}
 		while (leftMotor.isMoving() || rightMotor.isMoving()) {
-			double left = data.getL()[0];
-			double right = data.getL()[1];
-			if (left < -5) {
+			try {
+				lines.awaitCrossing(leftSeen, rightSeen, steering ? CONTROL_PERIOD : LINE_WAIT);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+			wakeups++;
+			if (!leftStopped && lines.getCount(LineCrossingMonitor.LEFT) >= leftLast) {
 				leftMotor.stop(true);
+				leftStopped = true;
+				lineStopLatency.record((Clock.millis() - lines.getTime(LineCrossingMonitor.LEFT)) * 1000000L);
 			}
-			if (right < -5) {
+			if (!rightStopped && lines.getCount(LineCrossingMonitor.RIGHT) >= rightLast) {
 				rightMotor.stop(true);
+				rightStopped = true;
+				lineStopLatency.record((Clock.millis() - lines.getTime(LineCrossingMonitor.RIGHT)) * 1000000L);
+			}
+			if (speed != approachSpeed && (lines.getCount(LineCrossingMonitor.LEFT) >= leftLast - 1
+					|| lines.getCount(LineCrossingMonitor.RIGHT) >= rightLast - 1)) {
+				speed = approachSpeed;
+				setSpeedAndAcceleration(speed);
 			}
+			if (steering && (leftStopped || rightStopped)) {
+				// the wheel still running squares the robot on the line
+				steering = false;
+				(leftStopped ? rightMotor : leftMotor).setSpeed(speed);
+			} else if (steering) {
+				long now = Clock.nanos();
+				odometer.readInto(pose);
+				double correction = heading.update(pose[2], (now - lastControl) / 1e9,
+						MAX_CORRECTION * speed);
+				lastControl = now;
+				if (!forward) {
+					correction = -correction;
+				}
+				leftMotor.setSpeed((int) Math.round(speed + correction));
+				rightMotor.setSpeed((int) Math.round(speed - correction));
+			}
+			// keep waiting for the other sensor only
+			leftSeen = lines.getCount(LineCrossingMonitor.LEFT);
+			rightSeen = lines.getCount(LineCrossingMonitor.RIGHT);
+		}
+		lineWakeups.record(wakeups);
+		lineStops.increment();
+		int driven = Math.max(Math.abs(leftMotor.getTachoCount() - leftStart),
+				Math.abs(rightMotor.getTachoCount() - rightStart));
+		if (driven > convertDistance(Game.WHEEL_RAD, (count - 1) * Game.TILE + MAX_LINE_DISTANCE)) {
+			// a line was crossed without being seen
+			missedLines.increment();
+			localization.missedLine();
 		}
+		odometer.readInto(pose);
+		localization.squared(pose[2]);
 	}
 
 	/**
@@ -175,138 +475,254 @@ public class Navigation {
 		dTheta = angle - odometer.getXYT()[2];
 		if (dTheta < 0)
 			dTheta += 360;
+		localization.turned(dTheta > 180 ? 360 - dTheta : dTheta);
 
 		// TURN RIGHT
 		if (dTheta > 180) {
-			leftMotor.setSpeed(ROTATE_SPEED);
-			rightMotor.setSpeed(ROTATE_SPEED);
-			leftMotor.rotate(-convertAngle(Game.WHEEL_RAD, Game.TRACK, 360 - dTheta), true);
-			rightMotor.rotate(convertAngle(Game.WHEEL_RAD, Game.TRACK, 360 - dTheta), false);
+			int wheelAngle = convertAngle(Game.WHEEL_RAD, Game.TRACK, 360 - dTheta);
+			planTurn(wheelAngle);
+			leftMotor.rotate(-wheelAngle, true);
+			rightMotor.rotate(wheelAngle, false);
 		}
 		// TURN LEFT
 		else {
-			leftMotor.setSpeed(ROTATE_SPEED);
-			rightMotor.setSpeed(ROTATE_SPEED);
-			leftMotor.rotate(convertAngle(Game.WHEEL_RAD, Game.TRACK, dTheta), true);
-			rightMotor.rotate(-convertAngle(Game.WHEEL_RAD, Game.TRACK, dTheta), false);
+			int wheelAngle = convertAngle(Game.WHEEL_RAD, Game.TRACK, dTheta);
+			planTurn(wheelAngle);
+			leftMotor.rotate(wheelAngle, true);
+			rightMotor.rotate(-wheelAngle, false);
+		}
+		// the other rotations keep using the fixed turning speed
+		setSpeedAndAcceleration(ROTATE_SPEED);
+	}
+
+	/**
+	 * This method starts {@link #turnTo(double)}.
+	 * 
+	 * @param angle The angle we want our robot to turn to (in degrees)
+	 * @return the handle of the motion
+	 */
+	public Motion turnToAsync(final double angle) {
+		return Motion.submit(wheels, new Runnable() {
+			public void run() {
+				turnTo(angle);
+			}
+		});
+	}
+
+	/**
+	 * This method drives the robot along a circular arc to a point, without
+	 * stopping to turn. The arc starts along the current heading, so the robot
+	 * arrives turned by twice the bearing of the point. The wheel speeds are in the
+	 * ratio of their distances, so both wheels finish together.
+	 * 
+	 * @param x the x coordinate of the point in tiles
+	 * @param y the y coordinate of the point in tiles
+	 * @throws IllegalArgumentException if the point is more than MAX_ARC_ANGLE
+	 *                                  away from the heading
+	 */
+	public synchronized void arcTo(double x, double y) {
+		double[] position = odometer.getXYT();
+		double dX = (x - position[0]) * Game.TILE;
+		double dY = (y - position[1]) * Game.TILE;
+		double bearing = Math.toDegrees(Math.atan2(dX, dY)) - position[2];
+		bearing = bearing - 360 * Math.floor((bearing + 180) / 360);
+		if (Math.abs(bearing) > MAX_ARC_ANGLE) {
+			throw new IllegalArgumentException("Point " + x + "," + y + " is behind the robot");
+		}
+		double alpha = Math.toRadians(bearing);
+		double chord = Math.hypot(dX, dY);
+		double length = Math.abs(alpha) < 1e-9 ? chord : chord * alpha / Math.sin(alpha);
+		// the heading changes by 2 alpha: the left wheel drives alpha * TRACK more than the right one
+		int left = convertDistance(Game.WHEEL_RAD, length + alpha * Game.TRACK);
+		int right = convertDistance(Game.WHEEL_RAD, length - alpha * Game.TRACK);
+		localization.moved(length, position[2] + bearing);
+		localization.turned(2 * bearing);
+
+		double faster = Math.max(Math.abs(left), Math.abs(right));
+		if (faster == 0) {
+			return;
+		}
+		leftMotor.setSpeed((int) Math.max(1, Math.round(FORWARD_SPEED * Math.abs(left) / faster)));
+		rightMotor.setSpeed((int) Math.max(1, Math.round(FORWARD_SPEED * Math.abs(right) / faster)));
+		leftMotor.setAcceleration((int) Math.max(1, Math.round(ACCELERATION * Math.abs(left) / faster)));
+		rightMotor.setAcceleration((int) Math.max(1, Math.round(ACCELERATION * Math.abs(right) / faster)));
+		leftMotor.rotate(left, true);
+		rightMotor.rotate(right, false);
+		leftMotor.waitComplete();
+		setSpeedAndAcceleration(FORWARD_SPEED);
+	}
+
+	/**
+	 * This method starts {@link #arcTo(double, double)}.
+	 * 
+	 * @param x the x coordinate of the point in tiles
+	 * @param y the y coordinate of the point in tiles
+	 * @return the handle of the motion
+	 */
+	public Motion arcToAsync(final double x, final double y) {
+		return Motion.submit(wheels, new Runnable() {
+			public void run() {
+				arcTo(x, y);
+			}
+		});
+	}
+
+	/**
+	 * This method sets the speed and acceleration of both wheels for a turn. Large
+	 * turns go faster than ROTATE_SPEED, small corrections slower.
+	 * 
+	 * @param wheelAngle the rotation of each wheel in degrees
+	 */
+	private void planTurn(int wheelAngle) {
+		if (!useProfiles) {
+			setSpeedAndAcceleration(ROTATE_SPEED);
+			return;
+		}
+		MotionProfile profile = MotionProfile.sCurve(wheelAngle, MAX_ROTATE_SPEED, ROTATE_ACCELERATION, JERK);
+		profile.apply(leftMotor, rightMotor);
+		recordSaving(wheelAngle, profile, ROTATE_SPEED);
+	}
+
+	/**
+	 * This method sets both wheels to a fixed speed and the default acceleration.
+	 * 
+	 * @param speed the speed in deg/s
+	 */
+	private void setSpeedAndAcceleration(int speed) {
+		for (Motor motor : new Motor[] { leftMotor, rightMotor }) {
+			motor.setSpeed(speed);
+			motor.setAcceleration(ACCELERATION);
 		}
 	}
 
+	/**
+	 * This method counts the time a profile saves over the fixed speed.
+	 * 
+	 * @param wheelAngle the rotation of each wheel in degrees
+	 * @param profile    the planned profile
+	 * @param speed      the fixed speed used before
+	 */
+	private void recordSaving(int wheelAngle, MotionProfile profile, int speed) {
+		double fixed = MotionProfile.duration(wheelAngle, speed, ACCELERATION);
+		double planned = MotionProfile.duration(wheelAngle, profile.getPeakSpeed(), profile.getAcceleration());
+		profileSaved.add(Math.round((fixed - planned) * 1000));
+	}
+
 	/**
 	 * This method finds the tunnel based on the tunnel_ll and tunnel_ur coordinate,
 	 * after the method, the robot will go the the entrance of the tunnel facing the
 	 * tunnel
 	 * 
+	 * The robot stops in the middle of the far edge of the tile in front of the
+	 * tunnel. It gets there by driving to one end of that edge and half a tile
+	 * along it; with a planner, the end with the fastest route is used.
+	 * 
 	 * @param ll: lower left corner coordinate
 	 * @param ur: upper right corner coordinate
 	 */
 	public void goToTunnel(int[] ll, int[] ur, int SC) {
-		// find tunnel entrance
-		if (GameParameter.GreenCorner == 0) {
-			// case 1: starting corner at 0
-			if (GameParameter.determineTunnelHeading(ll, ur) == GameParameter.TunnelHeading.NORTH) {
-				// case 1.1: starting corner at 0 and tunnel is facing north
-				travelTo(ll[0], ll[1] - 1);
-				turnTo(90);
-				moveOneTileWithCorrection();
-				// move to the center of the tile
-				leftMotor.rotate(convertDistance(Game.WHEEL_RAD, 5.5), true);
-				rightMotor.rotate(convertDistance(Game.WHEEL_RAD, 5.5), false);
-				leftMotor.rotate(-convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), true);
-				rightMotor.rotate(convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), false);
-				
-			} else if (GameParameter.determineTunnelHeading(ll, ur) == GameParameter.TunnelHeading.EAST) {
-				// case 1.2: starting corner at 0 and tunnel is facing east
-				travelTo(ll[0] - 1, ll[1]);
-				turnTo(90);
-				leftMotor.rotate(-convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), true);
-				rightMotor.rotate(convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), false);
-				moveOneTileWithCorrection();
-				// move to the center of the tile
-				leftMotor.rotate(convertDistance(Game.WHEEL_RAD, 5.5), true);
-				rightMotor.rotate(convertDistance(Game.WHEEL_RAD, 5.5), false);
-				leftMotor.rotate(convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), true);
-				rightMotor.rotate(-convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), false);
-			}
-			
-		} else if (GameParameter.GreenCorner == 1) {
-			// case 2: starting corner at 1
-			if (GameParameter.determineTunnelHeading(ll, ur) == GameParameter.TunnelHeading.NORTH) {
-				// case 2.1: starting corner at 1 and tunnel is facing north
-				travelTo(ur[0], ll[1] - 1);
-				turnTo(270);
-				moveOneTileWithCorrection();
-				// move to the center of the tile
-				leftMotor.rotate(convertDistance(Game.WHEEL_RAD, 5.5), true);
-				rightMotor.rotate(convertDistance(Game.WHEEL_RAD, 5.5), false);
-				leftMotor.rotate(convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), true);
-				rightMotor.rotate(-convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), false);
-			} else if (GameParameter.determineTunnelHeading(ll, ur) == GameParameter.TunnelHeading.WEST) {
-				// case 2.2: starting corner at 1 and tunnel is facing west
-				travelTo(ur[0] + 1, ur[1] - 1);
-				turnTo(270);
-				leftMotor.rotate(convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), true);
-				rightMotor.rotate(-convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), false);
-				moveOneTileWithCorrection();
-				// move to the center of the tile
-				leftMotor.rotate(convertDistance(Game.WHEEL_RAD, 5.5), true);
-				rightMotor.rotate(convertDistance(Game.WHEEL_RAD, 5.5), false);
-				leftMotor.rotate(-convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), true);
-				rightMotor.rotate(convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), false);
-			}
-		} else if (GameParameter.GreenCorner == 2) {
-			// case 3: starting corner at 2
-			if (GameParameter.determineTunnelHeading(ll, ur) == GameParameter.TunnelHeading.SOUTH) {
-				// case 3.1: starting corner at 2 and tunnel is facing south
-				travelTo(ur[0], ur[1] + 1);
-				turnTo(270);
-				moveOneTileWithCorrection();
-				// move to the center of the tile
-				leftMotor.rotate(convertDistance(Game.WHEEL_RAD, 5.5), true);
-				rightMotor.rotate(convertDistance(Game.WHEEL_RAD, 5.5), false);
-				leftMotor.rotate(-convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), true);
-				rightMotor.rotate(convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), false);
-			} else if (GameParameter.determineTunnelHeading(ll, ur) == GameParameter.TunnelHeading.WEST) {
-				// case 3.2: starting corner at 2 and tunnel is facing west
-				travelTo(ur[0] + 1, ur[1]);
-				turnTo(270);
-				leftMotor.rotate(-convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), true);
-				rightMotor.rotate(convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), false);
-				moveOneTileWithCorrection();
-				// move to the center of the tile
-				leftMotor.rotate(convertDistance(Game.WHEEL_RAD, 5.5), true);
-				rightMotor.rotate(convertDistance(Game.WHEEL_RAD, 5.5), false);
-				leftMotor.rotate(convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), true);
-				rightMotor.rotate(-convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), false);
-			}
-		} else if (GameParameter.GreenCorner == 3) {
-			// case 4: starting corner at 3
-			if (GameParameter.determineTunnelHeading(ll, ur) == GameParameter.TunnelHeading.SOUTH) {
-				// case 4.1: starting corner at 3 and tunnel is facing south
-				travelTo(ur[0] - 1, ur[1] + 1);
-				turnTo(90);
-				moveOneTileWithCorrection();
-				// move to the center of the tile
-				leftMotor.rotate(convertDistance(Game.WHEEL_RAD, 5.5), true);
-				rightMotor.rotate(convertDistance(Game.WHEEL_RAD, 5.5), false);
-				leftMotor.rotate(convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), true);
-				rightMotor.rotate(-convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), false);
-			} else if (GameParameter.determineTunnelHeading(ll, ur) == GameParameter.TunnelHeading.EAST) {
-				// case 4.2: starting corner at 3 and tunnel is facing east
-				travelTo(ll[0] - 1, ll[1] + 1);
-				turnTo(90);
-				leftMotor.rotate(convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), true);
-				rightMotor.rotate(-convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), false);
-				moveOneTileWithCorrection();
-				// move to the center of the tile
-				leftMotor.rotate(convertDistance(Game.WHEEL_RAD, 5.5), true);
-				rightMotor.rotate(convertDistance(Game.WHEEL_RAD, 5.5), false);
-				leftMotor.rotate(-convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), true);
-				rightMotor.rotate(convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), false);
+		double[] position = odometer.getXYT();
+		int[][] edge = tunnelEdge(ll, ur, (int) Math.round(position[0]), (int) Math.round(position[1]),
+				position[2]);
+		if (edge == null) {
+			return;
+		}
+		travelTo(edge[0][0], edge[0][1]);
+		turnTo(GridPlanner.headingOf(edge[0][0], edge[0][1], edge[1][0], edge[1][1]));
+		moveOneTileWithCorrection();
+		// move to the center of the tile
+		move(TUNNEL_CENTER_OFFSET);
+		// quarter turn to face the tunnel
+		turn(tunnelTurn(edge, GameParameter.determineTunnelHeading(ll, ur)));
+	}
+
+	/**
+	 * This method chooses how the robot approaches a tunnel: it drives to one end
+	 * of the far edge of the tile in front of the tunnel, then along that edge. The
+	 * end with the fastest route is used, or the one inside the zone without a
+	 * planner.
+	 * 
+	 * @param ll    the lower left corner of the tunnel
+	 * @param ur    the upper right corner of the tunnel
+	 * @param x     the x coordinate of the robot
+	 * @param y     the y coordinate of the robot
+	 * @param theta the heading of the robot in degrees
+	 * @return the end to drive to followed by the other end, or null if the
+	 *         heading of the tunnel is unknown
+	 */
+	public static int[][] tunnelEdge(int[] ll, int[] ur, int x, int y, double theta) {
+		GameParameter.TunnelHeading heading = GameParameter.determineTunnelHeading(ll, ur);
+		if (heading == null) {
+			return null;
+		}
+		// the two ends of the far edge of the tile in front of the tunnel
+		int[][] ends;
+		switch (heading) {
+		case NORTH:
+			ends = new int[][] { { ll[0], ll[1] - 1 }, { ur[0], ll[1] - 1 } };
+			break;
+		case SOUTH:
+			ends = new int[][] { { ll[0], ur[1] + 1 }, { ur[0], ur[1] + 1 } };
+			break;
+		case EAST:
+			ends = new int[][] { { ll[0] - 1, ll[1] }, { ll[0] - 1, ur[1] } };
+			break;
+		default:
+			ends = new int[][] { { ur[0] + 1, ll[1] }, { ur[0] + 1, ur[1] } };
+			break;
+		}
+
+		// start from the end with the fastest route, or the one inside the zone
+		int first = 0;
+		if (planner != null) {
+			double[] cost = new double[2];
+			for (int i = 0; i < 2; i++) {
+				int[] other = ends[1 - i];
+				cost[i] = planner.cost(x, y, theta, ends[i][0], ends[i][1],
+						GridPlanner.headingOf(ends[i][0], ends[i][1], other[0], other[1]));
 			}
+			first = cost[1] < cost[0] ? 1 : 0;
+		} else if (!isInside(ends[0], GameParameter.Green_LL, GameParameter.Green_UR)) {
+			first = 1;
+		}
+		return new int[][] { ends[first], ends[1 - first] };
+	}
+
+	/**
+	 * @param heading the heading of the tunnel
+	 * @return the heading in degrees of the robot driving through the tunnel
+	 */
+	public static double tunnelTheta(GameParameter.TunnelHeading heading) {
+		switch (heading) {
+		case NORTH:
+			return 0;
+		case SOUTH:
+			return 180;
+		case EAST:
+			return 90;
+		default:
+			return 270;
 		}
 	}
 
+	/**
+	 * @param edge    the edge the robot drives along, see
+	 *                {@link #tunnelEdge(int[], int[], int, int, double)}
+	 * @param heading the heading of the tunnel
+	 * @return the quarter turn, in degrees clockwise, from the edge to the tunnel
+	 */
+	public static int tunnelTurn(int[][] edge, GameParameter.TunnelHeading heading) {
+		double edgeTheta = GridPlanner.headingOf(edge[0][0], edge[0][1], edge[1][0], edge[1][1]);
+		return (tunnelTheta(heading) - edgeTheta + 360) % 360 == 90 ? 90 : -90;
+	}
+
+	/**
+	 * @return true if the intersection lies strictly inside the zone
+	 */
+	private static boolean isInside(int[] point, int[] ll, int[] ur) {
+		return point[0] > ll[0] && point[0] < ur[0] && point[1] > ll[1] && point[1] < ur[1];
+	}
+
 	/**
 	 * This method for go through the tunnel (call find tunnel before calling this
 	 * method)
@@ -320,10 +736,36 @@ public class Navigation {
 
 		moveBackByOffset();
 		// after passing through the tunnel, turn 90 degree to the right
-		leftMotor.rotate(convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), true);
-		rightMotor.rotate(-convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), false);
+		turn(90);
 
-		selfLocalize();
+		// the robot is half a tile away from the exit corner, so it squares on the next line at least
+		localizeIfUncertain(LocalizationScheduler.Need.PARTIAL);
+	}
+
+	/**
+	 * This method predicts where {@link #goThroughTunnel(int[], int[])} leaves the
+	 * robot: on the exit corner to the right of the tunnel, facing right.
+	 * 
+	 * @param ll the lower left corner of the tunnel
+	 * @param ur the upper right corner of the tunnel
+	 * @return the x and y coordinates of the corner and the heading in degrees, or
+	 *         null if the heading of the tunnel is unknown
+	 */
+	public static int[] tunnelExit(int[] ll, int[] ur) {
+		GameParameter.TunnelHeading heading = GameParameter.determineTunnelHeading(ll, ur);
+		if (heading == null) {
+			return null;
+		}
+		switch (heading) {
+		case NORTH:
+			return new int[] { ur[0], ur[1], 90 };
+		case SOUTH:
+			return new int[] { ll[0], ll[1], 270 };
+		case EAST:
+			return new int[] { ur[0], ll[1], 180 };
+		default:
+			return new int[] { ll[0], ur[1], 0 };
+		}
 	}
 
 	/**
@@ -345,18 +787,108 @@ public class Navigation {
 		rightMotor.rotate(-convertAngle(Game.WHEEL_RAD, Game.TRACK, 90), false);
 		moveOneTileWithCorrection();
 		moveBackByOffset();
+		localization.localized();
+	}
+
+	/**
+	 * This method performs a partial light localization: it squares the robot on the next line ahead
+	 * and moves back by the offset distance, which corrects the heading and the position along the
+	 * heading.
+	 */
+	public void probeLine() {
+		moveOneTileWithCorrection();
+		moveBackByOffset();
 	}
 	
+	/**
+	 * This method performs a light localization only if the pose may have drifted, see
+	 * {@link #localizeIfUncertain(LocalizationScheduler.Need)}.
+	 */
+	public void localizeIfUncertain() {
+		localizeIfUncertain(LocalizationScheduler.Need.NONE);
+	}
+
+	/**
+	 * This method performs the light localization the pose needs. Nothing is run while the pose
+	 * estimator of the odometer is confident in the pose; otherwise the localization scheduler
+	 * chooses between nothing, a partial localization ({@link #probeLine()}) and a full one
+	 * ({@link #selfLocalize()}). Without scheduled localization, the full one always runs.
+	 * 
+	 * @param minimum the localization to run at least
+	 */
+	public void localizeIfUncertain(LocalizationScheduler.Need minimum) {
+		LocalizationScheduler.Need need = LocalizationScheduler.Need.FULL;
+		if (scheduledLocalization) {
+			PoseEstimator estimator = odometer.getEstimator();
+			if (estimator.getPositionError() < MAX_POSITION_ERROR
+					&& estimator.getHeadingError() < MAX_HEADING_ERROR) {
+				need = LocalizationScheduler.Need.NONE;
+			} else {
+				need = localization.need(odometer.getXYT()[2]);
+			}
+			if (need.compareTo(minimum) < 0) {
+				need = minimum;
+			}
+		}
+		localizationSaved.add(Math.round(
+				(estimateLocalizeTime(LocalizationScheduler.Need.FULL) - estimateLocalizeTime(need)) * 1000));
+		switch (need) {
+		case FULL:
+			selfLocalize();
+			break;
+		case PARTIAL:
+			localizationsPartial.increment();
+			probeLine();
+			break;
+		default:
+			localizationsSkipped.increment();
+			break;
+		}
+	}
+
+	/**
+	 * This method estimates how long a light localization takes when the robot is on a line.
+	 * 
+	 * @param need the localization
+	 * @return the time in s
+	 */
+	public static double estimateLocalizeTime(LocalizationScheduler.Need need) {
+		int offset = convertDistance(Game.WHEEL_RAD, Game.SEN_DIS);
+		double probe = 2 * MotionProfile.duration(offset, FORWARD_SPEED, ACCELERATION);
+		switch (need) {
+		case FULL:
+			int quarter = convertAngle(Game.WHEEL_RAD, Game.TRACK, 90);
+			return 3 * probe + 2 * MotionProfile.duration(quarter, FORWARD_SPEED, ACCELERATION);
+		case PARTIAL:
+			return probe;
+		default:
+			return 0;
+		}
+	}
+
 	/**
 	 * This method moves the robot forward after it navigates to the ring set (2 tiles away) to approach the ring set
 	 * to perform the color detection
 	 */
 	public void approachRingSetForColorDetection() {
+		approachRingSetForColorDetection(null);
+	}
+
+	/**
+	 * This method approaches the ring set for the color detection while another
+	 * command runs during the slow final approach, such as lowering the arm.
+	 * 
+	 * @param alongside the command to start with the final approach, or null
+	 */
+	public void approachRingSetForColorDetection(Motion.Command alongside) {
 		moveOneTileWithCorrection();
 		leftMotor.setSpeed(50);
 		rightMotor.setSpeed(50);
-		leftMotor.rotate(convertDistance(Game.WHEEL_RAD, 19.05), true);
-		rightMotor.rotate(convertDistance(Game.WHEEL_RAD, 19.05), false);
+		Motion approach = startMove(19.05);
+		if (alongside != null) {
+			approach = Motion.all(approach, alongside.start());
+		}
+		approach.await();
 	}
 
 	/**
@@ -366,8 +898,7 @@ public class Navigation {
 		leftMotor.setSpeed(50);
 		rightMotor.setSpeed(50);
 		moveOneTileWithCorrection();
-		leftMotor.rotate(convertDistance(Game.WHEEL_RAD, 1.5), true);
-		rightMotor.rotate(convertDistance(Game.WHEEL_RAD, 1.5), false);
+		move(1.5);
 	}
 
 	/**
@@ -375,59 +906,55 @@ public class Navigation {
 	 * the ring set
 	 */
 	public void goToRingSet(int[] TR) {
-		double currentX = odometer.getXYT()[0];
-		double currentY = odometer.getXYT()[1];
-		
-		if (Math.abs(currentX - TR[0]) < (0.2)) {
-			if (currentY > TR[1]) {
-				travelTo(TR[0], TR[1] + 2);
-				turnTo(180);
-				moveOneTileWithCorrection();
-
-			} else if (currentY < TR[1]) {
-				travelTo(TR[0], TR[1] - 2);
-				turnTo(0);
-				moveOneTileWithCorrection();
-
-			}
-		} else if (currentX < TR[0] && Math.abs(currentX - TR[0]) > 0.8) {
-			travelTo(TR[0] - 2, TR[1]);
-			turnTo(90);
-
-			moveOneTileWithCorrection();
-
-		} else if (currentX > TR[0] && Math.abs(currentX - TR[0]) > 0.8) {
-			travelTo(TR[0] + 2, TR[1]);
-			turnTo(270);
+		double[] position = odometer.getXYT();
+		int[] approach = ringSetApproach(TR, position[0], position[1]);
+		if (approach != null) {
+			travelTo(approach[0], approach[1]);
+			turnTo(approach[2]);
 			moveOneTileWithCorrection();
 		}
 		moveBackByOffset();
 		
 		// perform a light localization before the ring set
-		selfLocalize();
+		localizeIfUncertain();
 
-		Sound.beep();
-		Sound.beep();
-		Sound.beep();
+		Game.getPlatform().beep();
+		Game.getPlatform().beep();
+		Game.getPlatform().beep();
 
 	}
+
+	/**
+	 * This method chooses the intersection two tiles away from the ring set that
+	 * the robot drives to, on the side of the ring set it comes from.
+	 * 
+	 * @param TR the coordinates of the ring set
+	 * @param x  the x coordinate of the robot
+	 * @param y  the y coordinate of the robot
+	 * @return the x and y coordinates of the intersection and the heading towards
+	 *         the ring set in degrees, or null if the robot is already next to the
+	 *         ring set
+	 */
+	public static int[] ringSetApproach(int[] TR, double x, double y) {
+		if (Math.abs(x - TR[0]) < (0.2)) {
+			if (y > TR[1]) {
+				return new int[] { TR[0], TR[1] + 2, 180 };
+			} else if (y < TR[1]) {
+				return new int[] { TR[0], TR[1] - 2, 0 };
+			}
+		} else if (x < TR[0] && Math.abs(x - TR[0]) > 0.8) {
+			return new int[] { TR[0] - 2, TR[1], 90 };
+		} else if (x > TR[0] && Math.abs(x - TR[0]) > 0.8) {
+			return new int[] { TR[0] + 2, TR[1], 270 };
+		}
+		return null;
+	}
 	
 	/**
 	 * This method moves the robot backward for one tile with correction
 	 */
 	public void backOffOneTileWithCorrection() {
-		leftMotor.backward();
-		rightMotor.backward();
-		while (leftMotor.isMoving() || rightMotor.isMoving()) {
-			double left = data.getL()[0];
-			double right = data.getL()[1];
-			if (left < -5) {
-				leftMotor.stop(true);
-			}
-			if (right < -5) {
-				rightMotor.stop(true);
-			}
-		}
+		driveToLine(false);
 	}
 	
 	
@@ -443,8 +970,40 @@ public class Navigation {
 	 * 	This method moves the robot backward by a distance of its sensor to the center of the wheel
 	 */
 	public void moveBackByOffset() {
-		leftMotor.rotate(-convertDistance(Game.WHEEL_RAD, Game.SEN_DIS), true);
-		rightMotor.rotate(-convertDistance(Game.WHEEL_RAD, Game.SEN_DIS), false);
+		move(-Game.SEN_DIS);
+	}
+
+	/**
+	 * Move the robot straight by a certain distance
+	 * 
+	 * @param distance The distance to move by in cm, negative to move backward
+	 */
+	public void move(double distance) {
+		startMove(distance).await();
+	}
+
+	/**
+	 * This method starts {@link #move(double)}.
+	 * 
+	 * @param distance The distance to move by in cm, negative to move backward
+	 * @return the handle of the motion
+	 */
+	public Motion moveAsync(final double distance) {
+		return Motion.submit(wheels, new Runnable() {
+			public void run() {
+				move(distance);
+			}
+		});
+	}
+
+	/**
+	 * This method starts both wheels on a straight move and returns immediately.
+	 */
+	private Motion startMove(double distance) {
+		localization.moved(distance, odometer.getXYT()[2]);
+		leftMotor.rotate(convertDistance(Game.WHEEL_RAD, distance), true);
+		rightMotor.rotate(convertDistance(Game.WHEEL_RAD, distance), true);
+		return Motion.of(leftMotor, rightMotor);
 	}
 
 	/**
@@ -453,6 +1012,7 @@ public class Navigation {
 	 * @param angle The angle to rotate our robot to
 	 */
 	public void turn(int angle) {
+		localization.turned(angle);
 		leftMotor.rotate(convertAngle(Game.WHEEL_RAD, Game.TRACK, angle), true);
 		rightMotor.rotate(-convertAngle(Game.WHEEL_RAD, Game.TRACK, angle), false);
 	}
@@ -477,7 +1037,7 @@ public class Navigation {
 	 * @param angle    The angle to convert
 	 * @return A converted angle
 	 */
-	private static int convertAngle(double radius, double width, double angle) {
+	public static int convertAngle(double radius, double width, double angle) {
 		return convertDistance(radius, Math.PI * width * angle / 360.0);
 	}
 
@@ -3,26 +3,27 @@ package ca.mcgill.ecse211.game;
 import java.util.Map;
 
 import ca.mcgill.ecse211.WiFiClient.WifiConnection;
+import ca.mcgill.ecse211.hardware.EV3Platform;
+import ca.mcgill.ecse211.hardware.Platform;
+import ca.mcgill.ecse211.hardware.SampleSource;
 import ca.mcgill.ecse211.localization.LightLocalizer;
+import ca.mcgill.ecse211.localization.SweepLocalizer;
 import ca.mcgill.ecse211.localization.UltrasonicLocalizer;
+import ca.mcgill.ecse211.metrics.FlightRecorder;
+import ca.mcgill.ecse211.metrics.MetricsReporter;
+import ca.mcgill.ecse211.metrics.PhaseTimer;
 import ca.mcgill.ecse211.odometer.Odometer;
 import ca.mcgill.ecse211.odometer.OdometerExceptions;
 import ca.mcgill.ecse211.threads.LightPoller;
+import ca.mcgill.ecse211.threads.PollerScheduler;
 import ca.mcgill.ecse211.threads.RGBPoller;
+import ca.mcgill.ecse211.threads.SamplingPolicy;
+import ca.mcgill.ecse211.threads.SamplingPolicy.Profile;
+import ca.mcgill.ecse211.threads.SamplingPolicy.Sensor;
 import ca.mcgill.ecse211.threads.SensorData;
 import ca.mcgill.ecse211.threads.ThreadControl;
 import ca.mcgill.ecse211.threads.UltrasonicPoller;
 import ca.mcgill.ecse211.wifi.WiFi;
-import lejos.hardware.Button;
-import lejos.hardware.Sound;
-import lejos.hardware.ev3.LocalEV3;
-import lejos.hardware.lcd.TextLCD;
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
-import lejos.hardware.port.Port;
-import lejos.hardware.sensor.EV3ColorSensor;
-import lejos.hardware.sensor.EV3UltrasonicSensor;
-import lejos.hardware.sensor.SensorModes;
-import lejos.robotics.SampleProvider;
 
 /**
  * This the main class for the ring game. It sets up the wifi connection for
@@ -64,6 +65,44 @@ public class RingGame {
 	 */
 	private static ThreadControl lightPoller;
 
+	/**
+	 * This variable stores the scheduler that runs the odometer and the sensor
+	 * pollers
+	 */
+	private static PollerScheduler scheduler;
+
+	/**
+	 * This variable stores the policy that sets the sensor sampling rates for each
+	 * phase of the game
+	 */
+	private static SamplingPolicy sampling;
+
+	/**
+	 * This variable stores the timer of the game phases
+	 */
+	private static final PhaseTimer phases = new PhaseTimer();
+
+	/**
+	 * This variable stores the mission compiled from the game parameters
+	 */
+	private static MissionPlan mission;
+
+	// File the metrics are logged to, and how often
+	private static final String METRICS_FILE = "metrics.bin";
+	private static final long METRICS_PERIOD = 1000;
+
+	// File the flight recorder writes to, the records it holds before they are
+	// written, and how often they are written
+	private static final String FLIGHT_FILE = "flight.bin";
+	private static final int FLIGHT_CAPACITY = 8192;
+	private static final long FLIGHT_PERIOD = 200;
+
+	// Phase offsets of the periodic tasks in ms, so that they do not run at the same time
+	private static final long ODOMETER_PHASE = 0;
+	private static final long LIGHT_PHASE = 5;
+	private static final long US_PHASE = 12;
+	private static final long RGB_PHASE = 20;
+
 	public static void main(String[] args) {
 		/*
 		 * WifiConnection conn = new WifiConnection(SERVER_IP, TEAM_NUMBER,
@@ -116,6 +155,7 @@ public class RingGame {
 
 		// Setting up the game
 		try {
+			Game.usePlatform(new EV3Platform());
 			preparation();
 			//runGame();
 			
@@ -127,106 +167,242 @@ public class RingGame {
 	}
 
 	/**
-	 * This method sets up ports for the two light sensors at the back and the light sensor at the front for 
-	 * color detection. 
-	 * Ï
+	 * This method sets up the two light sensors at the back and the light sensor at the front for 
+	 * color detection, and schedules the odometer and the sensor pollers. The sensors come from
+	 * the platform selected with {@link Game#usePlatform(Platform)}.
+	 * 
 	 * @throws OdometerExceptions
 	 */
 	public static void preparation() throws OdometerExceptions {
-		// Motor Objects, and Robot related parameters
-		Port usPort = LocalEV3.get().getPort("S2");
-		// initialize multiple light ports in main
-		Port[] lgPorts = new Port[3];
-		// Light sensor sensor stuff
-		lgPorts[0] = LocalEV3.get().getPort("S4"); // S4
-		lgPorts[1] = LocalEV3.get().getPort("S3"); // s3
-		EV3ColorSensor[] lgSensors = new EV3ColorSensor[2];
-		for (int i = 0; i < lgSensors.length; i++) {
-			lgSensors[i] = new EV3ColorSensor(lgPorts[i]);
-		}
-		Odometer odometer = Odometer.getOdometer(Game.leftMotor, Game.rightMotor, Game.TRACK, Game.WHEEL_RAD);
+		Platform platform = Game.getPlatform();
+		final Odometer odometer = Odometer.getOdometer(Game.leftMotor, Game.rightMotor, Game.TRACK, Game.WHEEL_RAD);
 		// Sensor Related Stuff
 		SensorData sensorData = SensorData.getSensorData();
 		// Ultrasonic sensor stuff
-		@SuppressWarnings("resource")
-		SensorModes usSensor = new EV3UltrasonicSensor(usPort);
-		SampleProvider usDistance = usSensor.getMode("Distance");
+		SampleSource usDistance = platform.getUltrasonicSensor();
 		float[] usData = new float[usDistance.sampleSize()];
-		SampleProvider backLight[] = new SampleProvider[2];
-		backLight[0] = lgSensors[0].getRedMode();
-		backLight[1] = lgSensors[1].getRedMode();
-		TextLCD lcd = LocalEV3.get().getTextLCD();
-		lcd.clear();
+		SampleSource backLight[] = platform.getBackLightSensors();
+		platform.clearDisplay();
 		
-		Thread odoThread = new Thread(odometer);
-		odoThread.start();
+		scheduler = new PollerScheduler();
+		scheduler.schedule("odometer", new Runnable() {
+			public void run() {
+				odometer.tick();
+			}
+		}, Odometer.getPeriod(), ODOMETER_PHASE);
 
 		// Thread odoDisplay = new Thread(display);
 		// odoDisplay.start();
 		// Start ultrasonic and light sensors
-		usPoller = new UltrasonicPoller(usDistance, usData, sensorData);
-		Thread usThread = new Thread(usPoller);
-		usThread.start();
-		lightPoller = new LightPoller(backLight, new float[2][backLight[1].sampleSize()], sensorData);
-		Thread lightThread = new Thread(lightPoller);
-		lightThread.start();
+		UltrasonicPoller ultrasonicPoller = new UltrasonicPoller(usDistance, usData, sensorData);
+		ultrasonicPoller.setOdometer(odometer);
+		usPoller = ultrasonicPoller;
+		sampling = new SamplingPolicy();
+		sampling.register(Sensor.ULTRASONIC, usPoller, scheduler.schedule("ultrasonic", usPoller, US_PHASE));
+		LightPoller backLightPoller = new LightPoller(backLight, new float[2][backLight[1].sampleSize()], sensorData);
+		backLightPoller.setWheels(Game.leftMotor, Game.rightMotor);
+		// the grid lines correct the odometer
+		sensorData.getLineCrossings().addListener(odometer.getEstimator());
+		lightPoller = backLightPoller;
+		sampling.register(Sensor.LIGHT, lightPoller, scheduler.schedule("light", lightPoller, LIGHT_PHASE));
 
 		//set uo the light sensor for color detection
-		Port rgbPort = LocalEV3.get().getPort("S1");
-		EV3ColorSensor rgbSensor = new EV3ColorSensor(rgbPort);
-		SampleProvider frontlight[] = new SampleProvider[1];
-		frontlight[0] = rgbSensor.getRGBMode();
-		rgbPoller = new RGBPoller(frontlight, new float[2][frontlight[0].sampleSize()], sensorData);
-		Thread rgbThread = new Thread(rgbPoller);
-		rgbThread.start();
+		SampleSource frontlight[] = new SampleSource[1];
+		frontlight[0] = platform.getColorSensor();
+		RGBPoller frontLightPoller = new RGBPoller(frontlight, new float[2][frontlight[0].sampleSize()], sensorData);
+		frontLightPoller.setArm(Game.elbowMotor);
+		rgbPoller = frontLightPoller;
+		sampling.register(Sensor.RGB, rgbPoller, scheduler.schedule("rgb", rgbPoller, RGB_PHASE));
+		scheduler.start();
+
+		// dump the metrics below the first rows, which the color detection uses
+		MetricsReporter reporter = new MetricsReporter(platform, METRICS_FILE, METRICS_PERIOD);
+		reporter.setFirstRow(6);
+		reporter.start();
+		FlightRecorder.start(FLIGHT_FILE, FLIGHT_CAPACITY, FLIGHT_PERIOD);
 
 		// setting up the coordinates for the starting corner
 		GameParameter.generateStartingCorner();
+		// the routes are planned around the zones of the game parameters
+		Navigation.setPlanner(GridPlanner.fromParameters());
+		// compile the mission before the game starts; the component tests do not need it, so an
+		// unplayable layout is only shown, and playGame fails on it instead
+		try {
+			mission = MissionPlan.forParameters(Navigation.getPlanner());
+		} catch (IllegalArgumentException e) {
+			mission = null;
+			platform.drawString("No mission plan", 0, 0);
+			platform.drawString(String.valueOf(e.getMessage()), 0, 1);
+			e.printStackTrace();
+		}
+
+	}
+
+	/**
+	 * @return the mission compiled from the game parameters, or null if they do
+	 *         not make a playable layout
+	 */
+	public static MissionPlan getMission() {
+		return mission;
+	}
+
+	/**
+	 * @return the scheduler that runs the odometer and the sensor pollers
+	 */
+	public static PollerScheduler getScheduler() {
+		return scheduler;
+	}
 
+	/**
+	 * @return the policy that sets the sensor sampling rates
+	 */
+	public static SamplingPolicy getSampling() {
+		return sampling;
 	}
 
 	/**
-	 * This method is to set up various components of the robot and is called after the gameis prepared
+	 * This method is to set up various components of the robot and is called after the gameis prepared.
+	 * The game runs in its own thread so that this method returns immediately.
 	 * 
 	 * @throws OdometerExceptions
 	 */
 	public static void runGame() throws OdometerExceptions {
-		// Start localizing
-		final Navigation navigation = new Navigation(Game.leftMotor, Game.rightMotor);
-		final UltrasonicLocalizer usLoc = new UltrasonicLocalizer(navigation, Game.leftMotor, Game.rightMotor);
-		final LightLocalizer lgLoc = new LightLocalizer(navigation, Game.leftMotor, Game.rightMotor);
-		final RingRetrieval ringRetrieval = new RingRetrieval(Game.leftMotor, Game.rightMotor, Game.elbowMotor,
+		// spawn a new Thread to avoid localization from blocking
+		(new Thread() {
+			public void run() {
+				try {
+					playGame();
+				} catch (OdometerExceptions e) {
+					e.printStackTrace();
+				}
+			}
+		}).start();
+	}
+
+	/**
+	 * This method plays the whole game in the calling thread: localization, navigation through the
+	 * tunnel to the ring set, color detection and ring retrieval. The steps come from the mission
+	 * compiled by {@link #preparation()}, or compiled here if it could not be.
+	 * 
+	 * @throws OdometerExceptions
+	 * @throws IllegalArgumentException if the game parameters do not make a
+	 *                                  playable layout
+	 */
+	public static void playGame() throws OdometerExceptions {
+		try {
+			if (mission == null) {
+				mission = MissionPlan.forParameters(Navigation.getPlanner());
+			}
+			playSteps();
+		} finally {
+			// a failed run is the one whose flight log matters the most
+			phases.end();
+			FlightRecorder.stop();
+		}
+	}
+
+	/**
+	 * This method runs the steps of the mission in order.
+	 * 
+	 * @throws OdometerExceptions
+	 */
+	private static void playSteps() throws OdometerExceptions {
+		Odometer odometer = Odometer.getOdometer();
+		Navigation navigation = new Navigation(Game.leftMotor, Game.rightMotor);
+		UltrasonicLocalizer usLoc = new UltrasonicLocalizer(navigation, Game.leftMotor, Game.rightMotor);
+		LightLocalizer lgLoc = new LightLocalizer(navigation, Game.leftMotor, Game.rightMotor);
+		SweepLocalizer sweepLoc = new SweepLocalizer(navigation, Game.leftMotor, Game.rightMotor);
+		RingRetrieval ringRetrieval = new RingRetrieval(Game.leftMotor, Game.rightMotor, Game.elbowMotor,
 				Game.foreArmMotor);
 		final ColorDetector colorDetector = new ColorDetector(Game.leftMotor, Game.rightMotor, Game.elbowMotor,
 				Game.foreArmMotor);
 		// final RingSearcher searcher = new RingSearcher(storageMotor, rodMotor);
-		// spawn a new Thread to avoid localization from blocking
-		(new Thread() {
-			public void run() {
-				//perform ultrasonic localization
+		for (MissionPlan.Step step : mission.getSteps()) {
+			FlightRecorder.event(step.getAction().name());
+			switch (step.getAction()) {
+			case PHASE:
+				if (step.getPhase() != null) {
+					phases.begin(step.getPhase());
+				}
+				if (step.getProfile() != null) {
+					sampling.use(step.getProfile());
+				}
+				break;
+			case US_LOCALIZE:
 				usLoc.localize();
-				//perform light localization
-				lgLoc.localize(GameParameter.SC);
-				//navigate to the tunnel entrance
-				navigation.goToTunnel(GameParameter.TNG_LL, GameParameter.TNG_RR, GameParameter.GreenCorner);
-				//go through the tunnel
+				break;
+			case LIGHT_LOCALIZE:
+				lgLoc.localize(new int[] { step.getX(), step.getY(), (int) step.getValue() });
+				break;
+			case SWEEP_LOCALIZE:
+				int[] startingCorner = new int[] { step.getX(), step.getY(), (int) step.getValue() };
+				if (!sweepLoc.localize(startingCorner)) {
+					// the walls did not fit, localize the slow way
+					usLoc.localize();
+					sampling.use(Profile.LINE_FOLLOWING);
+					lgLoc.localize(startingCorner);
+				}
+				break;
+			case TRAVEL:
+				// follow the compiled route if the robot is where the plan expects it
+				double[] position = odometer.getXYT();
+				if (step.startsAt((int) Math.round(position[0]), (int) Math.round(position[1]))) {
+					navigation.followRoute(step.getRoute());
+				} else {
+					navigation.travelTo(step.getX(), step.getY());
+				}
+				break;
+			case TURN_TO:
+				navigation.turnTo(step.getValue());
+				break;
+			case TURN:
+				navigation.turn((int) step.getValue());
+				break;
+			case MOVE:
+				navigation.move(step.getValue());
+				break;
+			case DRIVE_TO_LINE:
+				navigation.moveOneTileWithCorrection();
+				break;
+			case BACK_BY_OFFSET:
+				navigation.moveBackByOffset();
+				break;
+			case THROUGH_TUNNEL:
 				navigation.goThroughTunnel(GameParameter.TNG_LL, GameParameter.TNG_RR);
-				//navigate to the ring set (two tiles away from the ring set)
-				navigation.goToRingSet(GameParameter.TG);
-				//approach the ring set
-				navigation.approachRingSetForColorDetection();
-				//perform color detection
+				break;
+			case LOCALIZE:
+				navigation.localizeIfUncertain();
+				break;
+			case BEEP:
+				for (int i = 0; i < step.getValue(); i++) {
+					Game.getPlatform().beep();
+				}
+				break;
+			case APPROACH_FOR_DETECTION:
+				// lower the arm during the final approach
+				navigation.approachRingSetForColorDetection(new Motion.Command() {
+					public Motion start() {
+						return colorDetector.lowerArmForScan();
+					}
+				});
+				break;
+			case SCAN_RING:
 				colorDetector.scanUpperRing();
-				//perform ring retrieval
+				break;
+			case APPROACH_FOR_RETRIEVAL:
 				navigation.approachRingSetForRingRetrieval(); // move 1.5cm
-				//grab the upper ring
+				break;
+			case GRAB_UPPER:
 				ringRetrieval.grabUpperRing();
-				//grab the lower ring
+				break;
+			case GRAB_LOWER:
 				ringRetrieval.grabLowerRing();
-				//back off from the tree
+				break;
+			case BACK_OFF:
 				navigation.backOffOneTileWithCorrection();
+				break;
 			}
-		}).start();
+		}
 	}
 	
 	/**
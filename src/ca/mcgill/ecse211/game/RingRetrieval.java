@@ -1,13 +1,15 @@
 package ca.mcgill.ecse211.game;
 
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
-import lejos.hardware.motor.EV3MediumRegulatedMotor;
-import lejos.hardware.motor.NXTRegulatedMotor;
+import ca.mcgill.ecse211.hardware.Motor;
 
 /**
  * This class contains methods for the robot to perform ring retrieval by using the 
  * elbowMotor and the foreArm motor. 
  * 
+ * Each grab is a {@link Choreography}: the foreArm lifts while the elbow starts lowering, the
+ * final stowing of the arm overlaps, and each motion only waits for the ones it physically
+ * depends on.
+ * 
  * @author Ajay Patel
  * @author Fandi Yi
  * @author Lucas Bellido
@@ -18,13 +20,20 @@ import lejos.hardware.motor.NXTRegulatedMotor;
  */
 public class RingRetrieval {
 	
-	private EV3LargeRegulatedMotor leftMotor;
-	private EV3LargeRegulatedMotor rightMotor;
-	private NXTRegulatedMotor elbowMotor;
-	private EV3MediumRegulatedMotor foreArmMotor;
+	private Motor leftMotor;
+	private Motor rightMotor;
+	private Motor elbowMotor;
+	private Motor foreArmMotor;
 	
 	private int foreArmSpeed = 150;
 	private int elbowMotorRotationSpeed = 20;
+	private static final int ELBOW_SPEED = 50;
+	private static final int LOWER_FOREARM_SPEED = 250;
+	private static final int DRAG_SPEED = 50; // speed of the wheels while dragging the lower ring
+	private static final double DRAG_DISTANCE = 10; // in cm
+
+	private final Choreography upperRing;
+	private final Choreography lowerRing;
 	
 	/**
 	 * This RingRetrieval class constructor sets up the robot to perform ring retrieval
@@ -34,46 +43,60 @@ public class RingRetrieval {
 	 * @param elbowMotor
 	 * @param foreArmMotor
 	 */
-	public RingRetrieval(EV3LargeRegulatedMotor leftMotor, EV3LargeRegulatedMotor rightMotor, NXTRegulatedMotor elbowMotor, EV3MediumRegulatedMotor foreArmMotor) {
+	public RingRetrieval(Motor leftMotor, Motor rightMotor, Motor elbowMotor, Motor foreArmMotor) {
 		this.leftMotor = leftMotor;
 		this.rightMotor = rightMotor;
 		this.elbowMotor = elbowMotor;
 		this.foreArmMotor = foreArmMotor;
+
+		// the foreArm is up long before the elbow gets near the ring
+		upperRing = new Choreography.Builder("upperRing")
+				.rotate("lift", foreArmMotor, 75, foreArmSpeed)
+				.rotate("reach", elbowMotor, -101, ELBOW_SPEED)
+				.rotate("lower", elbowMotor, -105, ELBOW_SPEED, "lift")
+				.rotate("hook", foreArmMotor, -115, foreArmSpeed, "lower")
+				.rotate("settle", foreArmMotor, 40, foreArmSpeed)
+				.build();
+		// after the foreArm is attached to the lower ring, the robot moves back to drag the ring off the
+		// rack; the foreArm folds while the elbow comes back up
+		lowerRing = new Choreography.Builder("lowerRing")
+				.rotate("lift", foreArmMotor, 75, LOWER_FOREARM_SPEED)
+				.rotate("reach", elbowMotor, -36, ELBOW_SPEED)
+				.rotate("hook", foreArmMotor, -100, LOWER_FOREARM_SPEED, "reach")
+				.drive("drag", leftMotor, rightMotor, -DRAG_DISTANCE, DRAG_SPEED, "hook")
+				.rotate("release", foreArmMotor, 100, LOWER_FOREARM_SPEED, "drag")
+				.rotate("stow", elbowMotor, 137, ELBOW_SPEED, "release")
+				.rotate("fold", foreArmMotor, -75, LOWER_FOREARM_SPEED)
+				.build();
 	}
 
 	/**
 	 * This method makes the robot to grab the upper ring
 	 */
 	public void grabUpperRing() {
-		foreArmMotor.setSpeed(foreArmSpeed);
-		elbowMotor.setSpeed(50);
-		foreArmMotor.rotate(75);
-		elbowMotor.rotate(-101);//105
-		elbowMotor.rotate(-105);//105
-		foreArmMotor.rotate(-115);
-		foreArmMotor.rotate(40);
+		upperRing.run();
 	}
 	
 	/**
 	 * This method makes the robot to grab the lower ring
 	 */
 	public void grabLowerRing() {
-		foreArmMotor.setSpeed(250);
-		elbowMotor.setSpeed(50);
-		foreArmMotor.rotate(75);
-		elbowMotor.rotate(-36);
-		
-		foreArmMotor.rotate(-100);
-		
-		// after the foreArm is attached to the lower ring, the robot moves back for 10cm to drag the ring off the rack
-		leftMotor.rotate(-convertDistance(Game.WHEEL_RAD, 10), true);
-		rightMotor.rotate(-convertDistance(Game.WHEEL_RAD,10), false);
-		
-		foreArmMotor.rotate(100);
-		
-		elbowMotor.rotate(137);
-		foreArmMotor.rotate(-75);
-	}	
+		lowerRing.run();
+	}
+
+	/**
+	 * @return the choreography of the upper ring
+	 */
+	public Choreography getUpperRing() {
+		return upperRing;
+	}
+
+	/**
+	 * @return the choreography of the lower ring
+	 */
+	public Choreography getLowerRing() {
+		return lowerRing;
+	}
 	
 	/**
 	 * This method allows the conversion of a distance to the total rotation of each
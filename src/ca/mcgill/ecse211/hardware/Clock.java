@@ -0,0 +1,105 @@
+package ca.mcgill.ecse211.hardware;
+
+/**
+ * This class is the time source of the robot code. On the brick it is the system clock. In a
+ * simulation it can run faster than real time: with a time scale of 10, one real millisecond is 10
+ * clock milliseconds, and every sleep or timed wait done through this class is 10 times shorter.
+ * 
+ * All code that measures periods or sleeps should use this class instead of
+ * {@link System#currentTimeMillis()}, {@link Thread#sleep(long)} or {@link Object#wait(long)}.
+ *
+ */
+public final class Clock {
+  private static volatile double timeScale = 1;
+  private static volatile long originNanos = System.nanoTime();
+  private static volatile long originMillis = System.currentTimeMillis();
+
+  private Clock() {}
+
+  /**
+   * Changes how fast the clock runs compared to real time. The current time is kept, only the
+   * rate changes.
+   * 
+   * @param scale the number of clock milliseconds per real millisecond
+   */
+  public static synchronized void setTimeScale(double scale) {
+    if (scale <= 0) {
+      throw new IllegalArgumentException("Time scale must be positive");
+    }
+    long now = millis();
+    originNanos = System.nanoTime();
+    originMillis = now;
+    timeScale = scale;
+  }
+
+  /**
+   * @return the number of clock milliseconds per real millisecond
+   */
+  public static double getTimeScale() {
+    return timeScale;
+  }
+
+  /**
+   * @return the current time in ms
+   */
+  public static long millis() {
+    return originMillis + (long) ((System.nanoTime() - originNanos) * timeScale / 1e6);
+  }
+
+  /**
+   * @return the current time in ns, with an arbitrary origin. Use for measuring intervals.
+   */
+  public static long nanos() {
+    return (long) ((System.nanoTime() - originNanos) * timeScale) + originMillis * 1000000L;
+  }
+
+  /**
+   * Sleeps for the given clock time.
+   * 
+   * @param millis the time to sleep in ms
+   * @throws InterruptedException
+   */
+  public static void sleep(long millis) throws InterruptedException {
+    if (millis <= 0) {
+      return;
+    }
+    long real = realNanos(millis);
+    Thread.sleep(real / 1000000L, (int) (real % 1000000L));
+  }
+
+  /**
+   * Sleeps for the given clock time, with sub-millisecond resolution.
+   * 
+   * @param nanos the time to sleep in ns
+   * @throws InterruptedException
+   */
+  public static void sleepNanos(long nanos) throws InterruptedException {
+    if (nanos <= 0) {
+      return;
+    }
+    long real = Math.max(1, (long) (nanos / timeScale));
+    Thread.sleep(real / 1000000L, (int) (real % 1000000L));
+  }
+
+  /**
+   * Waits on monitor for at most the given clock time. The caller must hold the monitor.
+   * 
+   * @param monitor the object to wait on
+   * @param millis the maximum time to wait in ms
+   * @throws InterruptedException
+   */
+  public static void wait(Object monitor, long millis) throws InterruptedException {
+    if (millis <= 0) {
+      return;
+    }
+    long real = realNanos(millis);
+    monitor.wait(real / 1000000L, (int) (real % 1000000L));
+  }
+
+  /**
+   * Converts a clock duration to real time, never less than 1 ns.
+   */
+  private static long realNanos(long millis) {
+    return Math.max(1, (long) (millis * 1e6 / timeScale));
+  }
+}
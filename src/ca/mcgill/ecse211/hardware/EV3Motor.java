@@ -0,0 +1,67 @@
+package ca.mcgill.ecse211.hardware;
+
+import lejos.robotics.RegulatedMotor;
+
+/**
+ * This class wraps a leJOS regulated motor (EV3 large, EV3 medium or NXT) behind the
+ * {@link Motor} interface.
+ *
+ */
+public class EV3Motor implements Motor {
+  private final RegulatedMotor motor;
+
+  /**
+   * @param motor the leJOS motor to control
+   */
+  public EV3Motor(RegulatedMotor motor) {
+    this.motor = motor;
+  }
+
+  public void forward() {
+    motor.forward();
+  }
+
+  public void backward() {
+    motor.backward();
+  }
+
+  public void stop() {
+    motor.stop();
+  }
+
+  public void stop(boolean immediateReturn) {
+    motor.stop(immediateReturn);
+  }
+
+  public void rotate(int angle) {
+    motor.rotate(angle);
+  }
+
+  public void rotate(int angle, boolean immediateReturn) {
+    motor.rotate(angle, immediateReturn);
+  }
+
+  public void waitComplete() {
+    motor.waitComplete();
+  }
+
+  public void setSpeed(int speed) {
+    motor.setSpeed(speed);
+  }
+
+  public int getSpeed() {
+    return motor.getSpeed();
+  }
+
+  public void setAcceleration(int acceleration) {
+    motor.setAcceleration(acceleration);
+  }
+
+  public int getTachoCount() {
+    return motor.getTachoCount();
+  }
+
+  public boolean isMoving() {
+    return motor.isMoving();
+  }
+}
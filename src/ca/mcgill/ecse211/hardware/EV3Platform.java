@@ -0,0 +1,107 @@
+package ca.mcgill.ecse211.hardware;
+
+import lejos.hardware.Button;
+import lejos.hardware.Sound;
+import lejos.hardware.ev3.LocalEV3;
+import lejos.hardware.lcd.TextLCD;
+import lejos.hardware.motor.EV3LargeRegulatedMotor;
+import lejos.hardware.motor.EV3MediumRegulatedMotor;
+import lejos.hardware.motor.NXTRegulatedMotor;
+import lejos.hardware.sensor.EV3ColorSensor;
+import lejos.hardware.sensor.EV3UltrasonicSensor;
+
+/**
+ * This class is the platform of the real robot. It opens the motors and sensors on the ports they
+ * are plugged into on the brick.
+ *
+ */
+public class EV3Platform implements Platform {
+  private final Motor leftMotor;
+  private final Motor rightMotor;
+  private final Motor elbowMotor;
+  private final Motor foreArmMotor;
+  private SampleSource usDistance;
+  private SampleSource[] backLight;
+  private SampleSource frontLight;
+  private final TextLCD lcd;
+
+  /**
+   * This constructor opens the motors. The sensors are opened the first time they are requested
+   * since each one takes a while to start.
+   */
+  public EV3Platform() {
+    LocalEV3 ev3 = LocalEV3.get();
+    leftMotor = new EV3Motor(new EV3LargeRegulatedMotor(ev3.getPort("C")));
+    rightMotor = new EV3Motor(new EV3LargeRegulatedMotor(ev3.getPort("D")));
+    elbowMotor = new EV3Motor(new NXTRegulatedMotor(ev3.getPort("B")));
+    foreArmMotor = new EV3Motor(new EV3MediumRegulatedMotor(ev3.getPort("A")));
+    lcd = ev3.getTextLCD();
+  }
+
+  public Motor getLeftMotor() {
+    return leftMotor;
+  }
+
+  public Motor getRightMotor() {
+    return rightMotor;
+  }
+
+  public Motor getElbowMotor() {
+    return elbowMotor;
+  }
+
+  public Motor getForeArmMotor() {
+    return foreArmMotor;
+  }
+
+  @SuppressWarnings("resource")
+  public synchronized SampleSource getUltrasonicSensor() {
+    if (usDistance == null) {
+      usDistance =
+          new EV3Sensor(new EV3UltrasonicSensor(LocalEV3.get().getPort("S2")).getMode("Distance"));
+    }
+    return usDistance;
+  }
+
+  @SuppressWarnings("resource")
+  public synchronized SampleSource[] getBackLightSensors() {
+    if (backLight == null) {
+      backLight = new SampleSource[2];
+      backLight[0] = new EV3Sensor(new EV3ColorSensor(LocalEV3.get().getPort("S4")).getRedMode());
+      backLight[1] = new EV3Sensor(new EV3ColorSensor(LocalEV3.get().getPort("S3")).getRedMode());
+    }
+    return backLight;
+  }
+
+  @SuppressWarnings("resource")
+  public synchronized SampleSource getColorSensor() {
+    if (frontLight == null) {
+      frontLight = new EV3Sensor(new EV3ColorSensor(LocalEV3.get().getPort("S1")).getRGBMode());
+    }
+    return frontLight;
+  }
+
+  public void drawString(String text, int x, int y) {
+    lcd.drawString(text, x, y);
+  }
+
+  public void clearDisplay() {
+    lcd.clear();
+  }
+
+  public void beep() {
+    Sound.beep();
+  }
+
+  public void beepSequence() {
+    Sound.beepSequence();
+  }
+
+  public void buzz() {
+    Sound.buzz();
+  }
+
+  public void waitForAnyPress() {
+    Button.waitForAnyPress();
+  }
+}
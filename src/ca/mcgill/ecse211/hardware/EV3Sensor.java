@@ -0,0 +1,26 @@
+package ca.mcgill.ecse211.hardware;
+
+import lejos.robotics.SampleProvider;
+
+/**
+ * This class wraps a mode of a leJOS sensor behind the {@link SampleSource} interface.
+ *
+ */
+public class EV3Sensor implements SampleSource {
+  private final SampleProvider provider;
+
+  /**
+   * @param provider the leJOS sensor mode to read
+   */
+  public EV3Sensor(SampleProvider provider) {
+    this.provider = provider;
+  }
+
+  public int sampleSize() {
+    return provider.sampleSize();
+  }
+
+  public void fetchSample(float[] sample, int offset) {
+    provider.fetchSample(sample, offset);
+  }
+}
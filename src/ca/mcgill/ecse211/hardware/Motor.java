@@ -0,0 +1,76 @@
+package ca.mcgill.ecse211.hardware;
+
+/**
+ * This interface is the part of a regulated motor the robot code uses. It follows the leJOS
+ * RegulatedMotor methods so that the EV3 motors can be wrapped directly, while letting the
+ * navigation, localization and arm code run against a simulated motor.
+ *
+ */
+public interface Motor {
+  /**
+   * Runs the motor forward at the current speed until stopped.
+   */
+  void forward();
+
+  /**
+   * Runs the motor backward at the current speed until stopped.
+   */
+  void backward();
+
+  /**
+   * Stops the motor and waits until it has stopped.
+   */
+  void stop();
+
+  /**
+   * Stops the motor.
+   * 
+   * @param immediateReturn true to return without waiting for the motor to stop
+   */
+  void stop(boolean immediateReturn);
+
+  /**
+   * Rotates the motor by angle degrees and waits until it is done.
+   * 
+   * @param angle the angle to rotate by in degrees
+   */
+  void rotate(int angle);
+
+  /**
+   * Rotates the motor by angle degrees.
+   * 
+   * @param angle the angle to rotate by in degrees
+   * @param immediateReturn true to return as soon as the motion has started
+   */
+  void rotate(int angle, boolean immediateReturn);
+
+  /**
+   * Waits until the current motion is over.
+   */
+  void waitComplete();
+
+  /**
+   * @param speed the speed of the motor in deg/s
+   */
+  void setSpeed(int speed);
+
+  /**
+   * @return the speed of the motor in deg/s
+   */
+  int getSpeed();
+
+  /**
+   * @param acceleration the acceleration of the motor in deg/s^2
+   */
+  void setAcceleration(int acceleration);
+
+  /**
+   * @return the tacho count of the motor in degrees
+   */
+  int getTachoCount();
+
+  /**
+   * @return true if the motor is moving
+   */
+  boolean isMoving();
+}
@@ -0,0 +1,78 @@
+package ca.mcgill.ecse211.hardware;
+
+/**
+ * This interface gives access to the motors, sensors and user interface of the robot. The game
+ * code gets everything through the platform chosen in {@link ca.mcgill.ecse211.game.Game}, so the
+ * same code runs on the brick ({@link EV3Platform}) and in the simulator.
+ *
+ */
+public interface Platform {
+  /**
+   * @return the left wheel motor
+   */
+  Motor getLeftMotor();
+
+  /**
+   * @return the right wheel motor
+   */
+  Motor getRightMotor();
+
+  /**
+   * @return the motor that raises and lowers the arm
+   */
+  Motor getElbowMotor();
+
+  /**
+   * @return the motor that moves the fore arm hook
+   */
+  Motor getForeArmMotor();
+
+  /**
+   * @return the ultrasonic sensor in distance mode, in metres
+   */
+  SampleSource getUltrasonicSensor();
+
+  /**
+   * @return the two back light sensors in red mode, left sensor first
+   */
+  SampleSource[] getBackLightSensors();
+
+  /**
+   * @return the front color sensor in RGB mode
+   */
+  SampleSource getColorSensor();
+
+  /**
+   * Draws text on the screen.
+   * 
+   * @param text the text to draw
+   * @param x the column
+   * @param y the row
+   */
+  void drawString(String text, int x, int y);
+
+  /**
+   * Clears the screen.
+   */
+  void clearDisplay();
+
+  /**
+   * Plays a short beep.
+   */
+  void beep();
+
+  /**
+   * Plays a descending sequence of tones.
+   */
+  void beepSequence();
+
+  /**
+   * Plays a low buzz.
+   */
+  void buzz();
+
+  /**
+   * Waits until a button is pressed.
+   */
+  void waitForAnyPress();
+}
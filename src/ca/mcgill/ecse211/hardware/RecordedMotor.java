@@ -0,0 +1,79 @@
+package ca.mcgill.ecse211.hardware;
+
+import ca.mcgill.ecse211.metrics.FlightRecorder;
+
+/**
+ * This class wraps a {@link Motor} and records every command sent to it in the
+ * {@link FlightRecorder}, with the tacho count of the motor when the command was given. Reading
+ * the motor is not recorded, the odometer already records the wheel tacho counts.
+ *
+ */
+public class RecordedMotor implements Motor {
+  private final Motor motor;
+  private final int id;
+
+  /**
+   * @param motor the motor to control
+   * @param id the number of the motor in the recorded commands
+   */
+  public RecordedMotor(Motor motor, int id) {
+    this.motor = motor;
+    this.id = id;
+  }
+
+  public void forward() {
+    FlightRecorder.command(id, 'F', 0, motor.getTachoCount());
+    motor.forward();
+  }
+
+  public void backward() {
+    FlightRecorder.command(id, 'B', 0, motor.getTachoCount());
+    motor.backward();
+  }
+
+  public void stop() {
+    FlightRecorder.command(id, 'S', 0, motor.getTachoCount());
+    motor.stop();
+  }
+
+  public void stop(boolean immediateReturn) {
+    FlightRecorder.command(id, 'S', 0, motor.getTachoCount());
+    motor.stop(immediateReturn);
+  }
+
+  public void rotate(int angle) {
+    FlightRecorder.command(id, 'R', angle, motor.getTachoCount());
+    motor.rotate(angle);
+  }
+
+  public void rotate(int angle, boolean immediateReturn) {
+    FlightRecorder.command(id, 'R', angle, motor.getTachoCount());
+    motor.rotate(angle, immediateReturn);
+  }
+
+  public void waitComplete() {
+    motor.waitComplete();
+  }
+
+  public void setSpeed(int speed) {
+    FlightRecorder.command(id, 'V', speed, motor.getTachoCount());
+    motor.setSpeed(speed);
+  }
+
+  public int getSpeed() {
+    return motor.getSpeed();
+  }
+
+  public void setAcceleration(int acceleration) {
+    FlightRecorder.command(id, 'A', acceleration, motor.getTachoCount());
+    motor.setAcceleration(acceleration);
+  }
+
+  public int getTachoCount() {
+    return motor.getTachoCount();
+  }
+
+  public boolean isMoving() {
+    return motor.isMoving();
+  }
+}
@@ -0,0 +1,22 @@
+package ca.mcgill.ecse211.hardware;
+
+/**
+ * This interface is a sensor in one of its modes, as the {@link Platform} gives it to the pollers.
+ * It has the same methods as the leJOS SampleProvider, which {@link EV3Sensor} wraps on the brick,
+ * so the game and the simulator do not need the leJOS classes.
+ *
+ */
+public interface SampleSource {
+  /**
+   * @return the number of values in a sample
+   */
+  int sampleSize();
+
+  /**
+   * Reads a sample from the sensor.
+   *
+   * @param sample the array to copy the values into
+   * @param offset the index of the first value in the array
+   */
+  void fetchSample(float[] sample, int offset);
+}
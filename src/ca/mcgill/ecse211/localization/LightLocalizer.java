@@ -5,9 +5,14 @@ import ca.mcgill.ecse211.odometer.OdometerExceptions;
 import ca.mcgill.ecse211.game.Game;
 import ca.mcgill.ecse211.game.GameParameter;
 import ca.mcgill.ecse211.game.Navigation;
+import ca.mcgill.ecse211.hardware.Clock;
+import ca.mcgill.ecse211.metrics.Counter;
+import ca.mcgill.ecse211.metrics.LatencyHistogram;
+import ca.mcgill.ecse211.metrics.Metrics;
+import ca.mcgill.ecse211.threads.LineCrossingListener;
+import ca.mcgill.ecse211.threads.LineCrossingMonitor;
 import ca.mcgill.ecse211.threads.SensorData;
-import lejos.hardware.Sound;
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
+import ca.mcgill.ecse211.hardware.Motor;
 
 /**
  * This class helps our robot to localize itself using the light sensor
@@ -21,15 +26,34 @@ import lejos.hardware.motor.EV3LargeRegulatedMotor;
  * 
  */
 public class LightLocalizer {
-  private EV3LargeRegulatedMotor leftMotor;
-  private EV3LargeRegulatedMotor rightMotor;
+  private Motor leftMotor;
+  private Motor rightMotor;
 
 	private Odometer odometer;
 	private SensorData data;
 	private Navigation navigation;
 	private static final int FORWARD_SPEED = 150;
 	private static final double SENSOR_DIS = 16.3;
-	private static final int blackLineColor = -5;
+	private final LatencyHistogram duration = Metrics.histogram("localization.light");
+	private final Counter lineFailures = Metrics.counter("localization.light.rotation.failed");
+	private static boolean rotating = true;
+
+	// the rotating localization
+	private static final int ROTATE_SPEED = 250;
+	private static final int APPROACH_SPEED = 250;
+	private static final int MAX_CROSSINGS = 32;
+	private static final int X_LINE = 0; // the line x = 0 through the intersection
+	private static final int Y_LINE = 1; // the line y = 0 through the intersection
+	private static final double MIN_ACROSS = 0.3; // smallest sine of the angle the sensor crosses at
+	private static final double[] SENSOR_SIDE = { -Game.SEN_SIDE, Game.SEN_SIDE }; // positive to the right
+	private static final double RADIUS = Math.hypot(Game.SEN_DIS, Game.SEN_SIDE); // of the circle of a sensor
+	private final CrossingRecorder crossings = new CrossingRecorder();
+	private final int[] startTacho = new int[2];
+	private final int[] crossingSensors = new int[MAX_CROSSINGS];
+	private final int[] crossingTachos = new int[MAX_CROSSINGS];
+	private final int[] crossingLines = new int[MAX_CROSSINGS];
+	private final double[] crossingHeadings = new double[MAX_CROSSINGS];
+	private volatile int crossingCount;
   /**
    * This is the class constructor
    * 
@@ -37,8 +61,8 @@ public class LightLocalizer {
    * @param rightMotor
    * @throws OdometerExceptions
    */
-  public LightLocalizer(Navigation nav, EV3LargeRegulatedMotor leftMotor,
-      EV3LargeRegulatedMotor rightMotor) throws OdometerExceptions {
+  public LightLocalizer(Navigation nav, Motor leftMotor,
+      Motor rightMotor) throws OdometerExceptions {
     this.odometer = Odometer.getOdometer();
     this.data = SensorData.getSensorData();
     this.navigation = nav;
@@ -46,6 +70,16 @@ public class LightLocalizer {
     this.rightMotor = rightMotor;
   }
 
+  /**
+   * This method chooses whether the localization rotates once near the intersection, or drives
+   * to the two lines one after the other.
+   * 
+   * @param enabled true to localize with a rotation
+   */
+  public static void setRotating(boolean enabled) {
+    rotating = enabled;
+  }
+
   /**
    * (*Improve*)
    *  Once the robot know what angle it is facing, this method looks for the x,y axis origins knowing
@@ -53,40 +87,42 @@ public class LightLocalizer {
    * @param sC: the coordinate to set to after localization
    */
   public void localize(int[] sC) {
+    long start = Clock.nanos();
+    if (!rotating || !localizeByRotation(sC)) {
+      localizeByTranslation();
+      odometer.setTheta(sC[2]);
+      odometer.setX(sC[0]);
+      odometer.setY(sC[1]);
+    }
+    Navigation.getLocalization().localized();
+    duration.record(Clock.nanos() - start);
+    
+    Game.getPlatform().beep();
+    Game.getPlatform().beep();
+    Game.getPlatform().beep();
+  }
+
+  /**
+   * This method drives to the lines of the intersection one after the other, and backs up by the
+   * distance of the sensors each time. The robot ends on the intersection facing north.
+   */
+  private void localizeByTranslation() {
     leftMotor.setSpeed(FORWARD_SPEED);
     rightMotor.setSpeed(FORWARD_SPEED);
 
     // 1. GO forward find the y=0 line
-    leftMotor.forward();
-    rightMotor.forward();
-    while (leftMotor.isMoving() || rightMotor.isMoving()) {
-      if (data.getL()[0] < blackLineColor) {
-        leftMotor.stop(true);
-      }
-      if (data.getL()[1] < blackLineColor) {
-        rightMotor.stop(true);
-      }
-    }
+    navigation.driveToLine(true);
     odometer.setTheta(0.0);
-    Sound.beep();
+    Game.getPlatform().beep();
     odometer.setY(0);
     // 2. Turn and go forward find the x=0 line
     navigation.turnTo(90);
     leftMotor.setSpeed(FORWARD_SPEED);
     rightMotor.setSpeed(FORWARD_SPEED);
-    leftMotor.forward();
-    rightMotor.forward();
-    while (leftMotor.isMoving() || rightMotor.isMoving()) {
-      if (data.getL()[0] < blackLineColor) {
-        leftMotor.stop(true);
-      }
-      if (data.getL()[1] < blackLineColor) {
-        rightMotor.stop(true);
-      }
-    }
+    navigation.driveToLine(true);
     
     odometer.setTheta(90.0);
-    Sound.beep();
+    Game.getPlatform().beep();
     odometer.setX(0);
     leftMotor.setSpeed(FORWARD_SPEED);
     rightMotor.setSpeed(FORWARD_SPEED);
@@ -104,17 +140,181 @@ public class LightLocalizer {
     rightMotor.rotate(
         Navigation.convertDistance(Game.WHEEL_RAD, -Game.SEN_DIS),
         false);
-    
-    
-    odometer.setTheta(sC[2]);
-    
-    odometer.setX(sC[0]);
-    odometer.setY(sC[1]);
-    
-    Sound.beep();
-    Sound.beep();
-    Sound.beep();
   }
-  
-  
+
+  /**
+   * This method moves from the center of the tile to the intersection and rotates once, while
+   * both back sensors record the headings at which they cross the two lines, then sets the
+   * odometer to the pose found. The robot stays where it is.
+   * <p>
+   * A sensor at distance rho from the center of rotation crosses each line twice. For the line
+   * x = 0, the sensor is on the negative side over an arc centered on the heading alpha + 90,
+   * where alpha is the direction of the sensor seen from the center, and the arc is 2 acos(x / rho)
+   * long. The line y = 0 gives the same with an arc centered on alpha. The center of each arc
+   * gives the heading error, and its length the distance to the line. The detector finds a line
+   * when the sensor reaches its edge, so the crossings are moved to the center of the line once a
+   * first solution gives the angle at which the sensor crosses it.
+   * 
+   * @param sC the intersection in tiles and the heading of north in the frame of the field
+   * @return true if the robot localized, false if it did not see each line twice with a sensor
+   */
+  private boolean localizeByRotation(int[] sC) {
+    // 1. Move to the intersection from the center of the tile
+    leftMotor.setSpeed(APPROACH_SPEED);
+    rightMotor.setSpeed(APPROACH_SPEED);
+    navigation.turnTo(45);
+    navigation.move(Math.sqrt(2) * Game.TILE / 2);
+
+    // 2. Rotate once while the sensors record the crossings
+    double[] position = odometer.getXYT();
+    double startHeading = position[2];
+    // where the robot should be from the intersection, in cm, if it started at the center
+    double expectedX = position[0] * Game.TILE - Game.TILE / 2;
+    double expectedY = position[1] * Game.TILE - Game.TILE / 2;
+    crossingCount = 0;
+    startTacho[LineCrossingMonitor.LEFT] = leftMotor.getTachoCount();
+    startTacho[LineCrossingMonitor.RIGHT] = rightMotor.getTachoCount();
+    data.getLineCrossings().addListener(crossings);
+    leftMotor.setSpeed(ROTATE_SPEED);
+    rightMotor.setSpeed(ROTATE_SPEED);
+    int wheelAngle = Navigation.convertAngle(Game.WHEEL_RAD, Game.TRACK, 360);
+    leftMotor.rotate(wheelAngle, true);
+    rightMotor.rotate(-wheelAngle, false);
+    leftMotor.waitComplete();
+    data.getLineCrossings().removeListener(crossings);
+    double endHeading = headingAt(LineCrossingMonitor.LEFT, leftMotor.getTachoCount(), startHeading);
+
+    // 3. Sort the crossings by sensor and by line
+    int n = crossingCount;
+    for (int i = 0; i < n; i++) {
+      crossingHeadings[i] = headingAt(crossingSensors[i], crossingTachos[i], startHeading);
+      double theta = Math.toRadians(crossingHeadings[i]);
+      double side = SENSOR_SIDE[crossingSensors[i]];
+      double sensorX = expectedX - Game.SEN_DIS * Math.sin(theta) + side * Math.cos(theta);
+      double sensorY = expectedY - Game.SEN_DIS * Math.cos(theta) - side * Math.sin(theta);
+      crossingLines[i] = Math.abs(sensorX) < Math.abs(sensorY) ? X_LINE : Y_LINE;
+    }
+
+    // 4. Solve, then solve again with the crossings moved to the center of the lines
+    double error = 0;
+    double x = 0;
+    double y = 0;
+    for (int iteration = 0; iteration < 2; iteration++) {
+      double errorSum = 0;
+      double xSum = 0;
+      double ySum = 0;
+      int pairs = 0;
+      int xPairs = 0;
+      int yPairs = 0;
+      for (int sensor = 0; sensor < 2; sensor++) {
+        for (int line = X_LINE; line <= Y_LINE; line++) {
+          int first = -1;
+          int second = -1;
+          int seen = 0;
+          for (int i = 0; i < n; i++) {
+            if (crossingSensors[i] == sensor && crossingLines[i] == line) {
+              if (seen == 0) {
+                first = i;
+              } else {
+                second = i;
+              }
+              seen++;
+            }
+          }
+          if (seen != 2) {
+            continue;
+          }
+          double alpha = Math.toDegrees(Math.atan2(SENSOR_SIDE[sensor], Game.SEN_DIS));
+          double from = crossingHeadings[first];
+          double to = crossingHeadings[second];
+          if (iteration > 0) {
+            from += edgeCorrection(line, from + error - alpha);
+            to += edgeCorrection(line, to + error - alpha);
+          }
+          // the arc on the negative side of the line is centered on alpha + 90 or alpha
+          double center = line == X_LINE ? alpha + 90 : alpha;
+          double length = ((to - from) % 360 + 360) % 360;
+          double middle = from + length / 2;
+          if (Math.abs(wrap(center - error - middle)) > 90) {
+            middle += 180;
+            length = 360 - length;
+          }
+          double distance = RADIUS * Math.cos(Math.toRadians(length / 2));
+          errorSum += wrap(center - middle);
+          pairs++;
+          if (line == X_LINE) {
+            xSum += distance;
+            xPairs++;
+          } else {
+            ySum += distance;
+            yPairs++;
+          }
+        }
+      }
+      if (xPairs == 0 || yPairs == 0) {
+        lineFailures.increment();
+        navigation.turnTo(0);
+        return false;
+      }
+      error = errorSum / pairs;
+      x = xSum / xPairs;
+      y = ySum / yPairs;
+    }
+
+    // 5. The robot is on the intersection, to within the distance found
+    double heading = endHeading + error + sC[2];
+    double rotation = Math.toRadians(sC[2]);
+    double fieldX = x * Math.cos(rotation) + y * Math.sin(rotation);
+    double fieldY = -x * Math.sin(rotation) + y * Math.cos(rotation);
+    odometer.setXYT(sC[0] + fieldX / Game.TILE, sC[1] + fieldY / Game.TILE, (heading % 360 + 360) % 360);
+    return true;
+  }
+
+  /**
+   * @param sensor the sensor that crossed the line
+   * @param tachoCount the tacho count of the wheel on the side of the sensor
+   * @param startHeading the heading of the robot when the rotation started
+   * @return the heading of the robot, which rotates in place clockwise, at the tacho count
+   */
+  private double headingAt(int sensor, int tachoCount, double startHeading) {
+    int turned = tachoCount - startTacho[sensor];
+    if (sensor == LineCrossingMonitor.RIGHT) {
+      turned = -turned;
+    }
+    return startHeading + turned * 2 * Game.WHEEL_RAD / Game.TRACK;
+  }
+
+  /**
+   * @param line the line crossed, X_LINE or Y_LINE
+   * @param angle the heading of the robot minus the direction of the sensor, in degrees
+   * @return the rotation between the edge and the center of the line, in degrees
+   */
+  private static double edgeCorrection(int line, double angle) {
+    double radians = Math.toRadians(angle);
+    double across = Math.abs(line == X_LINE ? Math.cos(radians) : Math.sin(radians));
+    // near a tangent the correction grows without bound, and the crossing is poor anyway
+    return Math.toDegrees(Game.LINE_EDGE / (RADIUS * Math.max(MIN_ACROSS, across)));
+  }
+
+  /**
+   * @return the angle between -180 and 180 degrees
+   */
+  private static double wrap(double angle) {
+    return angle - 360 * Math.floor((angle + 180) / 360);
+  }
+
+  /**
+   * This class records the crossings of the back sensors during the rotation. It is called on the
+   * light poller thread; the rotation reads the crossings once it has removed the listener.
+   */
+  private class CrossingRecorder implements LineCrossingListener {
+    public void lineCrossed(int sensor, long time, int tachoCount) {
+      int i = crossingCount;
+      if (i < MAX_CROSSINGS) {
+        crossingSensors[i] = sensor;
+        crossingTachos[i] = tachoCount;
+        crossingCount = i + 1;
+      }
+    }
+  }
 }
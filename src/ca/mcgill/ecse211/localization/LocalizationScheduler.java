@@ -0,0 +1,158 @@
+package ca.mcgill.ecse211.localization;
+
+/**
+ * This class decides when the robot needs to localize on the grid lines again. It keeps an
+ * estimate of the error of x, y and theta, which grows with every open loop move and turn, and
+ * shrinks when the robot squares itself on a line. A line that was expected but missed makes the
+ * whole pose suspect.
+ * <p>
+ * Squaring on a line fixes the heading and the coordinate along the heading, so a partial
+ * localization (one line) is enough when the other coordinate is still good. A full localization
+ * probes lines along both axes.
+ *
+ */
+public class LocalizationScheduler {
+
+  // This is an enumeration class for the localizations the robot can run
+  public enum Need {
+    NONE, PARTIAL, FULL
+  }
+
+  private static final double ALONG_DRIFT = 0.02; // error per cm moved along the heading
+  private static final double CROSS_DRIFT = 0.01; // error per cm moved across the heading
+  private static final double TURN_DRIFT = 0.02; // heading error per degree turned
+  private static final double SQUARED_POSITION = 0.5; // error after squaring on a line, in cm
+  private static final double SQUARED_HEADING = 0.5; // error after squaring on a line, in degrees
+  private static final double MISSED_POSITION = 10; // error added by a missed line, in cm
+  private static final double MISSED_HEADING = 5; // error added by a missed line, in degrees
+  private static final double UNKNOWN_POSITION = 15; // error before localization, in cm
+  private static final double UNKNOWN_HEADING = 45; // error before localization, in degrees
+
+  private final double maxPositionError;
+  private final double maxHeadingError;
+  private double xError;
+  private double yError;
+  private double headingError;
+
+  /**
+   * This constructor creates a scheduler for a robot that has not localized yet.
+   *
+   * @param maxPositionError the largest error of x or y that does not need a localization, in cm
+   * @param maxHeadingError the largest heading error that does not need a localization, in
+   *        degrees
+   */
+  public LocalizationScheduler(double maxPositionError, double maxHeadingError) {
+    this.maxPositionError = maxPositionError;
+    this.maxHeadingError = maxHeadingError;
+    this.xError = UNKNOWN_POSITION;
+    this.yError = UNKNOWN_POSITION;
+    this.headingError = UNKNOWN_HEADING;
+  }
+
+  /**
+   * Records a straight move without line correction.
+   *
+   * @param distance the distance moved in cm, negative when backing up
+   * @param theta the heading of the robot in degrees
+   */
+  public synchronized void moved(double distance, double theta) {
+    double along = Math.abs(distance) * ALONG_DRIFT;
+    double cross = Math.abs(distance)
+        * (CROSS_DRIFT + Math.sin(Math.toRadians(Math.min(90, headingError))));
+    if (isAlongY(theta)) {
+      yError += along;
+      xError += cross;
+    } else {
+      xError += along;
+      yError += cross;
+    }
+  }
+
+  /**
+   * Records a turn on the spot.
+   *
+   * @param angle the angle turned in degrees
+   */
+  public synchronized void turned(double angle) {
+    headingError += Math.abs(angle) * TURN_DRIFT;
+  }
+
+  /**
+   * Records that the robot squared itself on a line, which fixes the heading and the coordinate
+   * along the heading.
+   *
+   * @param theta the heading of the robot in degrees
+   */
+  public synchronized void squared(double theta) {
+    headingError = SQUARED_HEADING;
+    if (isAlongY(theta)) {
+      yError = SQUARED_POSITION;
+    } else {
+      xError = SQUARED_POSITION;
+    }
+  }
+
+  /**
+   * Records that the robot drove past a line without seeing it.
+   */
+  public synchronized void missedLine() {
+    xError += MISSED_POSITION;
+    yError += MISSED_POSITION;
+    headingError += MISSED_HEADING;
+  }
+
+  /**
+   * Records a full localization.
+   */
+  public synchronized void localized() {
+    xError = SQUARED_POSITION;
+    yError = SQUARED_POSITION;
+    headingError = SQUARED_HEADING;
+  }
+
+  /**
+   * This method chooses the localization to run now. A partial localization squares the robot on
+   * the next line ahead, so it is only enough when the coordinate across the heading is good.
+   *
+   * @param theta the heading of the robot in degrees
+   * @return the localization needed
+   */
+  public synchronized Need need(double theta) {
+    double along = isAlongY(theta) ? yError : xError;
+    double cross = isAlongY(theta) ? xError : yError;
+    if (cross > maxPositionError) {
+      return Need.FULL;
+    } else if (along > maxPositionError || headingError > maxHeadingError) {
+      return Need.PARTIAL;
+    }
+    return Need.NONE;
+  }
+
+  /**
+   * @return the expected error of x in cm
+   */
+  public synchronized double getXError() {
+    return xError;
+  }
+
+  /**
+   * @return the expected error of y in cm
+   */
+  public synchronized double getYError() {
+    return yError;
+  }
+
+  /**
+   * @return the expected error of the heading in degrees
+   */
+  public synchronized double getHeadingError() {
+    return headingError;
+  }
+
+  /**
+   * @return true if the robot moves mostly along the y axis with the heading theta
+   */
+  private static boolean isAlongY(double theta) {
+    return Math.abs(Math.cos(Math.toRadians(theta))) > Math.sqrt(0.5);
+  }
+}
@@ -0,0 +1,298 @@
+package ca.mcgill.ecse211.localization;
+
+import ca.mcgill.ecse211.game.Game;
+import ca.mcgill.ecse211.game.Navigation;
+import ca.mcgill.ecse211.hardware.Clock;
+import ca.mcgill.ecse211.hardware.Motor;
+import ca.mcgill.ecse211.metrics.Counter;
+import ca.mcgill.ecse211.metrics.LatencyHistogram;
+import ca.mcgill.ecse211.metrics.Metrics;
+import ca.mcgill.ecse211.odometer.Odometer;
+import ca.mcgill.ecse211.odometer.OdometerExceptions;
+import ca.mcgill.ecse211.threads.SampleBuffer;
+import ca.mcgill.ecse211.threads.SensorData;
+
+/**
+ * This class localizes the robot in its starting corner with a single turn in
+ * place. The robot rotates a full turn while every ultrasonic sample is
+ * recorded with the heading it was taken at, and the two walls of the corner
+ * are fitted to the whole profile at once. The fit gives the heading and the
+ * distance to both walls, so the robot then drives straight to the starting
+ * intersection, without the two passes of the {@link UltrasonicLocalizer} and
+ * the line search of the {@link LightLocalizer}.
+ * <p>
+ * The walls are perpendicular, so the fit only has three unknowns: the heading
+ * of the normal of the wall behind the robot, and the distances to the wall
+ * behind and to the wall on the left. The sensor reports the closest wall in
+ * its sound cone, so a wall at distance p, whose normal is a degrees away from
+ * the sensor, reads p while a is within the cone, and p / cos(a - cone)
+ * beyond. For a given normal, the distances are a linear least squares fit; the
+ * normal is searched for over the whole turn and then refined. The sensor is
+ * taken to be on the axis of rotation, as in the two-pass localizer.
+ *
+ */
+public class SweepLocalizer {
+	private static final int ROTATE_SPEED = 200;
+	private static final int FORWARD_SPEED = 150;
+	private static final double SWEEP_ANGLE = 360; // in degrees
+	private static final long POLL = 10; // time between checks for new samples, in ms
+	private static final int MAX_SAMPLES = 1024;
+
+	private static final double CONE = 15; // half angle of the sound cone of the sensor, in degrees
+	private static final double MAX_INCIDENCE = 85; // largest angle between a ray and a wall normal
+	private static final double CLIP = 2 * Game.TILE; // readings past this are not from the corner
+	private static final double COARSE_STEP = 3; // step of the search for the normal, in degrees
+	private static final double FINE_STEP = 0.05; // precision of the normal, in degrees
+	private static final int ITERATIONS = 3; // rounds of assigning the samples to the walls
+	private static final int MIN_SAMPLES = 5; // samples each wall needs
+	private static final double MAX_RMS = 3; // largest root mean square residual of a good fit, in cm
+
+	private final Motor leftMotor;
+	private final Motor rightMotor;
+	private final Odometer odometer;
+	private final SensorData data;
+	private final Navigation navigation;
+	private final LatencyHistogram duration = Metrics.histogram("localization.sweep");
+	private final Counter failures = Metrics.counter("localization.sweep.failed");
+
+	// the profile of the turn
+	private final double[] headings = new double[MAX_SAMPLES];
+	private final double[] distances = new double[MAX_SAMPLES];
+	private final double[] sample = new double[2];
+	private final double[] pose = new double[3];
+	private int count;
+
+	// the fit: distances to the wall behind and on the left, in cm
+	private final double[] walls = new double[2];
+	private final double[] sumDG = new double[2];
+	private final double[] sumGG = new double[2];
+	private final int[] fitted = new int[2];
+
+	/**
+	 * This is the class constructor.
+	 *
+	 * @param nav        the navigation used to drive to the starting intersection
+	 * @param leftMotor  the left wheel motor
+	 * @param rightMotor the right wheel motor
+	 * @throws OdometerExceptions
+	 */
+	public SweepLocalizer(Navigation nav, Motor leftMotor, Motor rightMotor) throws OdometerExceptions {
+		this.odometer = Odometer.getOdometer();
+		this.data = SensorData.getSensorData();
+		this.navigation = nav;
+		this.leftMotor = leftMotor;
+		this.rightMotor = rightMotor;
+	}
+
+	/**
+	 * This method turns once, fits the walls of the corner, and drives to the
+	 * starting intersection. If the fit fails, the robot does not move after the
+	 * turn and the odometer is left unchanged.
+	 *
+	 * @param sC the starting intersection in tiles and the heading facing away
+	 *           from the wall behind, in degrees
+	 * @return true if the robot localized
+	 */
+	public boolean localize(int[] sC) {
+		long start = Clock.nanos();
+		sweep();
+		double normal = fit();
+		if (Double.isNaN(normal)) {
+			failures.increment();
+			return false;
+		}
+
+		// local frame of the corner: the wall behind is y = 0, the wall on the left x = 0
+		odometer.readInto(pose);
+		double heading = pose[2] - normal + 180 + sC[2];
+		double offsetX = walls[1] - Game.TILE;
+		double offsetY = walls[0] - Game.TILE;
+		double rotation = Math.toRadians(sC[2]);
+		double x = offsetX * Math.cos(rotation) + offsetY * Math.sin(rotation);
+		double y = -offsetX * Math.sin(rotation) + offsetY * Math.cos(rotation);
+		heading = (heading % 360 + 360) % 360;
+		odometer.setXYT(sC[0] + x / Game.TILE, sC[1] + y / Game.TILE, heading);
+
+		// the intersection is at -x, -y from the robot
+		navigation.turnTo((Math.toDegrees(Math.atan2(-x, -y)) + 360) % 360);
+		leftMotor.setSpeed(FORWARD_SPEED);
+		rightMotor.setSpeed(FORWARD_SPEED);
+		navigation.move(Math.hypot(x, y));
+		odometer.setX(sC[0]);
+		odometer.setY(sC[1]);
+		Navigation.getLocalization().localized();
+		duration.record(Clock.nanos() - start);
+		Game.getPlatform().beep();
+		return true;
+	}
+
+	/**
+	 * This method turns the robot clockwise once and records the profile.
+	 */
+	private void sweep() {
+		SampleBuffer history = data.getDistanceHistory();
+		long next = history.count();
+		count = 0;
+		leftMotor.setSpeed(ROTATE_SPEED);
+		rightMotor.setSpeed(ROTATE_SPEED);
+		int wheelAngle = Navigation.convertAngle(Game.WHEEL_RAD, Game.TRACK, SWEEP_ANGLE);
+		leftMotor.rotate(wheelAngle, true);
+		rightMotor.rotate(-wheelAngle, true);
+		while (true) {
+			boolean moving = leftMotor.isMoving() || rightMotor.isMoving();
+			next = record(history, next);
+			if (!moving) {
+				return;
+			}
+			try {
+				Clock.sleep(POLL);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * This method copies the samples taken since the last call into the profile.
+	 *
+	 * @return the index of the next sample to record
+	 */
+	private long record(SampleBuffer history, long next) {
+		long end = history.count();
+		next = Math.max(next, end - history.capacity());
+		for (; next < end && count < MAX_SAMPLES; next++) {
+			if (history.get(next, sample) >= 0) {
+				if (Double.isNaN(sample[1])) {
+					// without an odometer on the poller, the heading is the one read now
+					odometer.readInto(pose);
+					sample[1] = pose[2];
+				}
+				distances[count] = sample[0];
+				headings[count] = sample[1];
+				count++;
+			}
+		}
+		return next;
+	}
+
+	/**
+	 * This method fits the walls to the profile, and leaves their distances in
+	 * walls.
+	 *
+	 * @return the heading of the normal of the wall behind in degrees, pointing
+	 *         to the wall, or NaN if the profile does not look like a corner
+	 */
+	private double fit() {
+		double best = Double.NaN;
+		double bestResidual = Double.POSITIVE_INFINITY;
+		for (double normal = 0; normal < 360; normal += COARSE_STEP) {
+			double residual = residual(normal);
+			if (residual < bestResidual) {
+				bestResidual = residual;
+				best = normal;
+			}
+		}
+		if (Double.isNaN(best)) {
+			return Double.NaN;
+		}
+		for (double step = COARSE_STEP / 2; step >= FINE_STEP; step /= 2) {
+			double center = best;
+			for (int side = -1; side <= 1; side += 2) {
+				double residual = residual(center + side * step);
+				if (residual < bestResidual) {
+					bestResidual = residual;
+					best = center + side * step;
+				}
+			}
+		}
+		residual(best);
+		double rms = Math.sqrt(bestResidual / Math.max(1, count));
+		if (fitted[0] < MIN_SAMPLES || fitted[1] < MIN_SAMPLES || rms > MAX_RMS || walls[0] >= CLIP
+				|| walls[1] >= CLIP) {
+			return Double.NaN;
+		}
+		return (best % 360 + 360) % 360;
+	}
+
+	/**
+	 * This method fits the distances of the walls for a heading of the normal of
+	 * the wall behind. Each sample goes to the wall that reads closer, and the
+	 * samples are assigned again with the new distances a few times.
+	 *
+	 * @param normal the heading of the normal of the wall behind in degrees, the
+	 *               wall on the left is 90 degrees clockwise from it
+	 * @return the sum of the squared residuals of the readings, clipped to CLIP
+	 */
+	private double residual(double normal) {
+		walls[0] = CLIP;
+		walls[1] = CLIP;
+		for (int i = 0; i < count; i++) {
+			for (int wall = 0; wall < 2; wall++) {
+				if (incidence(headings[i], normal + 90 * wall) <= CONE) {
+					walls[wall] = Math.min(walls[wall], distances[i]);
+				}
+			}
+		}
+		double sum = 0;
+		for (int iteration = 0; iteration <= ITERATIONS; iteration++) {
+			sum = 0;
+			for (int wall = 0; wall < 2; wall++) {
+				sumDG[wall] = 0;
+				sumGG[wall] = 0;
+				fitted[wall] = 0;
+			}
+			for (int i = 0; i < count; i++) {
+				int closest = -1;
+				double closestGain = 0;
+				double predicted = CLIP;
+				for (int wall = 0; wall < 2; wall++) {
+					double gain = gain(incidence(headings[i], normal + 90 * wall));
+					if (gain > 0 && walls[wall] * gain < predicted) {
+						predicted = walls[wall] * gain;
+						closest = wall;
+						closestGain = gain;
+					}
+				}
+				double distance = Math.min(distances[i], CLIP);
+				sum += (distance - predicted) * (distance - predicted);
+				if (closest >= 0 && distance < CLIP) {
+					sumDG[closest] += distance * closestGain;
+					sumGG[closest] += closestGain * closestGain;
+					fitted[closest]++;
+				}
+			}
+			if (iteration < ITERATIONS) {
+				for (int wall = 0; wall < 2; wall++) {
+					if (sumGG[wall] > 0) {
+						walls[wall] = sumDG[wall] / sumGG[wall];
+					}
+				}
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * @return the angle between a heading and a wall normal, between 0 and 180
+	 *         degrees
+	 */
+	private static double incidence(double heading, double normal) {
+		double difference = (heading - normal) % 360;
+		if (difference < 0) {
+			difference += 360;
+		}
+		return difference > 180 ? 360 - difference : difference;
+	}
+
+	/**
+	 * @return the reading of a wall at distance 1 seen at an incidence, or 0 if
+	 *         the sensor cannot see it
+	 */
+	private static double gain(double incidence) {
+		double outside = Math.max(0, incidence - CONE);
+		if (outside >= MAX_INCIDENCE) {
+			return 0;
+		}
+		return 1 / Math.cos(Math.toRadians(outside));
+	}
+}
@@ -0,0 +1,143 @@
+package ca.mcgill.ecse211.localization;
+
+import java.util.Arrays;
+
+/**
+ * This class finds the headings at which the ultrasonic sensor starts and stops
+ * seeing a wall while the robot rotates in place. It takes the samples of the
+ * sensor one at a time, each with the heading of the robot when it was taken.
+ * <p>
+ * The distances are median filtered, which removes the single wrong readings of
+ * the sensor, and each filtered distance keeps the heading of the sample in the
+ * middle of its window, so the filter does not delay the edges. A wall is seen
+ * when the filtered distance gets below the wall distance minus a margin, and
+ * lost when it gets above the wall distance plus the margin. The heading of an
+ * edge is interpolated where the filtered distance, clipped to the band of the
+ * margin, crosses the wall distance. When the distance jumps over the whole
+ * band between two samples, as it does at the end of a wall, the edge is put
+ * halfway between them.
+ *
+ */
+public class UltrasonicEdgeDetector {
+
+	/**
+	 * The edges of a wall.
+	 */
+	public enum Edge {
+		/** the distance falls, a wall comes into view */
+		FALLING,
+		/** the distance rises, the wall goes out of view */
+		RISING
+	}
+
+	private static final int WINDOW = 5; // samples of the median filter, odd
+
+	private final double wallDistance;
+	private final double margin;
+	private final double[] distances = new double[WINDOW];
+	private final double[] headings = new double[WINDOW];
+	private final double[] sorted = new double[WINDOW];
+	private int count; // samples in the window
+	private int next; // slot of the next sample, the oldest one once the window is full
+	private double previousDistance; // clipped filtered distance of the previous sample
+	private double previousHeading;
+	private double crossingHeading; // where the filtered distance last crossed the wall distance
+	private Boolean wallSeen; // null until the filtered distance leaves the band
+	private double edgeHeading;
+
+	/**
+	 * This constructor creates a detector.
+	 *
+	 * @param wallDistance the distance at which a wall is seen, in cm
+	 * @param margin       the half width of the hysteresis band around it, in cm
+	 */
+	public UltrasonicEdgeDetector(double wallDistance, double margin) {
+		this.wallDistance = wallDistance;
+		this.margin = margin;
+		reset();
+	}
+
+	/**
+	 * This method forgets the samples seen so far, for example when the robot
+	 * starts rotating the other way.
+	 */
+	public void reset() {
+		count = 0;
+		next = 0;
+		previousDistance = Double.NaN;
+		crossingHeading = Double.NaN;
+		wallSeen = null;
+	}
+
+	/**
+	 * This method adds a sample.
+	 *
+	 * @param distance the distance read by the sensor in cm
+	 * @param heading  the heading of the robot when the sample was taken, in
+	 *                 degrees
+	 * @return the edge that the sample confirms, or null
+	 */
+	public Edge update(double distance, double heading) {
+		distances[next] = distance;
+		headings[next] = heading;
+		next = (next + 1) % WINDOW;
+		if (count < WINDOW) {
+			count++;
+			if (count < WINDOW) {
+				return null;
+			}
+		}
+		System.arraycopy(distances, 0, sorted, 0, WINDOW);
+		Arrays.sort(sorted);
+		double filtered = Math.max(wallDistance - margin, Math.min(wallDistance + margin, sorted[WINDOW / 2]));
+		double center = headings[(next + WINDOW / 2) % WINDOW];
+
+		if (!Double.isNaN(previousDistance) && (previousDistance > wallDistance) != (filtered > wallDistance)) {
+			double fraction = (previousDistance - wallDistance) / (previousDistance - filtered);
+			crossingHeading = interpolate(previousHeading, center, fraction);
+		}
+		previousDistance = filtered;
+		previousHeading = center;
+
+		Edge edge = null;
+		if (filtered <= wallDistance - margin && !Boolean.TRUE.equals(wallSeen)) {
+			if (wallSeen != null) {
+				edge = Edge.FALLING;
+				edgeHeading = crossingHeading;
+			}
+			wallSeen = Boolean.TRUE;
+		} else if (filtered >= wallDistance + margin && !Boolean.FALSE.equals(wallSeen)) {
+			if (wallSeen != null) {
+				edge = Edge.RISING;
+				edgeHeading = crossingHeading;
+			}
+			wallSeen = Boolean.FALSE;
+		}
+		return edge;
+	}
+
+	/**
+	 * @return the heading of the last edge in degrees, NaN if the samples had no
+	 *         heading
+	 */
+	public double getEdgeHeading() {
+		return edgeHeading;
+	}
+
+	/**
+	 * @return true if the sensor sees a wall
+	 */
+	public boolean isWallSeen() {
+		return Boolean.TRUE.equals(wallSeen);
+	}
+
+	/**
+	 * @return the heading between from and to, going the short way around, in
+	 *         degrees between 0 and 360
+	 */
+	private static double interpolate(double from, double to, double fraction) {
+		double difference = (to - from + 540) % 360 - 180;
+		double heading = (from + fraction * difference) % 360;
+		return heading < 0 ? heading + 360 : heading;
+	}
+}
@@ -2,14 +2,22 @@ package ca.mcgill.ecse211.localization;
 
 import ca.mcgill.ecse211.odometer.Odometer;
 import ca.mcgill.ecse211.odometer.OdometerExceptions;
+import ca.mcgill.ecse211.game.Game;
 import ca.mcgill.ecse211.game.Navigation;
+import ca.mcgill.ecse211.hardware.Clock;
+import ca.mcgill.ecse211.metrics.LatencyHistogram;
+import ca.mcgill.ecse211.metrics.Metrics;
+import ca.mcgill.ecse211.threads.SampleBuffer;
 import ca.mcgill.ecse211.threads.SensorData;
-import lejos.hardware.Button;
-import lejos.hardware.Sound;
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
+import ca.mcgill.ecse211.hardware.Motor;
+import ca.mcgill.ecse211.localization.UltrasonicEdgeDetector.Edge;
 
 /**
  * This class helps our robot to localize itself using the ultrasonic sensor
+ * <p>
+ * The robot rotates in place while an {@link UltrasonicEdgeDetector} goes
+ * through every sample of the sensor once, with the heading it was taken at, so
+ * the heading of an edge does not depend on when the localizer looks at it.
  * 
  * @author Ajay Patel
  * @author Fandi Yi
@@ -20,17 +28,20 @@ import lejos.hardware.motor.EV3LargeRegulatedMotor;
  * 
  */
 public class UltrasonicLocalizer {
-	private static final int ROTATE_SPEED = 120;
-	private EV3LargeRegulatedMotor leftMotor;
-	private EV3LargeRegulatedMotor rightMotor;
+	private static final int ROTATE_SPEED = 200;
+	private Motor leftMotor;
+	private Motor rightMotor;
 
 	private Odometer odometer;
 	private SensorData data;
 	private Navigation navigation;
 
-	private static final int READINGS_THRESHOLD = 40;
+	private static final long POLL = 10; // time between checks for new samples, in ms
 	private static final double wallDistance = 40.0;
 	private static final double wallDistanceError = 5;
+	private final UltrasonicEdgeDetector detector = new UltrasonicEdgeDetector(wallDistance, wallDistanceError);
+	private final double[] sample = new double[2];
+	private final LatencyHistogram duration = Metrics.histogram("localization.ultrasonic");
 
 	/**
 	 * This is the class constructor for a class that helps to localize our robot
@@ -42,7 +53,7 @@ public class UltrasonicLocalizer {
 	 *                   control of the right motor
 	 * @throws OdometerExceptions
 	 */
-	public UltrasonicLocalizer(Navigation nav, EV3LargeRegulatedMotor leftMotor, EV3LargeRegulatedMotor rightMotor)
+	public UltrasonicLocalizer(Navigation nav, Motor leftMotor, Motor rightMotor)
 			throws OdometerExceptions {
 		this.odometer = Odometer.getOdometer();
 		this.data = SensorData.getSensorData();
@@ -57,7 +68,9 @@ public class UltrasonicLocalizer {
 	 * @param buttonChoice The left or right button on the EV3 brick
 	 */
 	public void localize() {
+		long start = Clock.nanos();
 		fallingEdge();
+		duration.record(Clock.nanos() - start);
 	}
 
 	/**
@@ -73,19 +86,15 @@ public class UltrasonicLocalizer {
 		leftMotor.forward();
 		rightMotor.backward();
 
-		turnToWall();
-		turnAwayFromWall();
-		Sound.beep();
-		angle1 = odometer.getXYT()[2];
+		angle1 = waitForEdge(Edge.RISING);
+		Game.getPlatform().beep();
 
 		// 2. turn opposite way, until no wall, then see wall and check angle2
 		rightMotor.forward();
 		leftMotor.backward();
 
-		turnToWall();
-		turnAwayFromWall();
-		Sound.beep();
-		angle2 = odometer.getXYT()[2];
+		angle2 = waitForEdge(Edge.RISING);
+		Game.getPlatform().beep();
 
 		// 3. Turn to calculate angle, then turn to face y-axis, wait for button press
 		int lowerAngleBound = -222, upperAngleBound = -46;
@@ -95,7 +104,7 @@ public class UltrasonicLocalizer {
 			theta = upperAngleBound + (angle1 + angle2) / 2;
 		navigation.turnTo(theta + 180);
 		odometer.setTheta(0);
-		Button.waitForAnyPress();
+		Game.getPlatform().waitForAnyPress();
 	}
 
 	/**
@@ -111,20 +120,15 @@ public class UltrasonicLocalizer {
 		leftMotor.forward();
 		rightMotor.backward();
 
-		turnAwayFromWall();
-		turnToWall();
-		Sound.beep();
-		angle1 = odometer.getXYT()[2];
+		angle1 = waitForEdge(Edge.FALLING);
+		Game.getPlatform().beep();
 
 		// 2. Turn left until we see the second wall, then turn right
-		navigation.turn(-20);
 		rightMotor.forward();
 		leftMotor.backward();
 
-		turnAwayFromWall();
-		turnToWall();
-		Sound.beep();
-		angle2 = odometer.getXYT()[2];
+		angle2 = waitForEdge(Edge.FALLING);
+		Game.getPlatform().beep();
 
 		// 3. Calculate the angle and face y-axis 0
 		int lowerAngleBound = -222, upperAngleBound = -45;
@@ -138,27 +142,36 @@ public class UltrasonicLocalizer {
 	}
 
 	/**
-	 * Keep turning until robot is sure to have seen the wall. Takes 10 readings to
-	 * be sure.
-	 */
-	private void turnToWall() {
-		int numberOfReadings = 0;
-
-		while (numberOfReadings < READINGS_THRESHOLD) {
-			if (data.getD() < wallDistance - wallDistanceError)
-				numberOfReadings++;
-		}
-	}
-
-	/**
-	 * Keep turning until robot is sure to have not seen the wall.
+	 * Keep turning until the detector finds an edge. The edge only counts once the
+	 * sensor has been on the other side of it, so a falling edge is never found
+	 * while the robot still faces the wall it started on.
+	 * 
+	 * @param edge the edge to look for
+	 * @return the heading of the edge in degrees
 	 */
-	private void turnAwayFromWall() {
-		int numberOfReadings = 0;
-
-		while (numberOfReadings < READINGS_THRESHOLD) {
-			if (data.getD() > wallDistance + wallDistanceError)
-				numberOfReadings++;
+	private double waitForEdge(Edge edge) {
+		SampleBuffer history = data.getDistanceHistory();
+		long next = history.count();
+		detector.reset();
+		while (true) {
+			if (history.get(next, sample) < 0) {
+				if (next < history.count() - history.capacity()) {
+					next = history.count() - 1; // fell behind, go on from the newest sample
+					continue;
+				}
+				try {
+					Clock.sleep(POLL);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+				continue;
+			}
+			next++;
+			if (detector.update(sample[0], sample[1]) == edge) {
+				double heading = detector.getEdgeHeading();
+				// without an odometer on the poller, the heading is the one found now
+				return Double.isNaN(heading) ? odometer.getXYT()[2] : heading;
+			}
 		}
 	}
 }
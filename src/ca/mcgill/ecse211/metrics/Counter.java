@@ -0,0 +1,44 @@
+package ca.mcgill.ecse211.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class counts events. It can be incremented from any thread without locking.
+ *
+ */
+public class Counter extends Metric {
+  private final AtomicLong count = new AtomicLong();
+
+  Counter(String name, int id) {
+    super(name, id);
+  }
+
+  /**
+   * Adds one to the count.
+   */
+  public void increment() {
+    count.incrementAndGet();
+  }
+
+  /**
+   * @param n the amount to add to the count
+   */
+  public void add(long n) {
+    count.addAndGet(n);
+  }
+
+  /**
+   * @return the count
+   */
+  public long get() {
+    return count.get();
+  }
+
+  public byte getKind() {
+    return COUNTER;
+  }
+
+  public String summary() {
+    return Long.toString(get());
+  }
+}
@@ -0,0 +1,117 @@
+package ca.mcgill.ecse211.metrics;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * This class turns a log of the {@link FlightRecorder}, copied from the brick, into CSV lines that
+ * a spreadsheet or a plotting script can read. It runs on the desktop.
+ * <p>
+ * Each line has the time in ms since the first record, the type and the channel of the record,
+ * and its fields: x, y, theta, left tacho, right tacho for a pose; the four values of a sample;
+ * command, argument, tacho for a motor command; crossing time in ms, tacho for a line crossing;
+ * and the text of an event.
+ * <p>
+ * Usage: {@code FlightLogDecoder <log file>}.
+ *
+ */
+public class FlightLogDecoder {
+  private final DataInputStream in;
+  private final PrintStream out;
+  private final byte[] text = new byte[FlightRecorder.TEXT_SIZE];
+  private long firstTime = -1;
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("Usage: FlightLogDecoder <log file>");
+      System.exit(1);
+    }
+    DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(args[0])));
+    try {
+      new FlightLogDecoder(in, System.out).decode();
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * @param in the log
+   * @param out where to print the CSV lines
+   */
+  public FlightLogDecoder(DataInputStream in, PrintStream out) {
+    this.in = in;
+    this.out = out;
+  }
+
+  /**
+   * Prints every record of the log. A record cut short at the end of the log, as when the robot
+   * was turned off during a write, is ignored.
+   *
+   * @throws IOException if the log cannot be read or is not a flight log
+   */
+  public void decode() throws IOException {
+    if (in.readInt() != FlightRecorder.MAGIC) {
+      throw new IOException("Not a flight recorder log");
+    }
+    short version = in.readShort();
+    short size = in.readShort();
+    if (version != FlightRecorder.VERSION || size != FlightRecorder.RECORD_SIZE) {
+      throw new IOException("Unsupported flight recorder log version " + version);
+    }
+    out.println("time,type,channel,a,b,c,d,e");
+    try {
+      while (true) {
+        decodeRecord();
+      }
+    } catch (EOFException e) {
+      // end of the log
+    }
+  }
+
+  private void decodeRecord() throws IOException {
+    char type = (char) in.readByte();
+    int channel = in.readByte();
+    in.readShort();
+    long time = in.readLong();
+    if (firstTime < 0) {
+      firstTime = time;
+    }
+    String prefix = String.format("%.3f,%c,%d,", (time - firstTime) / 1e6, type, channel);
+    switch (type) {
+      case FlightRecorder.POSE:
+        out.println(prefix + String.format("%.4f,%.4f,%.2f,%d,%d", in.readFloat(), in.readFloat(),
+            in.readFloat(), in.readInt(), in.readInt()));
+        break;
+      case FlightRecorder.SAMPLE:
+        out.println(prefix + String.format("%s,%s,%s,%s,", in.readFloat(), in.readFloat(),
+            in.readFloat(), in.readFloat()));
+        in.readInt();
+        break;
+      case FlightRecorder.COMMAND:
+        char command = (char) (in.readInt() >>> 24);
+        out.println(prefix + String.format("%c,%d,%d,,", command, in.readInt(), in.readInt()));
+        in.readLong();
+        break;
+      case FlightRecorder.LINE:
+        out.println(prefix + String.format("%d,%d,,,", in.readLong(), in.readInt()));
+        in.readLong();
+        break;
+      case FlightRecorder.EVENT:
+        in.readFully(text);
+        int length = 0;
+        while (length < text.length && text[length] != 0) {
+          length++;
+        }
+        out.println(prefix + new String(text, 0, length, "US-ASCII") + ",,,,");
+        break;
+      default:
+        in.readFully(text); // skip the payload of an unknown record
+        out.println(prefix + ",,,,");
+    }
+  }
+}
@@ -0,0 +1,340 @@
+package ca.mcgill.ecse211.metrics;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import ca.mcgill.ecse211.hardware.Clock;
+
+/**
+ * This class records what the robot senses and does during a run, so a failed run can be replayed
+ * afterwards with {@link FlightLogDecoder}. The odometer poses, the sensor samples, the motor
+ * commands, the line crossings and the mission events are written as fixed size records into a
+ * ring preallocated outside the heap, and a low priority thread appends them to a binary file.
+ * <p>
+ * Recording does not lock, allocate or touch the file: a writer claims a slot with a compare and
+ * set, fills it in, and marks it committed. The flush thread copies the committed slots in order.
+ * If the flush thread falls a whole ring behind, new records are dropped and counted in
+ * "recorder.dropped" rather than making the odometer or the pollers wait. When no recorder is
+ * started, recording costs a volatile read.
+ * <p>
+ * The file starts with the magic number 0x44504652 ("DPFR"), a version short and the record size
+ * short. Each record is {@link #RECORD_SIZE} bytes: a type byte, a channel byte, two reserved
+ * bytes, the time in ns of the {@link Clock} as a long, and a payload of 20 bytes:
+ * <ul>
+ * <li>'P' a pose: x and y in tiles and theta in degrees as floats, then the left and right tacho
+ * counts as ints. The channel is 0.</li>
+ * <li>'S' a sensor sample: up to four floats, NaN when unused. The channel is
+ * {@link #ULTRASONIC} (distance in cm, heading), {@link #LIGHT} (left and right) or {@link #RGB}
+ * (r, g, b, arm tacho count).</li>
+ * <li>'C' a motor command: the command byte ('F' forward, 'B' backward, 'S' stop, 'R' rotate,
+ * 'V' speed, 'A' acceleration), three padding bytes, the argument as an int and the tacho count
+ * of the motor as an int. The channel is the motor.</li>
+ * <li>'L' a line crossing: the time of the crossing in ms as a long, and the tacho count of the
+ * wheel on the side of the sensor as an int. The channel is the sensor.</li>
+ * <li>'E' an event: up to 20 bytes of ASCII text, padded with zeros.</li>
+ * </ul>
+ * Multi-byte values are big endian, as read by a DataInputStream.
+ *
+ */
+public final class FlightRecorder implements Runnable {
+  static final int MAGIC = 0x44504652;
+  static final short VERSION = 1;
+
+  /**
+   * Size of a record in bytes
+   */
+  public static final int RECORD_SIZE = 32;
+  static final int PAYLOAD = 12; // offset of the payload in a record
+  static final int TEXT_SIZE = RECORD_SIZE - PAYLOAD;
+  private static final long DRAIN_TIMEOUT = 100; // longest wait for the last records at a stop, in ms
+  private static final long DRAIN_POLL = 1; // in ms
+
+  public static final byte POSE = 'P';
+  public static final byte SAMPLE = 'S';
+  public static final byte COMMAND = 'C';
+  public static final byte LINE = 'L';
+  public static final byte EVENT = 'E';
+
+  /** Channel of the ultrasonic samples */
+  public static final int ULTRASONIC = 0;
+  /** Channel of the back light sensor samples */
+  public static final int LIGHT = 1;
+  /** Channel of the front color sensor samples */
+  public static final int RGB = 2;
+
+  private static volatile FlightRecorder recorder; // null while nothing is recorded
+
+  private final int capacity;
+  private final ByteBuffer ring;
+  private final AtomicLongArray committed; // sequence number + 1 of the record in each slot
+  private final AtomicLong head = new AtomicLong(); // next sequence number to claim
+  private volatile long tail = 0; // next sequence number to write to the file
+  private final Counter dropped = Metrics.counter("recorder.dropped");
+  private final String path;
+  private final long period;
+  private final byte[] chunk;
+  private DataOutputStream out;
+  private Thread thread;
+
+  private FlightRecorder(String path, int capacity, long period) {
+    this.path = path;
+    this.capacity = capacity;
+    this.period = period;
+    this.ring = ByteBuffer.allocateDirect(capacity * RECORD_SIZE);
+    this.committed = new AtomicLongArray(capacity);
+    this.chunk = new byte[capacity * RECORD_SIZE];
+  }
+
+  /**
+   * Starts recording to a file, unless a recorder is already running.
+   *
+   * @param path the file to write
+   * @param capacity the number of records the ring holds while they wait for the file
+   * @param period the time between two writes to the file in ms
+   */
+  public static synchronized void start(String path, int capacity, long period) {
+    if (recorder != null) {
+      return;
+    }
+    FlightRecorder started = new FlightRecorder(path, capacity, period);
+    started.thread = new Thread(started, "recorder");
+    started.thread.setDaemon(true);
+    started.thread.setPriority(Thread.MIN_PRIORITY);
+    started.thread.start();
+    recorder = started;
+  }
+
+  /**
+   * Stops recording, and returns once every record claimed before the stop is in the file, or
+   * after a short timeout if a writer never commits its record.
+   */
+  public static synchronized void stop() {
+    FlightRecorder stopped = recorder;
+    if (stopped == null) {
+      return;
+    }
+    recorder = null;
+    stopped.thread.interrupt();
+    try {
+      stopped.thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Records a pose of the odometer.
+   *
+   * @param time the time of the pose in ns
+   * @param x the x position in tiles
+   * @param y the y position in tiles
+   * @param theta the heading in degrees
+   * @param leftTacho the tacho count of the left wheel
+   * @param rightTacho the tacho count of the right wheel
+   */
+  public static void pose(long time, double x, double y, double theta, int leftTacho,
+      int rightTacho) {
+    FlightRecorder r = recorder;
+    long sequence;
+    if (r == null || (sequence = r.claim()) < 0) {
+      return;
+    }
+    int at = r.header(sequence, POSE, 0, time);
+    r.ring.putFloat(at, (float) x);
+    r.ring.putFloat(at + 4, (float) y);
+    r.ring.putFloat(at + 8, (float) theta);
+    r.ring.putInt(at + 12, leftTacho);
+    r.ring.putInt(at + 16, rightTacho);
+    r.commit(sequence);
+  }
+
+  /**
+   * Records a sensor sample.
+   *
+   * @param channel {@link #ULTRASONIC}, {@link #LIGHT} or {@link #RGB}
+   * @param a the first value
+   * @param b the second value
+   * @param c the third value, NaN if unused
+   * @param d the fourth value, NaN if unused
+   */
+  public static void sample(int channel, double a, double b, double c, double d) {
+    FlightRecorder r = recorder;
+    long sequence;
+    if (r == null || (sequence = r.claim()) < 0) {
+      return;
+    }
+    int at = r.header(sequence, SAMPLE, channel, Clock.nanos());
+    r.ring.putFloat(at, (float) a);
+    r.ring.putFloat(at + 4, (float) b);
+    r.ring.putFloat(at + 8, (float) c);
+    r.ring.putFloat(at + 12, (float) d);
+    r.ring.putInt(at + 16, 0);
+    r.commit(sequence);
+  }
+
+  /**
+   * Records a command sent to a motor.
+   *
+   * @param motor the number of the motor
+   * @param command the command, 'F', 'B', 'S', 'R', 'V' or 'A'
+   * @param argument the angle, speed or acceleration of the command, 0 if it has none
+   * @param tachoCount the tacho count of the motor
+   */
+  public static void command(int motor, char command, int argument, int tachoCount) {
+    FlightRecorder r = recorder;
+    long sequence;
+    if (r == null || (sequence = r.claim()) < 0) {
+      return;
+    }
+    int at = r.header(sequence, COMMAND, motor, Clock.nanos());
+    r.ring.putInt(at, (command & 0xFF) << 24);
+    r.ring.putInt(at + 4, argument);
+    r.ring.putInt(at + 8, tachoCount);
+    r.ring.putLong(at + 12, 0);
+    r.commit(sequence);
+  }
+
+  /**
+   * Records a line crossed by a back light sensor.
+   *
+   * @param sensor the sensor that crossed the line
+   * @param time the time of the crossing in ms
+   * @param tachoCount the tacho count of the wheel on the side of the sensor
+   */
+  public static void line(int sensor, long time, int tachoCount) {
+    FlightRecorder r = recorder;
+    long sequence;
+    if (r == null || (sequence = r.claim()) < 0) {
+      return;
+    }
+    int at = r.header(sequence, LINE, sensor, Clock.nanos());
+    r.ring.putLong(at, time);
+    r.ring.putInt(at + 8, tachoCount);
+    r.ring.putLong(at + 12, 0);
+    r.commit(sequence);
+  }
+
+  /**
+   * Records an event of the mission, such as the start of a phase. Only the first 20 characters
+   * are kept.
+   *
+   * @param text the text of the event, in ASCII
+   */
+  public static void event(String text) {
+    FlightRecorder r = recorder;
+    long sequence;
+    if (r == null || (sequence = r.claim()) < 0) {
+      return;
+    }
+    int at = r.header(sequence, EVENT, 0, Clock.nanos());
+    for (int i = 0; i < TEXT_SIZE; i++) {
+      r.ring.put(at + i, i < text.length() ? (byte) text.charAt(i) : 0);
+    }
+    r.commit(sequence);
+  }
+
+  /**
+   * @return the sequence number of a free slot, or -1 if the ring is full
+   */
+  private long claim() {
+    while (true) {
+      long sequence = head.get();
+      if (sequence - tail >= capacity) {
+        dropped.increment();
+        return -1;
+      }
+      if (head.compareAndSet(sequence, sequence + 1)) {
+        return sequence;
+      }
+    }
+  }
+
+  /**
+   * Writes the header of a record.
+   *
+   * @return the offset of the payload in the ring
+   */
+  private int header(long sequence, byte type, int channel, long time) {
+    int at = (int) (sequence % capacity) * RECORD_SIZE;
+    ring.put(at, type);
+    ring.put(at + 1, (byte) channel);
+    ring.putShort(at + 2, (short) 0);
+    ring.putLong(at + 4, time);
+    return at + PAYLOAD;
+  }
+
+  /**
+   * Hands a filled slot to the flush thread.
+   */
+  private void commit(long sequence) {
+    committed.lazySet((int) (sequence % capacity), sequence + 1);
+  }
+
+  public void run() {
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+      out.writeInt(MAGIC);
+      out.writeShort(VERSION);
+      out.writeShort(RECORD_SIZE);
+      try {
+        while (true) {
+          Clock.sleep(period);
+          flush();
+        }
+      } catch (InterruptedException e) {
+        drain();
+      }
+      out.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Writes the records left at a stop. Writers that read the recorder before it was stopped may
+   * still be filling their slots, so this waits for them to commit, up to DRAIN_TIMEOUT.
+   *
+   * @throws IOException
+   */
+  private void drain() throws IOException {
+    long deadline = Clock.millis() + DRAIN_TIMEOUT;
+    flush();
+    while (tail != head.get() && Clock.millis() < deadline) {
+      try {
+        Clock.sleep(DRAIN_POLL);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+      flush();
+    }
+  }
+
+  /**
+   * Writes the committed records to the file, in order, up to the first one still being filled.
+   *
+   * @throws IOException
+   */
+  private void flush() throws IOException {
+    ByteBuffer reader = ring.duplicate(); // this thread's own position
+    long next = tail;
+    long end = head.get();
+    int length = 0;
+    while (next < end && committed.get((int) (next % capacity)) == next + 1) {
+      reader.position((int) (next % capacity) * RECORD_SIZE);
+      reader.get(chunk, length, RECORD_SIZE);
+      length += RECORD_SIZE;
+      next++;
+    }
+    tail = next; // the slots can be reused
+    if (length > 0) {
+      out.write(chunk, 0, length);
+      out.flush();
+    }
+  }
+}
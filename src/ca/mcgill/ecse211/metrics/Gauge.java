@@ -0,0 +1,35 @@
+package ca.mcgill.ecse211.metrics;
+
+/**
+ * This class holds the last value of a quantity, such as the current pose error or speed.
+ *
+ */
+public class Gauge extends Metric {
+  private volatile double value;
+
+  Gauge(String name, int id) {
+    super(name, id);
+  }
+
+  /**
+   * @param value the new value
+   */
+  public void set(double value) {
+    this.value = value;
+  }
+
+  /**
+   * @return the last value
+   */
+  public double get() {
+    return value;
+  }
+
+  public byte getKind() {
+    return GAUGE;
+  }
+
+  public String summary() {
+    return String.format("%.2f", value);
+  }
+}
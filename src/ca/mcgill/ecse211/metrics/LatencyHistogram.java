@@ -0,0 +1,127 @@
+package ca.mcgill.ecse211.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class records the distribution of a duration in ns (or any positive long). Like an
+ * HdrHistogram, the buckets are linear below 32 and then split every power of two into 16 equal
+ * sub-buckets, which keeps every recorded value within about 6% of its bucket over the whole long
+ * range with a fixed array. Recording is lock free and does not allocate.
+ *
+ */
+public class LatencyHistogram extends Metric {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // per power of two
+
+  private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+  private final AtomicLong total = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  LatencyHistogram(String name, int id) {
+    super(name, id);
+  }
+
+  /**
+   * Records one value.
+   * 
+   * @param value the value, negative values are recorded as 0
+   */
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    counts.incrementAndGet(bucket(value));
+    total.incrementAndGet();
+    sum.addAndGet(value);
+    long current = max.get();
+    while (value > current && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+
+  /**
+   * @return the number of recorded values
+   */
+  public long getCount() {
+    return total.get();
+  }
+
+  /**
+   * @return the largest recorded value
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * @return the mean of the recorded values
+   */
+  public long getMean() {
+    long n = total.get();
+    return n == 0 ? 0 : sum.get() / n;
+  }
+
+  /**
+   * @param percentile the percentile, between 0 and 100
+   * @return the lower bound of the bucket holding the percentile
+   */
+  public long getPercentile(double percentile) {
+    long n = total.get();
+    if (n == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(lowerBound(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * Clears the histogram. Values recorded at the same time may be partly lost.
+   */
+  public void reset() {
+    for (int i = 0; i < counts.length(); i++) {
+      counts.set(i, 0);
+    }
+    total.set(0);
+    sum.set(0);
+    max.set(0);
+  }
+
+  public byte getKind() {
+    return HISTOGRAM;
+  }
+
+  public String summary() {
+    return (getPercentile(50) / 1000) + "/" + (getPercentile(99) / 1000) + "us";
+  }
+
+  /**
+   * @return the bucket of value
+   */
+  static int bucket(long value) {
+    if (value < 2 * SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+  }
+
+  /**
+   * @return the smallest value that falls in bucket
+   */
+  static long lowerBound(int bucket) {
+    if (bucket < 2 * SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+  }
+}
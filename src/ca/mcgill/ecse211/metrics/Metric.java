@@ -0,0 +1,54 @@
+package ca.mcgill.ecse211.metrics;
+
+/**
+ * This class is the base of every metric in the {@link Metrics} registry.
+ *
+ */
+public abstract class Metric {
+  /**
+   * Kind of a counter in the binary log
+   */
+  public static final byte COUNTER = 1;
+
+  /**
+   * Kind of a gauge in the binary log
+   */
+  public static final byte GAUGE = 2;
+
+  /**
+   * Kind of a histogram in the binary log
+   */
+  public static final byte HISTOGRAM = 3;
+
+  private final String name;
+  private final int id;
+
+  Metric(String name, int id) {
+    this.name = name;
+    this.id = id;
+  }
+
+  /**
+   * @return the name of the metric
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the number of the metric in the registry, used in the binary log
+   */
+  public int getId() {
+    return id;
+  }
+
+  /**
+   * @return the kind of the metric, {@link #COUNTER}, {@link #GAUGE} or {@link #HISTOGRAM}
+   */
+  public abstract byte getKind();
+
+  /**
+   * @return a short text of the current value for the screen
+   */
+  public abstract String summary();
+}
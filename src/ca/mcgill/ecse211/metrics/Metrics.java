@@ -0,0 +1,68 @@
+package ca.mcgill.ecse211.metrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is the registry of all the metrics of the robot. A metric is created the first time
+ * its name is asked for, and the same object is returned afterwards. Look metrics up once, when a
+ * class is set up, and keep the reference: updating a metric is cheap, looking it up is not.
+ *
+ */
+public final class Metrics {
+  private static final Map<String, Metric> byName = new HashMap<String, Metric>();
+  private static final List<Metric> all = new ArrayList<Metric>();
+
+  private Metrics() {}
+
+  /**
+   * @param name the name of the counter
+   * @return the counter with that name
+   */
+  public static synchronized Counter counter(String name) {
+    Metric metric = byName.get(name);
+    if (metric == null) {
+      metric = register(new Counter(name, all.size()));
+    }
+    return (Counter) metric;
+  }
+
+  /**
+   * @param name the name of the gauge
+   * @return the gauge with that name
+   */
+  public static synchronized Gauge gauge(String name) {
+    Metric metric = byName.get(name);
+    if (metric == null) {
+      metric = register(new Gauge(name, all.size()));
+    }
+    return (Gauge) metric;
+  }
+
+  /**
+   * @param name the name of the histogram
+   * @return the histogram with that name
+   */
+  public static synchronized LatencyHistogram histogram(String name) {
+    Metric metric = byName.get(name);
+    if (metric == null) {
+      metric = register(new LatencyHistogram(name, all.size()));
+    }
+    return (LatencyHistogram) metric;
+  }
+
+  /**
+   * @return a copy of the list of all metrics, in the order they were created
+   */
+  public static synchronized List<Metric> getAll() {
+    return new ArrayList<Metric>(all);
+  }
+
+  private static Metric register(Metric metric) {
+    byName.put(metric.getName(), metric);
+    all.add(metric);
+    return metric;
+  }
+}
@@ -0,0 +1,164 @@
+package ca.mcgill.ecse211.metrics;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import ca.mcgill.ecse211.hardware.Clock;
+import ca.mcgill.ecse211.hardware.Platform;
+
+/**
+ * This class periodically dumps the metrics to the screen and to a binary log file. It runs in its
+ * own low priority thread so that the file writes never delay the odometer or the pollers.
+ * <p>
+ * The screen only has room for a few metrics below the rows left to other text, so each dump shows
+ * the next page of metrics, going back to the first one after the last page.
+ * <p>
+ * The log starts with the magic number 0x44504D4D ("DPMM") and a version short, followed by
+ * records that each start with a type byte:
+ * <ul>
+ * <li>'N': a new metric. Short id, byte kind, UTF name.</li>
+ * <li>'S': a snapshot. Long time in ms, short number of metrics, then for each metric its short
+ * id and its value: a long for a counter, a double for a gauge, and the count, mean, 50th, 90th
+ * and 99th percentiles and max as longs for a histogram.</li>
+ * </ul>
+ *
+ */
+public class MetricsReporter implements Runnable {
+  private static final int MAGIC = 0x44504D4D;
+  private static final short VERSION = 1;
+  private static final int ROWS = 8; // text rows of the screen
+  private static final int COLUMNS = 18; // text columns of the screen
+
+  private final Platform platform;
+  private final String path;
+  private final long period;
+  private DataOutputStream out;
+  private int named = 0; // number of metrics whose name was written to the log
+  private int firstRow = 0; // first row of the screen used for metrics
+  private int shown = 0; // index of the first metric on the screen at the next dump
+
+  /**
+   * @param platform the platform to draw on
+   * @param path the log file, or null to only use the screen
+   * @param period the time between two dumps in ms
+   */
+  public MetricsReporter(Platform platform, String path, long period) {
+    this.platform = platform;
+    this.path = path;
+    this.period = period;
+  }
+
+  /**
+   * @param row the first screen row to draw the metrics on, so other text can stay above
+   */
+  public void setFirstRow(int row) {
+    this.firstRow = row;
+  }
+
+  /**
+   * Starts the reporter thread.
+   */
+  public void start() {
+    Thread thread = new Thread(this);
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    thread.start();
+  }
+
+  public void run() {
+    try {
+      if (path != null) {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+      }
+      while (true) {
+        Clock.sleep(period);
+        dump();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    } catch (InterruptedException e) {
+      // stop reporting
+    }
+  }
+
+  /**
+   * Writes one snapshot of every metric.
+   * 
+   * @throws IOException
+   */
+  public synchronized void dump() throws IOException {
+    List<Metric> metrics = Metrics.getAll();
+    // the screen holds a page of metrics, each dump shows the next page
+    int rows = ROWS - firstRow;
+    if (shown >= metrics.size()) {
+      shown = 0;
+    }
+    for (int row = 0; row < rows; row++) {
+      String line = "";
+      if (row < metrics.size() - shown) {
+        Metric metric = metrics.get(shown + row);
+        line = shorten(metric.getName()) + " " + metric.summary();
+      }
+      platform.drawString(pad(line), 0, firstRow + row);
+    }
+    shown += rows;
+    if (out == null) {
+      return;
+    }
+    for (; named < metrics.size(); named++) {
+      Metric metric = metrics.get(named);
+      out.writeByte('N');
+      out.writeShort(metric.getId());
+      out.writeByte(metric.getKind());
+      out.writeUTF(metric.getName());
+    }
+    out.writeByte('S');
+    out.writeLong(Clock.millis());
+    out.writeShort(metrics.size());
+    for (Metric metric : metrics) {
+      out.writeShort(metric.getId());
+      if (metric instanceof Counter) {
+        out.writeLong(((Counter) metric).get());
+      } else if (metric instanceof Gauge) {
+        out.writeDouble(((Gauge) metric).get());
+      } else {
+        LatencyHistogram histogram = (LatencyHistogram) metric;
+        out.writeLong(histogram.getCount());
+        out.writeLong(histogram.getMean());
+        out.writeLong(histogram.getPercentile(50));
+        out.writeLong(histogram.getPercentile(90));
+        out.writeLong(histogram.getPercentile(99));
+        out.writeLong(histogram.getMax());
+      }
+    }
+    out.flush();
+  }
+
+  /**
+   * Cuts or pads text to the width of the screen, so it covers what the previous page drew.
+   */
+  private static String pad(String text) {
+    if (text.length() >= COLUMNS) {
+      return text.substring(0, COLUMNS);
+    }
+    StringBuilder padded = new StringBuilder(text);
+    while (padded.length() < COLUMNS) {
+      padded.append(' ');
+    }
+    return padded.toString();
+  }
+
+  /**
+   * Keeps the last part of a dotted name so it fits on the screen.
+   */
+  private static String shorten(String name) {
+    int dot = name.lastIndexOf('.');
+    String end = dot < 0 ? name : name.substring(dot + 1);
+    return end.length() > 8 ? end.substring(0, 8) : end;
+  }
+}
@@ -0,0 +1,45 @@
+package ca.mcgill.ecse211.metrics;
+
+import ca.mcgill.ecse211.hardware.Clock;
+
+/**
+ * This class times the phases of the mission. Starting a phase ends the previous one and records
+ * its duration in the histogram "phase." followed by the phase name.
+ *
+ */
+public class PhaseTimer {
+  private LatencyHistogram current;
+  private long start;
+  private String name;
+
+  /**
+   * Ends the current phase and starts a new one.
+   * 
+   * @param phase the name of the new phase
+   */
+  public synchronized void begin(String phase) {
+    end();
+    current = Metrics.histogram("phase." + phase);
+    name = phase;
+    start = Clock.nanos();
+    FlightRecorder.event(phase);
+  }
+
+  /**
+   * Ends the current phase.
+   */
+  public synchronized void end() {
+    if (current != null) {
+      current.record(Clock.nanos() - start);
+      current = null;
+      name = null;
+    }
+  }
+
+  /**
+   * @return the name of the current phase, or null between phases
+   */
+  public synchronized String getPhase() {
+    return name;
+  }
+}
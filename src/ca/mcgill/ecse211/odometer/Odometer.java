@@ -1,10 +1,20 @@
 package ca.mcgill.ecse211.odometer;
 
 import ca.mcgill.ecse211.game.Game;
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
+import ca.mcgill.ecse211.hardware.Clock;
+import ca.mcgill.ecse211.hardware.Motor;
+import ca.mcgill.ecse211.metrics.FlightRecorder;
+import ca.mcgill.ecse211.metrics.LatencyHistogram;
+import ca.mcgill.ecse211.metrics.Metrics;
 
 /**
  * This class implements the odometer for the robot
+ * <p>
+ * Each update reads both tacho counts back to back and timestamps them together. The motion
+ * between two updates is integrated as an exact arc: with constant wheel speeds the robot moves
+ * along a circle, so it moves by the chord of that arc along the heading halfway through the
+ * turn. The result does not depend on the update period, which can be raised with
+ * {@link #setPeriod(long)}.
  * 
  * @author Ajay Patel
  * @author Fandi Yi
@@ -22,26 +32,37 @@ public class Odometer extends OdometerData implements Runnable {
   // Motors and related variables
   private int leftMotorTachoCount;
   private int rightMotorTachoCount;
-  private EV3LargeRegulatedMotor leftMotor;
-  private EV3LargeRegulatedMotor rightMotor;
+  private Motor leftMotor;
+  private Motor rightMotor;
 
   private double TRACK;
   private double WHEEL_RAD;
 
-  private double[] position;
+  private double[] position = new double[3];
+  private final double[] delta = new double[3];
+  private volatile long tachoTime; // time the tacho counts were read, in ns
 
+  private final LatencyHistogram tickTime = Metrics.histogram("odometer.tick");
+
+  private final PoseEstimator estimator;
 
-  private static final long ODOMETER_PERIOD = 25; // odometer update period in ms
+
+  /**
+   * Default odometer update period in ms
+   */
+  public static final long ODOMETER_PERIOD = 10;
+
+  private static volatile long period = ODOMETER_PERIOD;
 
   /**
    * This is the default constructor of this class. It initiates all motors and variables once.It
    * cannot be accessed externally.
    * 
-   * @param leftMotor The EV3LargeRegulatedMotor instance for our left motor
-   * @param rightMotor The EV3LargeRegulatedMotor instance for our right motor
+   * @param leftMotor The Motor instance for our left motor
+   * @param rightMotor The Motor instance for our right motor
    * @throws OdometerExceptions
    */
-  private Odometer(EV3LargeRegulatedMotor leftMotor, EV3LargeRegulatedMotor rightMotor,
+  private Odometer(Motor leftMotor, Motor rightMotor,
       final double TRACK, final double WHEEL_RAD) throws OdometerExceptions {
     odoData = OdometerData.getOdometerData(); // Allows access to x,y,z
                                               // manipulation methods
@@ -57,18 +78,19 @@ public class Odometer extends OdometerData implements Runnable {
     this.TRACK = TRACK;
     this.WHEEL_RAD = WHEEL_RAD;
 
+    this.estimator = new PoseEstimator(this, TRACK, WHEEL_RAD);
   }
 
   /**
    * This method is meant to ensure only one instance of the odometer is used throughout the code.
    * 
-   * @param leftMotor The EV3LargeRegulatedMotor instance for our left motor
-   * @param rightMotor The EV3LargeRegulatedMotor instance for our right motor
+   * @param leftMotor The Motor instance for our left motor
+   * @param rightMotor The Motor instance for our right motor
    * @return new or existing Odometer Object
    * @throws OdometerExceptions
    */
-  public synchronized static Odometer getOdometer(EV3LargeRegulatedMotor leftMotor,
-      EV3LargeRegulatedMotor rightMotor, final double TRACK, final double WHEEL_RAD)
+  public synchronized static Odometer getOdometer(Motor leftMotor,
+      Motor rightMotor, final double TRACK, final double WHEEL_RAD)
       throws OdometerExceptions {
     if (odometer != null) { // Return existing object
       return odometer;
@@ -93,50 +115,154 @@ public class Odometer extends OdometerData implements Runnable {
     return odometer;
   }
 
+  /**
+   * Sets the update period used by run() and by the scheduler of the game. It must be set before
+   * the odometer is scheduled.
+   * 
+   * @param millis the period in ms
+   */
+  public static void setPeriod(long millis) {
+    if (millis <= 0) {
+      throw new IllegalArgumentException("Odometer period must be positive");
+    }
+    period = millis;
+  }
+
+  /**
+   * @return the update period in ms
+   */
+  public static long getPeriod() {
+    return period;
+  }
+
   /**
    * This method is called when our Odometer object is started as a thread and begins to keep track
-   * of motor rotations
+   * of motor rotations. The deadlines are fixed steps from the start, so the period does not drift
+   * with the time an update takes.
    */
   public void run() {
-    long updateStart, updateEnd;
+    long next = Clock.nanos();
 
     while (true) {
-      updateStart = System.currentTimeMillis();
+      tick();
 
-      // TODO Calculate new robot position based on tachometer counts
-      double distL, distR, deltaD, deltaT, dX, dY;
-      int nowTachoL, nowTachoR;
-      position = odometer.getXYT();
+      // this ensures that the odometer only runs once every period
+      long step = period * 1000000L;
+      next += step;
+      long now = Clock.nanos();
+      if (next < now) { // late, skip the missed updates
+        next += ((now - next) / step + 1) * step;
+      }
+      try {
+        Clock.sleepNanos(next - now);
+      } catch (InterruptedException e) {
+        // there is nothing to be done
+      }
+    }
+  }
 
-      // Calculate the change in distances and Theta with motor tacho counts
-      nowTachoL = leftMotor.getTachoCount();
-      nowTachoR = rightMotor.getTachoCount();
-      distL = 3.14159 * WHEEL_RAD * (nowTachoL - leftMotorTachoCount) / 180;
-      distR = 3.14159 * WHEEL_RAD * (nowTachoR - rightMotorTachoCount) / 180;
-      leftMotorTachoCount = nowTachoL;
-      rightMotorTachoCount = nowTachoR;
-      deltaD = 0.5 * (distL + distR);
-      deltaT = (distL - distR) / TRACK;
+  /**
+   * This method does one odometer update from the tacho counts. It is called by run() or by a
+   * scheduler every period.
+   */
+  public void tick() {
+    long start = Clock.nanos();
+    odometer.readInto(position);
 
-      double Theta = Math.toRadians(position[2]);
-      Theta += deltaT;
-      dX = deltaD * Math.sin(Theta);
-      dY = deltaD * Math.cos(Theta);
+    // Read both tacho counts together, timestamped with the middle of the reads
+    int nowTachoL = leftMotor.getTachoCount();
+    int nowTachoR = rightMotor.getTachoCount();
+    tachoTime = start + (Clock.nanos() - start) / 2;
 
+    // Calculate the change in distances and Theta with motor tacho counts
+    double distL = Math.PI * WHEEL_RAD * (nowTachoL - leftMotorTachoCount) / 180;
+    double distR = Math.PI * WHEEL_RAD * (nowTachoR - rightMotorTachoCount) / 180;
+    leftMotorTachoCount = nowTachoL;
+    rightMotorTachoCount = nowTachoR;
+    integrate(position[2], distL, distR, TRACK, delta);
 
-      // TODO Update odometer values with new calculated values
-      odometer.update(dX / Game.TILE, dY / Game.TILE, Math.toDegrees(deltaT));
+    // Update odometer values with new calculated values
+    odometer.update(delta[0] / Game.TILE, delta[1] / Game.TILE, delta[2]);
+    estimator.predict(position[2], distL, distR, nowTachoL, nowTachoR);
+    FlightRecorder.pose(tachoTime, position[0] + delta[0] / Game.TILE,
+        position[1] + delta[1] / Game.TILE, (position[2] + delta[2] + 360) % 360, nowTachoL,
+        nowTachoR);
+    tickTime.record(Clock.nanos() - start);
+  }
 
+  /**
+   * This method integrates the motion of the robot when each wheel drives a given distance at a
+   * constant speed. The robot then follows an arc, and moves by its chord along the heading
+   * halfway through the turn.
+   * 
+   * @param theta the heading before the motion in degrees
+   * @param distL the distance driven by the left wheel in cm
+   * @param distR the distance driven by the right wheel in cm
+   * @param track the distance between the wheels in cm
+   * @param delta an array of 3 elements for the change of x (cm), y (cm) and theta (degrees)
+   */
+  public static void integrate(double theta, double distL, double distR, double track,
+      double[] delta) {
+    double deltaD = 0.5 * (distL + distR);
+    double deltaT = (distL - distR) / track;
+    double chord = Math.abs(deltaT) < 1e-9 ? deltaD : 2 * deltaD / deltaT * Math.sin(deltaT / 2);
+    double heading = Math.toRadians(theta) + deltaT / 2;
+    delta[0] = chord * Math.sin(heading);
+    delta[1] = chord * Math.cos(heading);
+    delta[2] = Math.toDegrees(deltaT);
+  }
 
-      // this ensures that the odometer only runs once every period
-      updateEnd = System.currentTimeMillis();
-      if (updateEnd - updateStart < ODOMETER_PERIOD) {
-        try {
-          Thread.sleep(ODOMETER_PERIOD - (updateEnd - updateStart));
-        } catch (InterruptedException e) {
-          // there is nothing to be done
-        }
-      }
+  /**
+   * @return the time the tacho counts of the last update were read, in ns of the {@link Clock}
+   */
+  public long getTachoTime() {
+    return tachoTime;
+  }
+
+  /**
+   * @return the filter that tracks the uncertainty of the pose and corrects it with the grid lines
+   */
+  public PoseEstimator getEstimator() {
+    return estimator;
+  }
+
+  /**
+   * Overrides the values of x, y and theta, which are then known to within a line width.
+   */
+  @Override
+  public void setXYT(double x, double y, double theta) {
+    super.setXYT(x, y, theta);
+    if (estimator != null) { // not yet created while the constructor runs
+      estimator.fixX();
+      estimator.fixY();
+      estimator.fixTheta();
     }
   }
+
+  /**
+   * Overrides x, which is then known to within a line width.
+   */
+  @Override
+  public void setX(double x) {
+    super.setX(x);
+    estimator.fixX();
+  }
+
+  /**
+   * Overrides y, which is then known to within a line width.
+   */
+  @Override
+  public void setY(double y) {
+    super.setY(y);
+    estimator.fixY();
+  }
+
+  /**
+   * Overrides theta, which is then known to within a degree.
+   */
+  @Override
+  public void setTheta(double theta) {
+    super.setTheta(theta);
+    estimator.fixTheta();
+  }
 }
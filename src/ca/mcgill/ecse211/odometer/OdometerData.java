@@ -1,11 +1,17 @@
 package ca.mcgill.ecse211.odometer;
 
-import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import ca.mcgill.ecse211.metrics.Counter;
+import ca.mcgill.ecse211.metrics.Metrics;
+
 /**
  * This class stores and provides thread safe access to the odometer data.
+ * <p>
+ * Writers are serialized by a lock, but readers never take it. Every write bumps a sequence
+ * counter to an odd value before touching the pose and back to an even value after, so a reader
+ * only has to retry when it sees an odd counter or a counter that changed while it was reading.
  * 
  * @author Ajay Patel
  * @author Fandi Yi
@@ -32,13 +38,10 @@ public class OdometerData {
   // Thread control tools
   private static Lock lock = new ReentrantLock(true); // Fair lock for
                                                       // concurrent writing
-  private volatile boolean isReseting = false; // Indicates if a thread is
-                                               // trying to reset any
-                                               // position parameters
-  private Condition doneReseting = lock.newCondition(); // Let other threads
-                                                        // know that a reset
-                                                        // operation is
-                                                        // over.
+  private volatile int sequence = 0; // Odd while a write is in progress,
+                                     // even once the pose is consistent
+  private static final Counter readRetries = Metrics.counter("odometer.read.retries");
+  private static final Counter writeContention = Metrics.counter("odometer.write.contended");
 
   private static OdometerData odoData = null;
 
@@ -77,33 +80,62 @@ public class OdometerData {
    * Return the Odomometer data.
    * <p>
    * Writes the current position and orientation of the robot onto the odoData array. odoData[0] =
-   * x, odoData[1] = y; odoData[2] = theta;
+   * x, odoData[1] = y; odoData[2] = theta; The three values always come from the same update.
    * 
-   * @param position the array to store the odometer data
    * @return the odometer data.
    */
   public double[] getXYT() {
     double[] position = new double[4];
-    lock.lock();
-    try {
-      while (isReseting) { // If a reset operation is being executed, wait
-        // until it is over.
-        doneReseting.await(); // Using await() is lighter on the CPU
-        // than simple busy wait.
-      }
+    readInto(position);
+    return position;
+  }
 
+  /**
+   * Copies a consistent snapshot of x, y and theta into position[0], position[1] and position[2]
+   * without allocating or locking. Use this in loops that read the pose at a high rate.
+   * 
+   * @param position an array of at least 3 elements to store the odometer data
+   */
+  public void readInto(double[] position) {
+    while (true) {
+      int start = sequence;
+      if ((start & 1) != 0) { // A writer is in the middle of an update
+        readRetries.increment();
+        Thread.yield();
+        continue;
+      }
       position[0] = x;
       position[1] = y;
       position[2] = theta;
+      if (sequence == start) { // Nothing was written while we were reading
+        return;
+      }
+      readRetries.increment();
+    }
+  }
 
-    } catch (InterruptedException e) {
-      // Print exception to screen
-      e.printStackTrace();
-    } finally {
-      lock.unlock();
+  /**
+   * Takes the write lock, counting the times another writer already held it.
+   */
+  private static void lockForWrite() {
+    if (!lock.tryLock()) {
+      writeContention.increment();
+      lock.lock();
     }
+  }
 
-    return position;
+  /**
+   * Marks the start of a write. Must be called while holding the lock.
+   */
+  private void beginWrite() {
+    sequence++;
+  }
+
+  /**
+   * Marks the end of a write. Must be called while holding the lock.
+   */
+  private void endWrite() {
+    sequence++;
   }
 
   /**
@@ -115,18 +147,21 @@ public class OdometerData {
    * @param dtheta
    */
   public void update(double dx, double dy, double dtheta) {
-    lock.lock();
-    isReseting = true;
+    lockForWrite();
+    beginWrite();
     try {
       x += dx;
       y += dy;
-      theta = (theta + (360 + dtheta) % 360) % 360; // keeps the updates
-                                                    // within 360
-                                                    // degrees
-      isReseting = false; // Done reseting
-      doneReseting.signalAll(); // Let the other threads know that you are
-                                // done reseting
+      double heading = theta + dtheta;
+      // keeps the updates within 360 degrees without rounding small changes away
+      if (heading >= 360) {
+        heading -= 360;
+      } else if (heading < 0) {
+        heading += 360;
+      }
+      theta = heading;
     } finally {
+      endWrite();
       lock.unlock();
     }
 
@@ -140,16 +175,14 @@ public class OdometerData {
    * @param theta the value of theta
    */
   public void setXYT(double x, double y, double theta) {
-    lock.lock();
-    isReseting = true;
+    lockForWrite();
+    beginWrite();
     try {
       this.x = x;
       this.y = y;
       this.theta = theta;
-      isReseting = false; // Done reseting
-      doneReseting.signalAll(); // Let the other threads know that you are
-                                // done reseting
     } finally {
+      endWrite();
       lock.unlock();
     }
   }
@@ -160,14 +193,12 @@ public class OdometerData {
    * @param x the value of x
    */
   public void setX(double x) {
-    lock.lock();
-    isReseting = true;
+    lockForWrite();
+    beginWrite();
     try {
       this.x = x;
-      isReseting = false; // Done reseting
-      doneReseting.signalAll(); // Let the other threads know that you are
-                                // done reseting
     } finally {
+      endWrite();
       lock.unlock();
     }
   }
@@ -178,14 +209,12 @@ public class OdometerData {
    * @param y the value of y
    */
   public void setY(double y) {
-    lock.lock();
-    isReseting = true;
+    lockForWrite();
+    beginWrite();
     try {
       this.y = y;
-      isReseting = false; // Done reseting
-      doneReseting.signalAll(); // Let the other threads know that you are
-                                // done reseting
     } finally {
+      endWrite();
       lock.unlock();
     }
   }
@@ -196,14 +225,12 @@ public class OdometerData {
    * @param theta the value of theta
    */
   public void setTheta(double theta) {
-    lock.lock();
-    isReseting = true;
+    lockForWrite();
+    beginWrite();
     try {
       this.theta = theta;
-      isReseting = false; // Done reseting
-      doneReseting.signalAll(); // Let the other threads know that you are
-                                // done reseting
     } finally {
+      endWrite();
       lock.unlock();
     }
   }
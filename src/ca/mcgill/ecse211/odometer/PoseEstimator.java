@@ -0,0 +1,302 @@
+package ca.mcgill.ecse211.odometer;
+
+import ca.mcgill.ecse211.game.Game;
+import ca.mcgill.ecse211.metrics.Counter;
+import ca.mcgill.ecse211.metrics.Gauge;
+import ca.mcgill.ecse211.metrics.Metrics;
+import ca.mcgill.ecse211.threads.LineCrossingListener;
+
+/**
+ * This class is an extended Kalman filter around the odometer. The odometer pose is the mean of
+ * the filter; this class carries its covariance and corrects the pose with the grid lines.
+ * <p>
+ * Every odometer tick predicts the covariance forward with the wheel motions, each wheel adding
+ * noise in proportion to the distance it turned. Every line crossed by a back light sensor is a
+ * measurement: the sensor must lie on the near edge, along the drive direction, of the grid line
+ * closest to where the pose puts it. The line is chosen by Mahalanobis distance, and crossings
+ * that fit no line, or both lines of an intersection, are rejected. Overwriting the pose with
+ * setX, setY or setTheta counts as an exact measurement of that component.
+ * <p>
+ * The filter works in cm and radians, while the odometer stores tiles and degrees. Line
+ * crossings are ignored until the heading is known to within MAX_HEADING_ERROR, since the sensor
+ * positions cannot be predicted before the robot is localized.
+ *
+ */
+public class PoseEstimator implements LineCrossingListener {
+  private static final double WHEEL_NOISE = 0.001; // variance per cm turned by a wheel, in cm^2/cm
+  private static final double LINE_VARIANCE = 0.25; // of a line position, in cm^2
+  private static final double SET_POSITION_VARIANCE = 1; // after setX or setY, in cm^2
+  private static final double SET_HEADING_VARIANCE = Math.pow(Math.toRadians(1), 2); // in rad^2
+  private static final double MAX_HEADING_ERROR = Math.toRadians(10); // to use the lines, in rad
+  private static final double GATE = 9; // largest squared Mahalanobis distance to a line
+
+  /**
+   * Lateral offset of each back light sensor from the center of the robot in cm, positive to the
+   * right
+   */
+  private static final double[] SENSOR_SIDE = {-Game.SEN_SIDE, Game.SEN_SIDE};
+
+  private final OdometerData odometer;
+  private final double wheelRadius;
+  private final double track;
+  private final double[][] p = new double[3][3]; // covariance of x, y (cm) and theta (rad)
+  private final double[][] scratch = new double[3][3];
+  private final double[] position = new double[3];
+  private final double[] gain = new double[3];
+  private final double[] h = new double[3];
+  private final double[] hp = new double[3];
+  private final double[] gL = new double[3];
+  private final double[] gR = new double[3];
+  private final int[] tachoCounts = new int[2]; // of the wheels at the last prediction
+  private double direction = 1; // 1 when the robot last drove forward, -1 backward
+
+  private final Counter updates = Metrics.counter("odometer.ekf.updates");
+  private final Counter rejected = Metrics.counter("odometer.ekf.rejected");
+  private final Gauge positionError = Metrics.gauge("odometer.ekf.position"); // 1 sigma, in cm
+  private final Gauge headingError = Metrics.gauge("odometer.ekf.heading"); // 1 sigma, in degrees
+
+  /**
+   * This constructor creates a filter that knows nothing of the pose yet.
+   *
+   * @param odometer the odometer whose pose is corrected
+   * @param track the distance between the wheels in cm
+   * @param wheelRadius the radius of the wheels in cm
+   */
+  public PoseEstimator(OdometerData odometer, double track, double wheelRadius) {
+    this.odometer = odometer;
+    this.track = track;
+    this.wheelRadius = wheelRadius;
+    double unknown = Game.TILE * Game.TILE;
+    reset(unknown, unknown, Math.PI * Math.PI);
+  }
+
+  /**
+   * Replaces the covariance with independent variances.
+   *
+   * @param xVariance the variance of x in cm^2
+   * @param yVariance the variance of y in cm^2
+   * @param thetaVariance the variance of theta in rad^2
+   */
+  public synchronized void reset(double xVariance, double yVariance, double thetaVariance) {
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) {
+        p[i][j] = 0;
+      }
+    }
+    p[0][0] = xVariance;
+    p[1][1] = yVariance;
+    p[2][2] = thetaVariance;
+    publish();
+  }
+
+  /**
+   * Propagates the covariance through one odometer update. The motion model is the one of
+   * {@link Odometer#integrate(double, double, double, double, double[])}: the robot moves along
+   * the heading halfway through the turn. The chord is taken as the arc length, which is exact
+   * to the second order for the turns of one update.
+   *
+   * @param theta the heading before the update in degrees
+   * @param distL the distance driven by the left wheel in cm
+   * @param distR the distance driven by the right wheel in cm
+   * @param tachoL the tacho count of the left wheel after the update
+   * @param tachoR the tacho count of the right wheel after the update
+   */
+  public synchronized void predict(double theta, double distL, double distR, int tachoL,
+      int tachoR) {
+    tachoCounts[0] = tachoL;
+    tachoCounts[1] = tachoR;
+    if (distL == 0 && distR == 0) {
+      return;
+    }
+    double deltaD = 0.5 * (distL + distR);
+    if (deltaD != 0) {
+      direction = Math.signum(deltaD);
+    }
+    double heading = Math.toRadians(theta) + (distL - distR) / track / 2;
+    double sin = Math.sin(heading);
+    double cos = Math.cos(heading);
+
+    // P = F P F^T, with F the jacobian of the pose after the update to the pose before it
+    double[][] f = scratch;
+    for (int j = 0; j < 3; j++) {
+      f[0][j] = p[0][j] + deltaD * cos * p[2][j];
+      f[1][j] = p[1][j] - deltaD * sin * p[2][j];
+      f[2][j] = p[2][j];
+    }
+    for (int i = 0; i < 3; i++) {
+      p[i][0] = f[i][0] + deltaD * cos * f[i][2];
+      p[i][1] = f[i][1] - deltaD * sin * f[i][2];
+      p[i][2] = f[i][2];
+    }
+
+    // P += G Q G^T, with G the jacobian of the pose to the wheel distances
+    double varL = WHEEL_NOISE * Math.abs(distL);
+    double varR = WHEEL_NOISE * Math.abs(distR);
+    gL[0] = 0.5 * sin + 0.5 * deltaD * cos / track;
+    gL[1] = 0.5 * cos - 0.5 * deltaD * sin / track;
+    gL[2] = 1 / track;
+    gR[0] = 0.5 * sin - 0.5 * deltaD * cos / track;
+    gR[1] = 0.5 * cos + 0.5 * deltaD * sin / track;
+    gR[2] = -1 / track;
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) {
+        p[i][j] += gL[i] * varL * gL[j] + gR[i] * varR * gR[j];
+      }
+    }
+    publish();
+  }
+
+  /**
+   * Corrects the pose with a line crossed by a back light sensor.
+   */
+  public synchronized void lineCrossed(int sensor, long time, int tachoCount) {
+    if (p[2][2] > MAX_HEADING_ERROR * MAX_HEADING_ERROR) {
+      return; // not localized yet
+    }
+    odometer.readInto(position);
+    double x = position[0] * Game.TILE;
+    double y = position[1] * Game.TILE;
+    double theta = Math.toRadians(position[2]);
+    double sin = Math.sin(theta);
+    double cos = Math.cos(theta);
+    double side = SENSOR_SIDE[sensor];
+    // the wheel on the side of the sensor may have turned since the last odometer update
+    double ahead = Math.toRadians(tachoCount - tachoCounts[sensor]) * wheelRadius;
+    double sensorX = x - Game.SEN_DIS * sin + side * cos + ahead * sin;
+    double sensorY = y - Game.SEN_DIS * cos - side * sin + ahead * cos;
+    // the sensor sees the near edge of the line, its center is further along the drive direction
+    sensorX += direction * Game.LINE_EDGE * sin;
+    sensorY += direction * Game.LINE_EDGE * cos;
+
+    // the two candidate lines: the closest vertical line and the closest horizontal line
+    double xInnovation = Math.rint(sensorX / Game.TILE) * Game.TILE - sensorX;
+    double yInnovation = Math.rint(sensorY / Game.TILE) * Game.TILE - sensorY;
+    double xDerivative = -Game.SEN_DIS * cos - side * sin;
+    double yDerivative = Game.SEN_DIS * sin - side * cos;
+    double xS = innovationVariance(0, xDerivative);
+    double yS = innovationVariance(1, yDerivative);
+    boolean xFits = xInnovation * xInnovation / xS < GATE;
+    boolean yFits = yInnovation * yInnovation / yS < GATE;
+    if (xFits == yFits) {
+      rejected.increment(); // fits no line, or cannot tell which one
+      return;
+    }
+    double innovation;
+    double s;
+    h[0] = 0;
+    h[1] = 0;
+    if (xFits) {
+      h[0] = 1;
+      h[2] = xDerivative;
+      innovation = xInnovation;
+      s = xS;
+    } else {
+      h[1] = 1;
+      h[2] = yDerivative;
+      innovation = yInnovation;
+      s = yS;
+    }
+
+    // K = P H^T / S, correct the pose by K times the innovation and P = (I - K H) P
+    for (int i = 0; i < 3; i++) {
+      gain[i] = (p[i][0] * h[0] + p[i][1] * h[1] + p[i][2] * h[2]) / s;
+    }
+    for (int j = 0; j < 3; j++) {
+      hp[j] = h[0] * p[0][j] + h[1] * p[1][j] + h[2] * p[2][j];
+    }
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) {
+        p[i][j] -= gain[i] * hp[j];
+      }
+    }
+    symmetrize();
+    odometer.update(gain[0] * innovation / Game.TILE, gain[1] * innovation / Game.TILE,
+        Math.toDegrees(gain[2] * innovation));
+    updates.increment();
+    publish();
+  }
+
+  /**
+   * Records that x was set from a known reference.
+   */
+  public synchronized void fixX() {
+    fix(0, SET_POSITION_VARIANCE);
+  }
+
+  /**
+   * Records that y was set from a known reference.
+   */
+  public synchronized void fixY() {
+    fix(1, SET_POSITION_VARIANCE);
+  }
+
+  /**
+   * Records that theta was set from a known reference.
+   */
+  public synchronized void fixTheta() {
+    fix(2, SET_HEADING_VARIANCE);
+  }
+
+  /**
+   * @return the standard deviation of the position along its worst direction, in cm
+   */
+  public synchronized double getPositionError() {
+    // largest eigenvalue of the 2x2 position covariance
+    double mean = 0.5 * (p[0][0] + p[1][1]);
+    double spread = Math.sqrt(0.25 * (p[0][0] - p[1][1]) * (p[0][0] - p[1][1]) + p[0][1] * p[0][1]);
+    return Math.sqrt(mean + spread);
+  }
+
+  /**
+   * @return the standard deviation of the heading, in degrees
+   */
+  public synchronized double getHeadingError() {
+    return Math.toDegrees(Math.sqrt(p[2][2]));
+  }
+
+  /**
+   * Copies the covariance into covariance, in cm and radians.
+   *
+   * @param covariance a 3x3 array
+   */
+  public synchronized void readCovariance(double[][] covariance) {
+    for (int i = 0; i < 3; i++) {
+      System.arraycopy(p[i], 0, covariance[i], 0, 3);
+    }
+  }
+
+  /**
+   * @return the variance of the measurement of a line along the axis
+   */
+  private double innovationVariance(int axis, double derivative) {
+    return p[axis][axis] + 2 * derivative * p[axis][2] + derivative * derivative * p[2][2]
+        + LINE_VARIANCE;
+  }
+
+  /**
+   * Sets the variance of one component and forgets its correlations with the others.
+   */
+  private void fix(int component, double variance) {
+    for (int i = 0; i < 3; i++) {
+      p[i][component] = 0;
+      p[component][i] = 0;
+    }
+    p[component][component] = variance;
+    publish();
+  }
+
+  private void symmetrize() {
+    for (int i = 0; i < 3; i++) {
+      for (int j = i + 1; j < 3; j++) {
+        double mean = 0.5 * (p[i][j] + p[j][i]);
+        p[i][j] = mean;
+        p[j][i] = mean;
+      }
+    }
+  }
+
+  private void publish() {
+    positionError.set(getPositionError());
+    headingError.set(getHeadingError());
+  }
+}
@@ -1,11 +1,21 @@
 package ca.mcgill.ecse211.threads;
 
+import ca.mcgill.ecse211.hardware.Clock;
+import ca.mcgill.ecse211.hardware.Motor;
+import ca.mcgill.ecse211.hardware.SampleSource;
 import ca.mcgill.ecse211.odometer.OdometerExceptions;
-import lejos.robotics.SampleProvider;
 
 /**
  * This class implements the Light Sensor Poller for our robot
- * it runs pulls the sensor data every 50 miliseconds
+ * it runs pulls the sensor data every 30 miliseconds
+ * 
+ * Each sensor has a {@link LineDetector}, which works on the raw readings with their own time
+ * stamps and tacho counts. The published value of each sensor is its drop below the floor around
+ * the lines, times 100 and negative, so that it reads like a change of the light value.
+ * 
+ * When a detector finds a line, the poller publishes a line crossing to the
+ * {@link LineCrossingMonitor} of the sensor data, once per line, with the time and tacho count
+ * interpolated between the samples.
  * @author Caspar Cedro
  * @author Percy Chen
  * @author Patrick Erath
@@ -14,19 +24,19 @@ import lejos.robotics.SampleProvider;
  * @author Kamy Moussavi Kafi
  */
 public class LightPoller extends ThreadControl{
-  protected SampleProvider us[];
+  protected SampleSource us[];
   protected SensorData cont;
   protected float[][] lgData;
-  protected float lastValue[];
-  protected static int WAIT_TIME = 50;
-  private int id;
-  private static int sensorNumber = 0;
+  private final LineDetector[] detectors = {new LineDetector(), new LineDetector()};
+  private final double[] l = new double[2];
+  private volatile boolean restarted = false;
+  private Motor[] wheels;
 
   /**
    * This constructor creates an instance of the LightPoller class to provide distance data from an
    * light sensor to our robot.
    * 
-   * @param us a SampleProvider class instance that helps us to store an array of ultrasonic sensor
+   * @param us a SampleSource class instance that helps us to store an array of ultrasonic sensor
    *        data.
    * @param lgData an array of distance data to be used by our Wall Follower's
    *        UltrasonicControllers.
@@ -34,29 +44,64 @@ public class LightPoller extends ThreadControl{
    *        stored in usData passed to it.
    * @throws OdometerExceptions
    */
-  public LightPoller(SampleProvider[] us, float[][] lgData, SensorData cont) throws OdometerExceptions {
+  public LightPoller(SampleSource[] us, float[][] lgData, SensorData cont) throws OdometerExceptions {
     this.us = us;
     this.cont = cont;
     this.lgData = lgData;
-    this.id = sensorNumber;
     isStarted = true;
-    lastValue = new float[2];
-    sensorNumber++;
+    waitTime = 30;
+  }
+
+  /**
+   * Sets the wheels whose tacho counts are attached to the line crossing events. Sensor 0 is
+   * paired with the left wheel and sensor 1 with the right wheel.
+   * 
+   * @param leftMotor the left wheel motor
+   * @param rightMotor the right wheel motor
+   */
+  public void setWheels(Motor leftMotor, Motor rightMotor) {
+    this.wheels = new Motor[] {leftMotor, rightMotor};
+  }
+
+  /**
+   * When the poller is started again after a pause, the detectors forget the old samples so that
+   * the change across the pause is not mistaken for a line.
+   */
+  @Override
+  public synchronized void setStart(boolean start) {
+    if (start && !isStarted) {
+      restarted = true;
+    }
+    super.setStart(start);
   }
 
   /**
    * the run method to be performed in run method, collect light data
    */
   protected void runMethod() {
-    double l[] = new double[2];
+    if (restarted) {
+      restarted = false;
+      for (LineDetector detector : detectors) {
+        detector.reset();
+      }
+    }
+    int crossed = 0; // bit i set when sensor i starts a line
     for(int i = 0; i < us.length; i++) {
       us[i].fetchSample(lgData[i], 0); // acquire data
-  
-      int distance = (int) (lgData[i][0] * 100); // extract from buffer, multiply by 100 for convenience
-                                              // and allow it to be cast to int
-      l[i] = distance - lastValue[i]; // now take action depending on value
-      lastValue[i] = distance; 
+      // the time and tacho count of this sample, for the interpolation of the crossing
+      long time = Clock.nanos();
+      int tachoCount = wheels == null ? 0 : wheels[i].getTachoCount();
+      if (detectors[i].update(lgData[i][0], time, tachoCount)) {
+        crossed |= 1 << i;
+      }
+      l[i] = -100 * detectors[i].getDrop();
     }
     cont.setL(l);
+    for (int i = 0; i < us.length; i++) {
+      if ((crossed & (1 << i)) != 0) {
+        cont.getLineCrossings().publish(i, detectors[i].getCrossingTime(),
+            detectors[i].getCrossingTacho());
+      }
+    }
   }
 }
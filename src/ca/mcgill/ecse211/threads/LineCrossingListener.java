@@ -0,0 +1,19 @@
+package ca.mcgill.ecse211.threads;
+
+/**
+ * This interface is implemented by classes that want to be told when one of the back light
+ * sensors crosses a grid line. Listeners are called on the light poller thread, so they should
+ * return quickly.
+ *
+ */
+public interface LineCrossingListener {
+  /**
+   * Called once for every line crossed by a sensor.
+   * 
+   * @param sensor the sensor that crossed the line, {@link LineCrossingMonitor#LEFT} or
+   *        {@link LineCrossingMonitor#RIGHT}
+   * @param time the time the sensor reached the line in ms, interpolated between samples
+   * @param tachoCount the tacho count of the wheel on the same side as the sensor at that time
+   */
+  void lineCrossed(int sensor, long time, int tachoCount);
+}
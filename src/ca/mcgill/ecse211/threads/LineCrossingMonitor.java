@@ -0,0 +1,107 @@
+package ca.mcgill.ecse211.threads;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import ca.mcgill.ecse211.hardware.Clock;
+import ca.mcgill.ecse211.metrics.FlightRecorder;
+
+/**
+ * This class collects the line crossing events published by the light poller. Threads can either
+ * register a {@link LineCrossingListener} or block until the next crossing instead of polling the
+ * light sensor values in a loop.
+ *
+ */
+public class LineCrossingMonitor {
+  /**
+   * Index of the left back light sensor
+   */
+  public static final int LEFT = 0;
+
+  /**
+   * Index of the right back light sensor
+   */
+  public static final int RIGHT = 1;
+
+  private final long[] counts = new long[2]; // Number of lines crossed by each sensor
+  private final long[] times = new long[2]; // Time of the last crossing of each sensor
+  private final int[] tachoCounts = new int[2]; // Wheel tacho count at the last crossing
+  private final List<LineCrossingListener> listeners =
+      new CopyOnWriteArrayList<LineCrossingListener>();
+
+  /**
+   * Records a line crossing, wakes up the waiting threads and notifies the listeners.
+   * 
+   * @param sensor the sensor that crossed the line
+   * @param time the time of the crossing in ms
+   * @param tachoCount the tacho count of the wheel on the same side as the sensor
+   */
+  public void publish(int sensor, long time, int tachoCount) {
+    synchronized (this) {
+      counts[sensor]++;
+      times[sensor] = time;
+      tachoCounts[sensor] = tachoCount;
+      notifyAll();
+    }
+    FlightRecorder.line(sensor, time, tachoCount);
+    for (LineCrossingListener listener : listeners) {
+      listener.lineCrossed(sensor, time, tachoCount);
+    }
+  }
+
+  /**
+   * @param listener the listener to add
+   */
+  public void addListener(LineCrossingListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * @param listener the listener to remove
+   */
+  public void removeListener(LineCrossingListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * @param sensor the sensor to look at
+   * @return the number of lines crossed by the sensor so far
+   */
+  public synchronized long getCount(int sensor) {
+    return counts[sensor];
+  }
+
+  /**
+   * @param sensor the sensor to look at
+   * @return the time of the last line crossed by the sensor in ms
+   */
+  public synchronized long getTime(int sensor) {
+    return times[sensor];
+  }
+
+  /**
+   * @param sensor the sensor to look at
+   * @return the wheel tacho count when the sensor last crossed a line
+   */
+  public synchronized int getTachoCount(int sensor) {
+    return tachoCounts[sensor];
+  }
+
+  /**
+   * Blocks until either sensor crosses a new line or the timeout expires.
+   * 
+   * @param leftSeen the left count the caller has already handled
+   * @param rightSeen the right count the caller has already handled
+   * @param timeout the maximum time to wait in ms
+   * @throws InterruptedException
+   */
+  public synchronized void awaitCrossing(long leftSeen, long rightSeen, long timeout)
+      throws InterruptedException {
+    long deadline = Clock.millis() + timeout;
+    long remaining = timeout;
+    while (counts[LEFT] == leftSeen && counts[RIGHT] == rightSeen && remaining > 0) {
+      Clock.wait(this, remaining);
+      remaining = deadline - Clock.millis();
+    }
+  }
+}
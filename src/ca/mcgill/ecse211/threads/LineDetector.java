@@ -0,0 +1,152 @@
+package ca.mcgill.ecse211.threads;
+
+/**
+ * This class detects the grid lines in the samples of one light sensor in red mode. The samples
+ * are low pass filtered, and compared to a running baseline of the floor around the lines: a line
+ * starts when the filtered value drops below the baseline by more than the entry threshold while
+ * falling, and ends when it comes back within the exit threshold. The thresholds adapt to the
+ * noise of the floor and to the depth of the lines seen so far.
+ * <p>
+ * The time and tacho count of a crossing are interpolated between the two samples around the
+ * entry threshold, and moved back by the delay of the filter, so they do not depend on the
+ * sampling period. When the edge of the line is sharper than the distance between two samples,
+ * the value jumps from the floor to the line at once and the edge can be anywhere between them,
+ * so the crossing is put halfway.
+ *
+ */
+public class LineDetector {
+  private static final double FILTER_TIME = 0.005; // time constant of the low pass filter, in s
+  private static final double RISE_TIME = 0.05; // time constant of the baseline going up, in s
+  private static final double FALL_TIME = 0.5; // time constant of the baseline going down, in s
+  private static final double NOISE_FACTOR = 5; // entry threshold in mean deviations of the floor
+  private static final double MIN_DROP = 0.04; // smallest entry threshold
+  private static final double DEFAULT_DEPTH = 0.2; // depth of a line before one is seen
+  private static final double EXIT_RATIO = 0.5; // exit threshold over the entry threshold
+  private static final double STEP_RATIO = 0.5; // drop in one sample, over the depth, of a sharp edge
+
+  private double filtered;
+  private double previousFiltered;
+  private double baseline;
+  private double noise;
+  private double depth = DEFAULT_DEPTH;
+  private double deepest; // largest drop of the current line
+  private long previousTime;
+  private int previousTacho;
+  private boolean started = false;
+  private boolean onLine = false;
+  private long crossingTime;
+  private int crossingTacho;
+
+  /**
+   * Forgets the samples seen so far, for example after the sensor was paused. The line depth
+   * learned so far is kept.
+   */
+  public void reset() {
+    started = false;
+    onLine = false;
+  }
+
+  /**
+   * Adds a sample.
+   *
+   * @param value the reading of the sensor between 0 and 1
+   * @param nanos the time of the sample in ns
+   * @param tachoCount the tacho count of the wheel on the side of the sensor at the sample
+   * @return true if the sample starts a line
+   */
+  public boolean update(double value, long nanos, int tachoCount) {
+    if (!started) {
+      started = true;
+      filtered = value;
+      previousFiltered = value;
+      baseline = value;
+      noise = 0;
+      previousTime = nanos;
+      previousTacho = tachoCount;
+      return false;
+    }
+    double dt = Math.max(0, (nanos - previousTime) / 1e9);
+    double gain = 1 - Math.exp(-dt / FILTER_TIME);
+    filtered += gain * (value - filtered);
+
+    boolean crossed = false;
+    double drop = baseline - filtered;
+    double entry = getThreshold();
+    if (!onLine) {
+      if (drop > entry && filtered < previousFiltered) {
+        onLine = true;
+        crossed = true;
+        deepest = drop;
+        interpolate(baseline - entry, nanos, tachoCount, gain);
+      } else {
+        // the baseline follows the floor, faster up than down
+        double time = filtered > baseline ? RISE_TIME : FALL_TIME;
+        baseline += (1 - Math.exp(-dt / time)) * (filtered - baseline);
+        noise += (1 - Math.exp(-dt / FALL_TIME)) * (Math.abs(filtered - baseline) - noise);
+      }
+    } else {
+      deepest = Math.max(deepest, drop);
+      if (drop < EXIT_RATIO * entry) {
+        onLine = false;
+        depth = 0.5 * depth + 0.5 * deepest;
+      }
+    }
+    previousFiltered = filtered;
+    previousTime = nanos;
+    previousTacho = tachoCount;
+    return crossed;
+  }
+
+  /**
+   * Interpolates the time and tacho count at which the filtered value reached the level.
+   *
+   * @param gain the gain of the filter for the last sample
+   */
+  private void interpolate(double level, long nanos, int tachoCount, double gain) {
+    double fraction = 0.5;
+    if (previousFiltered - filtered < STEP_RATIO * depth) {
+      fraction = Math.max(0, Math.min(1, (previousFiltered - level) / (previousFiltered - filtered)));
+      // the filter delays a ramp by (1 - gain) / gain samples
+      if (gain > 0) {
+        fraction -= (1 - gain) / gain;
+      }
+    }
+    crossingTime = Math.round((previousTime + fraction * (nanos - previousTime)) / 1e6);
+    crossingTacho = (int) Math.round(previousTacho + fraction * (tachoCount - previousTacho));
+  }
+
+  /**
+   * @return the drop below the floor a line must reach, between MIN_DROP and half the line depth
+   */
+  public double getThreshold() {
+    return Math.max(MIN_DROP, Math.min(NOISE_FACTOR * noise, 0.5 * depth));
+  }
+
+  /**
+   * @return how far the filtered value is below the floor
+   */
+  public double getDrop() {
+    return started ? baseline - filtered : 0;
+  }
+
+  /**
+   * @return true if the sensor is on a line
+   */
+  public boolean isOnLine() {
+    return onLine;
+  }
+
+  /**
+   * @return the time of the last crossing in ms
+   */
+  public long getCrossingTime() {
+    return crossingTime;
+  }
+
+  /**
+   * @return the tacho count of the wheel at the last crossing
+   */
+  public int getCrossingTacho() {
+    return crossingTacho;
+  }
+}
@@ -0,0 +1,300 @@
+package ca.mcgill.ecse211.threads;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import ca.mcgill.ecse211.hardware.Clock;
+
+/**
+ * This class runs the odometer and the sensor pollers from a single thread at fixed rates. Every
+ * task has its own period and a phase offset, so that tasks with the same period do not all fall
+ * due at the same time. Deadlines are computed from the start of the schedule rather than from the
+ * end of the last run, so the period does not drift with the time a task takes.
+ * <p>
+ * A task that belongs to a {@link ThreadControl} is skipped while that poller is paused with
+ * {@link ThreadControl#setStart(boolean)}, and resumes on its next slot once started again.
+ * <p>
+ * Each task records how late it started (jitter), how long it ran, the period it actually got and
+ * how many deadlines it overran.
+ *
+ */
+public class PollerScheduler implements Runnable {
+  private final List<Task> tasks = new CopyOnWriteArrayList<Task>();
+  private volatile boolean running = false;
+
+  /**
+   * A periodic task and its timing statistics. Times are in ns unless noted.
+   */
+  public static class Task {
+    private final String name;
+    private final Runnable action;
+    private final ThreadControl control;
+    private volatile long period; // in ns
+    private final long phase; // in ns
+    private long next; // next deadline, only used by the scheduler thread
+
+    private long runs;
+    private long overruns;
+    private long skipped;
+    private long lastStart = -1;
+    private long totalLateness;
+    private long maxLateness;
+    private long totalDuration;
+    private long maxDuration;
+    private long totalPeriod;
+    private long periodSamples; // runs that followed a run, without a pause in between
+    private long minPeriod = Long.MAX_VALUE;
+    private long maxPeriod;
+
+    private Task(String name, Runnable action, ThreadControl control, long period, long phase) {
+      this.name = name;
+      this.action = action;
+      this.control = control;
+      this.period = period * 1000000L;
+      this.phase = phase * 1000000L;
+    }
+
+    /**
+     * Runs the task if it is not paused, then moves its deadline to the next slot.
+     */
+    private void execute() {
+      if (control == null || control.isStarted()) {
+        long start = Clock.nanos();
+        action.run();
+        record(start, Clock.nanos());
+      } else {
+        lastStart = -1; // do not count the pause as a long period
+      }
+      next += period;
+      long now = Clock.nanos();
+      if (next <= now) { // the task ran past its next deadline
+        long missed = (now - next) / period + 1;
+        next += missed * period;
+        synchronized (this) {
+          overruns++;
+          skipped += missed;
+        }
+      }
+    }
+
+    private synchronized void record(long start, long end) {
+      long lateness = Math.max(0, start - next);
+      long duration = end - start;
+      runs++;
+      totalLateness += lateness;
+      maxLateness = Math.max(maxLateness, lateness);
+      totalDuration += duration;
+      maxDuration = Math.max(maxDuration, duration);
+      if (lastStart >= 0) {
+        long actualPeriod = start - lastStart;
+        totalPeriod += actualPeriod;
+        periodSamples++;
+        minPeriod = Math.min(minPeriod, actualPeriod);
+        maxPeriod = Math.max(maxPeriod, actualPeriod);
+      }
+      lastStart = start;
+    }
+
+    /**
+     * @return the name of the task
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return the period of the task in ms
+     */
+    public long getPeriod() {
+      return period / 1000000L;
+    }
+
+    /**
+     * Changes the period of the task. The new period applies from the next run.
+     * 
+     * @param period the period in ms
+     */
+    public void setPeriod(long period) {
+      this.period = period * 1000000L;
+    }
+
+    /**
+     * @return the number of times the task ran
+     */
+    public synchronized long getRuns() {
+      return runs;
+    }
+
+    /**
+     * @return the number of runs that ended after the next deadline
+     */
+    public synchronized long getOverruns() {
+      return overruns;
+    }
+
+    /**
+     * @return the number of slots skipped because of overruns
+     */
+    public synchronized long getSkipped() {
+      return skipped;
+    }
+
+    /**
+     * @return the mean delay between a deadline and the start of the run in ns
+     */
+    public synchronized long getMeanJitter() {
+      return runs == 0 ? 0 : totalLateness / runs;
+    }
+
+    /**
+     * @return the largest delay between a deadline and the start of the run in ns
+     */
+    public synchronized long getMaxJitter() {
+      return maxLateness;
+    }
+
+    /**
+     * @return the mean run time in ns
+     */
+    public synchronized long getMeanDuration() {
+      return runs == 0 ? 0 : totalDuration / runs;
+    }
+
+    /**
+     * @return the longest run time in ns
+     */
+    public synchronized long getMaxDuration() {
+      return maxDuration;
+    }
+
+    /**
+     * @return the mean time between the starts of two consecutive runs in ns, not counting the
+     *         first run after a pause
+     */
+    public synchronized long getMeanPeriod() {
+      return periodSamples == 0 ? 0 : totalPeriod / periodSamples;
+    }
+
+    /**
+     * @return the shortest time between the starts of two consecutive runs in ns
+     */
+    public synchronized long getMinPeriod() {
+      return minPeriod == Long.MAX_VALUE ? 0 : minPeriod;
+    }
+
+    /**
+     * @return the longest time between the starts of two consecutive runs in ns
+     */
+    public synchronized long getMaxPeriod() {
+      return maxPeriod;
+    }
+
+    /**
+     * Clears the statistics of the task.
+     */
+    public synchronized void resetStatistics() {
+      runs = 0;
+      overruns = 0;
+      skipped = 0;
+      lastStart = -1;
+      totalLateness = 0;
+      maxLateness = 0;
+      totalDuration = 0;
+      maxDuration = 0;
+      totalPeriod = 0;
+      periodSamples = 0;
+      minPeriod = Long.MAX_VALUE;
+      maxPeriod = 0;
+    }
+  }
+
+  /**
+   * Adds a task that always runs.
+   * 
+   * @param name the name of the task
+   * @param action the work done at every period
+   * @param period the period in ms
+   * @param phase the offset of the first run from the start of the schedule in ms
+   * @return the scheduled task
+   */
+  public Task schedule(String name, Runnable action, long period, long phase) {
+    return add(new Task(name, action, null, period, phase));
+  }
+
+  /**
+   * Adds a poller. The poller runs at its own period and only while it is started.
+   * 
+   * @param name the name of the task
+   * @param poller the poller to run
+   * @param phase the offset of the first run from the start of the schedule in ms
+   * @return the scheduled task
+   */
+  public Task schedule(String name, final ThreadControl poller, long phase) {
+    Runnable action = new Runnable() {
+      public void run() {
+        poller.runOnce();
+      }
+    };
+    return add(new Task(name, action, poller, poller.getPeriod(), phase));
+  }
+
+  private synchronized Task add(Task task) {
+    task.next = (running ? Clock.nanos() : 0) + task.phase;
+    tasks.add(task);
+    notifyAll();
+    return task;
+  }
+
+  /**
+   * @return the scheduled tasks
+   */
+  public List<Task> getTasks() {
+    return tasks;
+  }
+
+  /**
+   * Starts the scheduler thread.
+   */
+  public void start() {
+    Thread thread = new Thread(this);
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MAX_PRIORITY);
+    thread.start();
+  }
+
+  /**
+   * Runs the task with the earliest deadline, forever.
+   */
+  public void run() {
+    synchronized (this) {
+      long origin = Clock.nanos();
+      for (Task task : tasks) {
+        task.next += origin;
+      }
+      running = true;
+    }
+    try {
+      while (true) {
+        Task due = null;
+        for (Task task : tasks) {
+          if (due == null || task.next < due.next) {
+            due = task;
+          }
+        }
+        if (due == null) {
+          synchronized (this) {
+            Clock.wait(this, 100); // nothing to run until a task is added
+          }
+          continue;
+        }
+        long wait = due.next - Clock.nanos();
+        if (wait > 0) {
+          Clock.sleepNanos(wait);
+        }
+        due.execute();
+      }
+    } catch (InterruptedException e) {
+      e.printStackTrace();
+    }
+  }
+}
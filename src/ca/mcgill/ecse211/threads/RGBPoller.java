@@ -1,28 +1,40 @@
 package ca.mcgill.ecse211.threads;
 
+import ca.mcgill.ecse211.hardware.Motor;
+import ca.mcgill.ecse211.hardware.SampleSource;
 import ca.mcgill.ecse211.odometer.OdometerExceptions;
-import lejos.robotics.SampleProvider;
 
 /**
  * This class polls a light sensor that is used to detect colored rings.
  * 
  */
 public class RGBPoller extends LightPoller{
+  private Motor arm; // the samples are tagged with its tacho count
 
   /**
    * This constructor creates an instance of the RGBPoller class to provide color data from an light
    * sensor to our robot.
    * 
-   * @param us A SampleProvider class instance that helps us to store an array of ultrasonic sensor
+   * @param us A SampleSource class instance that helps us to store an array of ultrasonic sensor
    *        data.
    * @param usData An array to store light data.
    * @param cont A SensorData object that is used to process color data.
    * @throws OdometerExceptions
    */
-  public RGBPoller(SampleProvider us[], float[][] usData, SensorData cont) throws OdometerExceptions {
+  public RGBPoller(SampleSource us[], float[][] usData, SensorData cont) throws OdometerExceptions {
     super(us, usData, cont);
   }
 
+  /**
+   * Sets the motor that moves the color sensor. Each sample is then tagged with its tacho count,
+   * so that a sample can be related to the arm position it was taken at.
+   * 
+   * @param arm the arm motor
+   */
+  public void setArm(Motor arm) {
+    this.arm = arm;
+  }
+
   @Override
   protected void runMethod() {
     us[0].fetchSample(lgData[0], 0); // acquire data at offset 0
@@ -30,6 +42,6 @@ public class RGBPoller extends LightPoller{
     float r = (lgData[0][0]); // extract from buffer, cast to int
     float g = (lgData[0][1]); // extract from buffer, cast to int
     float b = (lgData[0][2]); // extract from buffer, cast to int
-    cont.setRGB(r, g, b); // now take action depending on value
+    cont.setRGB(r, g, b, arm == null ? Double.NaN : arm.getTachoCount());
   }
 }
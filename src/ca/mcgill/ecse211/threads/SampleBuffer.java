@@ -0,0 +1,338 @@
+package ca.mcgill.ecse211.threads;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class keeps a fixed-capacity history of timestamped sensor samples. Each sample has
+ * {@link #width()} channels, e.g. 1 for the ultrasonic distance or 3 for RGB.
+ * <p>
+ * The buffer is meant for one writer (the poller thread) and any number of readers. Samples are
+ * stored in atomic arrays and published by incrementing a volatile counter, so neither side
+ * locks or allocates. The newest {@code capacity - 1} samples are readable; the oldest slot is
+ * reserved for the write in progress.
+ * <p>
+ * Every value a reader returns was written as one whole sample by the writer: the times and values
+ * are read with volatile semantics, so the check of the counter made after a copy cannot be moved
+ * before it, and a copy that the writer may have overwritten is detected and retried, or reported
+ * as unreadable by {@link #get(long, double[])}. A reader that copies several samples gets each
+ * sample whole, and all of them from one window of the history.
+ *
+ */
+public class SampleBuffer {
+  private final int capacity;
+  private final int width;
+  private final AtomicLongArray times;
+  private final AtomicLongArray values; // raw bits of the doubles
+  private volatile long count = 0; // Total number of samples ever written
+
+  /**
+   * This constructor creates an empty buffer.
+   *
+   * @param capacity the number of samples to keep, must be at least 2
+   * @param width the number of channels in each sample
+   */
+  public SampleBuffer(int capacity, int width) {
+    if (capacity < 2 || width < 1) {
+      throw new IllegalArgumentException("Invalid sample buffer size");
+    }
+    this.capacity = capacity;
+    this.width = width;
+    this.times = new AtomicLongArray(capacity);
+    this.values = new AtomicLongArray(capacity * width);
+  }
+
+  /**
+   * @return the number of channels in each sample
+   */
+  public int width() {
+    return width;
+  }
+
+  /**
+   * @return the number of samples that can be read back
+   */
+  public int capacity() {
+    return capacity - 1;
+  }
+
+  /**
+   * @return the total number of samples written since the buffer was created
+   */
+  public long count() {
+    return count;
+  }
+
+  /**
+   * Appends a single-channel sample. Only the writer thread may call this.
+   *
+   * @param time the time the sample was taken in ms
+   * @param value the sample value
+   */
+  public void add(long time, double value) {
+    long index = count;
+    int slot = (int) (index % capacity);
+    times.lazySet(slot, time);
+    values.lazySet(slot * width, Double.doubleToRawLongBits(value));
+    count = index + 1; // publish
+  }
+
+  /**
+   * Appends a sample. Only the writer thread may call this.
+   *
+   * @param time the time the sample was taken in ms
+   * @param sample an array holding at least {@link #width()} channel values
+   */
+  public void add(long time, double[] sample) {
+    long index = count;
+    int slot = (int) (index % capacity);
+    times.lazySet(slot, time);
+    for (int i = 0; i < width; i++) {
+      values.lazySet(slot * width + i, Double.doubleToRawLongBits(sample[i]));
+    }
+    count = index + 1; // publish
+  }
+
+  /**
+   * Copies the newest sample into out. If out is shorter than {@link #width()}, only the first
+   * channels are copied.
+   *
+   * @param out the array to store the sample
+   * @return the time of the sample in ms, or -1 if nothing has been written yet (out is untouched)
+   */
+  public long latest(double[] out) {
+    while (true) {
+      long end = count;
+      if (end == 0) {
+        return -1;
+      }
+      int slot = (int) ((end - 1) % capacity);
+      long time = times.get(slot);
+      copy(slot, out, 0, Math.min(width, out.length));
+      if (isReadable(end - 1)) {
+        return time;
+      }
+    }
+  }
+
+  /**
+   * Copies the newest sample into out, narrowing each channel to float. If out is shorter than
+   * {@link #width()}, only the first channels are copied.
+   *
+   * @param out the array to store the sample
+   * @return the time of the sample in ms, or -1 if nothing has been written yet (out is untouched)
+   */
+  public long latest(float[] out) {
+    while (true) {
+      long end = count;
+      if (end == 0) {
+        return -1;
+      }
+      int slot = (int) ((end - 1) % capacity);
+      long time = times.get(slot);
+      for (int i = 0; i < width && i < out.length; i++) {
+        out[i] = (float) value(slot * width + i);
+      }
+      if (isReadable(end - 1)) {
+        return time;
+      }
+    }
+  }
+
+  /**
+   * Returns one channel of the newest sample.
+   *
+   * @param channel the channel to read
+   * @param fallback the value to return if nothing has been written yet
+   * @return the newest value of the channel
+   */
+  public double latest(int channel, double fallback) {
+    while (true) {
+      long end = count;
+      if (end == 0) {
+        return fallback;
+      }
+      double value = value((int) ((end - 1) % capacity) * width + channel);
+      if (isReadable(end - 1)) {
+        return value;
+      }
+    }
+  }
+
+  /**
+   * Copies the sample with the given index, counting from the first sample ever written. A reader
+   * that keeps the index of the next sample it wants sees every sample once, as long as it does
+   * not fall more than {@link #capacity()} samples behind.
+   *
+   * @param index the index of the sample, see {@link #count()}
+   * @param out the array to store the sample, see {@link #latest(double[])}
+   * @return the time of the sample in ms, or -1 if it is not written yet or was overwritten
+   */
+  public long get(long index, double[] out) {
+    if (index < 0 || index >= count) {
+      return -1;
+    }
+    int slot = (int) (index % capacity);
+    long time = times.get(slot);
+    copy(slot, out, 0, Math.min(width, out.length));
+    return isReadable(index) ? time : -1;
+  }
+
+  /**
+   * Copies the last n samples, oldest first. Sample i is stored in out[i * width() ..] and its
+   * time in sampleTimes[i].
+   *
+   * @param n the number of samples wanted
+   * @param out an array of at least n * width() elements
+   * @param sampleTimes an array of at least n elements, or null if times are not needed
+   * @return the number of samples copied, which is less than n if the history is shorter
+   */
+  public int lastN(int n, double[] out, long[] sampleTimes) {
+    while (true) {
+      long end = count;
+      int k = window(end, n);
+      long first = end - k;
+      for (int i = 0; i < k; i++) {
+        int slot = (int) ((first + i) % capacity);
+        if (sampleTimes != null) {
+          sampleTimes[i] = times.get(slot);
+        }
+        copy(slot, out, i * width, width);
+      }
+      if (k == 0 || isReadable(first)) {
+        return k;
+      }
+    }
+  }
+
+  /**
+   * Copies every sample taken at or after time, oldest first, up to the size of the arrays.
+   *
+   * @param time the start of the window in ms
+   * @param out an array to store the samples, see {@link #lastN(int, double[], long[])}
+   * @param sampleTimes an array to store the sample times, or null if times are not needed
+   * @return the number of samples copied
+   */
+  public int since(long time, double[] out, long[] sampleTimes) {
+    int max = out.length / width;
+    if (sampleTimes != null) {
+      max = Math.min(max, sampleTimes.length);
+    }
+    return lastN(Math.min(max, countSince(time)), out, sampleTimes);
+  }
+
+  /**
+   * @param time the start of the window in ms
+   * @return the number of readable samples taken at or after time
+   */
+  public int countSince(long time) {
+    while (true) {
+      long end = count;
+      int limit = window(end, capacity);
+      int k = 0;
+      while (k < limit && times.get((int) ((end - 1 - k) % capacity)) >= time) {
+        k++;
+      }
+      if (k == 0 || isReadable(end - k)) {
+        return k;
+      }
+    }
+  }
+
+  /**
+   * @param channel the channel to look at
+   * @param n the number of newest samples in the window
+   * @return the smallest value in the window, or NaN if the buffer is empty
+   */
+  public double min(int channel, int n) {
+    while (true) {
+      long end = count;
+      int k = window(end, n);
+      double min = Double.NaN;
+      for (int i = 0; i < k; i++) {
+        double value = value((int) ((end - 1 - i) % capacity) * width + channel);
+        if (i == 0 || value < min) {
+          min = value;
+        }
+      }
+      if (k == 0 || isReadable(end - k)) {
+        return min;
+      }
+    }
+  }
+
+  /**
+   * @param channel the channel to look at
+   * @param n the number of newest samples in the window
+   * @return the largest value in the window, or NaN if the buffer is empty
+   */
+  public double max(int channel, int n) {
+    while (true) {
+      long end = count;
+      int k = window(end, n);
+      double max = Double.NaN;
+      for (int i = 0; i < k; i++) {
+        double value = value((int) ((end - 1 - i) % capacity) * width + channel);
+        if (i == 0 || value > max) {
+          max = value;
+        }
+      }
+      if (k == 0 || isReadable(end - k)) {
+        return max;
+      }
+    }
+  }
+
+  /**
+   * @param channel the channel to look at
+   * @param n the number of newest samples in the window
+   * @return the mean of the window, or NaN if the buffer is empty
+   */
+  public double mean(int channel, int n) {
+    while (true) {
+      long end = count;
+      int k = window(end, n);
+      double sum = 0;
+      for (int i = 0; i < k; i++) {
+        sum += value((int) ((end - 1 - i) % capacity) * width + channel);
+      }
+      if (k == 0) {
+        return Double.NaN;
+      }
+      if (isReadable(end - k)) {
+        return sum / k;
+      }
+    }
+  }
+
+  /**
+   * @param end the sample count the reader started from
+   * @param n the number of samples wanted
+   * @return how many of the newest samples can actually be read
+   */
+  private int window(long end, int n) {
+    return (int) Math.min(Math.min(n, end), capacity - 1);
+  }
+
+  /**
+   * @return the value stored at index of the values array
+   */
+  private double value(int index) {
+    return Double.longBitsToDouble(values.get(index));
+  }
+
+  /**
+   * Copies the first n channels of the sample in slot into out, starting at offset.
+   */
+  private void copy(int slot, double[] out, int offset, int n) {
+    for (int i = 0; i < n; i++) {
+      out[offset + i] = value(slot * width + i);
+    }
+  }
+
+  /**
+   * Checks, after copying, that the writer has not started overwriting the sample at index.
+   */
+  private boolean isReadable(long index) {
+    return count - index < capacity;
+  }
+}
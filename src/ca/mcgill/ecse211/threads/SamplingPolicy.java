@@ -0,0 +1,107 @@
+package ca.mcgill.ecse211.threads;
+
+/**
+ * This class sets the sampling rate of each sensor poller according to the phase of the mission.
+ * A sensor that is not needed in a phase is paused, and the sensor the phase depends on is polled
+ * at a high rate. Switching profiles changes the period of the poller and of its scheduled task
+ * together.
+ *
+ */
+public class SamplingPolicy {
+
+  /**
+   * The sensors whose rate is controlled
+   */
+  public enum Sensor {
+    ULTRASONIC, LIGHT, RGB
+  }
+
+  /**
+   * The sampling profiles. Each one gives the period in ms of the ultrasonic, light and RGB
+   * pollers, 0 meaning the poller is paused.
+   */
+  public enum Profile {
+    /** Every sensor at the default rate */
+    ALL(30, 30, 30),
+    /** Ultrasonic localization: only the ultrasonic sensor is needed */
+    ULTRASONIC_LOCALIZATION(30, 0, 0),
+    /** Driving along the grid: the back light sensors detect the lines */
+    LINE_FOLLOWING(0, 10, 0),
+    /** Scanning a ring: only the front color sensor is needed */
+    COLOR_SCAN(0, 0, 10),
+    /** Grabbing rings: the light sensors are kept slow for the back off that follows */
+    RING_RETRIEVAL(0, 50, 0);
+
+    private final int[] periods;
+
+    private Profile(int ultrasonic, int light, int rgb) {
+      this.periods = new int[] {ultrasonic, light, rgb};
+    }
+
+    /**
+     * @param sensor the sensor to look at
+     * @return the period of the sensor in ms, or 0 if it is paused
+     */
+    public int getPeriod(Sensor sensor) {
+      return periods[sensor.ordinal()];
+    }
+  }
+
+  private final ThreadControl[] pollers = new ThreadControl[Sensor.values().length];
+  private final PollerScheduler.Task[] tasks = new PollerScheduler.Task[Sensor.values().length];
+  private Profile profile = Profile.ALL;
+
+  /**
+   * Registers the poller of a sensor and the task that runs it.
+   * 
+   * @param sensor the sensor
+   * @param poller the poller reading the sensor
+   * @param task the scheduled task of the poller, or null if the poller runs in its own thread
+   */
+  public synchronized void register(Sensor sensor, ThreadControl poller, PollerScheduler.Task task) {
+    pollers[sensor.ordinal()] = poller;
+    tasks[sensor.ordinal()] = task;
+    apply(sensor);
+  }
+
+  /**
+   * Switches to a profile.
+   * 
+   * @param profile the new profile
+   */
+  public synchronized void use(Profile profile) {
+    this.profile = profile;
+    for (Sensor sensor : Sensor.values()) {
+      apply(sensor);
+    }
+  }
+
+  /**
+   * @return the current profile
+   */
+  public synchronized Profile getProfile() {
+    return profile;
+  }
+
+  /**
+   * Sets the rate of one sensor from the current profile.
+   */
+  private void apply(Sensor sensor) {
+    ThreadControl poller = pollers[sensor.ordinal()];
+    if (poller == null) {
+      return;
+    }
+    int period = profile.getPeriod(sensor);
+    if (period > 0) {
+      poller.setPeriod(period);
+      if (tasks[sensor.ordinal()] != null) {
+        tasks[sensor.ordinal()].setPeriod(period);
+      }
+      if (!poller.isStarted()) {
+        poller.setStart(true);
+      }
+    } else if (poller.isStarted()) {
+      poller.setStart(false);
+    }
+  }
+}
@@ -1,19 +1,31 @@
 package ca.mcgill.ecse211.threads;
 
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import ca.mcgill.ecse211.hardware.Clock;
+import ca.mcgill.ecse211.metrics.FlightRecorder;
 import ca.mcgill.ecse211.odometer.OdometerExceptions;
 
 /**
  * This class implements methods to manage data from our sensors
+ * <p>
+ * Each sensor keeps a short timestamped history in a {@link SampleBuffer}, so readers can get
+ * the latest value without locking and filters can look back over a window of samples.
  * 
  */
 public class SensorData {
+  /**
+   * Number of samples kept for each sensor
+   */
+  public static final int HISTORY_SIZE = 64;
+
   // Sensor data parameters
-  private double[] lights; // Head angle
   private volatile double distance;
   private volatile double angle;
-  private float rgb[];
+  private final SampleBuffer usHistory; // ultrasonic distance and heading
+  private final double[] usSample; // writer-side scratch array for setD
+  private final SampleBuffer lightHistory; // back light sensors 0 and 1
+  private final SampleBuffer rgbHistory; // front color sensor r, g, b and arm tacho count
+  private final double[] rgbSample; // writer-side scratch array for setRGB
+  private final LineCrossingMonitor lineCrossings; // line events from the back sensors
 
   // Class control variables
   private volatile static int numberOfIntances = 0; // Number of OdometerData
@@ -22,11 +34,6 @@ public class SensorData {
   private static final int MAX_INSTANCES = 1; // Maximum number of
                                               // OdometerData instances
 
-  // Thread control tools
-  private static Lock lightLock = new ReentrantLock(true); // Fair lock for concurrent writing light sensor data
-  
-  private static Lock rgbLock = new ReentrantLock(true); // Fair lock for concurrent writing rgb sensor data
-
   private static SensorData sensorData = null;
 
   /**
@@ -36,12 +43,13 @@ public class SensorData {
   protected SensorData() {
     // Default distance value is 40 cm from any walls.
     this.distance = 40;
-    // Default light value is 0
-    this.lights = new double[2];
-    rgb = new float[3];
-    for (int j = 0; j < rgb.length; j++) {
-      rgb[j] = 0;
-    }
+    // The histories start empty. Until their first sample, readL and readRGB return 0
+    this.usHistory = new SampleBuffer(HISTORY_SIZE, 2);
+    this.usSample = new double[2];
+    this.lightHistory = new SampleBuffer(HISTORY_SIZE, 2);
+    this.rgbHistory = new SampleBuffer(HISTORY_SIZE, 4);
+    this.rgbSample = new double[4];
+    this.lineCrossings = new LineCrossingMonitor();
   }
 
   /**
@@ -76,34 +84,81 @@ public class SensorData {
   }
   
   /**
-   * get the light value data from the two light sensors (protected by lightLock)
+   * get the light value data from the two light sensors
    * @return: data from light sensor
    */
-  public double[] getL() {    
-    //lock the lock for light sensor value
-    lightLock.lock();
-    try {
-      return lights.clone();
-    } finally {
-      lightLock.unlock();
+  public double[] getL() {
+    double[] lights = new double[2];
+    readL(lights);
+    return lights;
+  }
+
+  /**
+   * Copies the latest light values of the two light sensors into lights without allocating.
+   * 
+   * @param lights an array of at least 2 elements
+   */
+  public void readL(double[] lights) {
+    if (lightHistory.latest(lights) < 0) {
+      lights[0] = 0;
+      lights[1] = 0;
     }
-    
   }
 
   /**
-   * get the rgb data for light sensor (protected by rgb lock)
+   * get the rgb data for light sensor
    * 
    * @return: rgb data
    */
   public float[] getRGB() {
-    rgbLock.lock();
-    try {
-      return rgb.clone();
-    }finally {
-      rgbLock.unlock();
+    float[] rgb = new float[3];
+    readRGB(rgb);
+    return rgb;
+  }
+
+  /**
+   * Copies the latest rgb values into rgb. Allocation free as long as the caller reuses rgb.
+   * 
+   * @param rgb an array of at least 3 elements
+   */
+  public void readRGB(float[] rgb) {
+    if (rgbHistory.latest(rgb) < 0) {
+      rgb[0] = 0;
+      rgb[1] = 0;
+      rgb[2] = 0;
     }
   }
 
+  /**
+   * @return the history of the ultrasonic sensor, channels are the distance in cm and the heading
+   *         of the robot in degrees (NaN if unknown)
+   */
+  public SampleBuffer getDistanceHistory() {
+    return usHistory;
+  }
+
+  /**
+   * @return the history of the two back light sensors, channel 0 is the left sensor
+   */
+  public SampleBuffer getLightHistory() {
+    return lightHistory;
+  }
+
+  /**
+   * @return the history of the front color sensor, channels are r, g, b and the tacho count of
+   *         the arm motor (NaN if unknown)
+   */
+  public SampleBuffer getRGBHistory() {
+    return rgbHistory;
+  }
+
+  /**
+   * @return the line crossing events of the two back light sensors
+   */
+  public LineCrossingMonitor getLineCrossings() {
+    return lineCrossings;
+  }
+
   /**
    * (deprecated, not using)
    * This method returns the currently stored angle value from the gyro sensor
@@ -120,7 +175,22 @@ public class SensorData {
    * @param d The value to overwrite distance with
    */
   public void setD(double d) {
+      setD(d, Double.NaN);
+  }
+
+  /**
+   * This method records a new ultrasonic distance, tagged with the heading of the robot when the
+   * sample was taken. Only the ultrasonic poller thread may call this.
+   *
+   * @param d The distance in cm
+   * @param heading The heading of the robot in degrees, NaN if unknown
+   */
+  public void setD(double d, double heading) {
       this.distance = d;
+      usSample[0] = d;
+      usSample[1] = heading;
+      usHistory.add(Clock.millis(), usSample);
+      FlightRecorder.sample(FlightRecorder.ULTRASONIC, d, heading, Double.NaN, Double.NaN);
   }
 
   /**
@@ -134,35 +204,41 @@ public class SensorData {
   }
 
   /**
-   * set rgb data for color sensor (protected by rgb lock)
+   * set rgb data for color sensor. Only the rgb poller thread may call this.
    * 
    * @param r: red value
    * @param g: green value
    * @param b: blue value
    */
   public void setRGB(float r, float g, float b) {
-    try {
-      rgbLock.lock();
-      rgb[0] = r;
-      rgb[1] = g;
-      rgb[2] = b;
-    } finally {
-      rgbLock.unlock();
-    }
+    setRGB(r, g, b, Double.NaN);
   }
 
   /**
-   * This method overwrites the light value. (protected by light lock)
+   * set rgb data for color sensor, tagged with the tacho count of the arm motor when the sample
+   * was taken. Only the rgb poller thread may call this.
+   * 
+   * @param r: red value
+   * @param g: green value
+   * @param b: blue value
+   * @param armTacho: tacho count of the arm motor in degrees, NaN if unknown
+   */
+  public void setRGB(float r, float g, float b, double armTacho) {
+    rgbSample[0] = r;
+    rgbSample[1] = g;
+    rgbSample[2] = b;
+    rgbSample[3] = armTacho;
+    rgbHistory.add(Clock.millis(), rgbSample);
+    FlightRecorder.sample(FlightRecorder.RGB, r, g, b, armTacho);
+  }
+
+  /**
+   * This method records new light values. Only the light poller thread may call this.
    * 
    * @param l The value to overwrite the current light value with
    */
   public void setL(double l[]) {
-    try {
-      lightLock.lock();
-      this.lights[0] = l[0];
-      this.lights[1] = l[1];
-    } finally {
-      lightLock.unlock();
-    }
+    lightHistory.add(Clock.millis(), l);
+    FlightRecorder.sample(FlightRecorder.LIGHT, l[0], l[1], Double.NaN, Double.NaN);
   }
 }
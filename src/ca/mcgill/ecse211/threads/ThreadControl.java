@@ -1,16 +1,24 @@
 package ca.mcgill.ecse211.threads;
 
-import lejos.hardware.Sound;
+import ca.mcgill.ecse211.game.Game;
+import ca.mcgill.ecse211.hardware.Clock;
+import ca.mcgill.ecse211.metrics.LatencyHistogram;
+import ca.mcgill.ecse211.metrics.Metrics;
 
 /**
  * class for thread control with pause and restart functionality
+ * 
+ * A poller can run in its own thread with run(), or be added to a {@link PollerScheduler} which
+ * calls runOnce() at the poller's period. The run time of every poll is recorded in the histogram
+ * "poller." followed by the class name.
  *
  */
 public abstract class ThreadControl implements Runnable{
-  protected static int WAIT_TIME = 100;
+  protected volatile int waitTime = 100; // period of this poller in ms, set from other threads
   protected boolean isStarted;
   protected Object lockObject = new Object();
   protected boolean shouldWait;
+  private final LatencyHistogram runTime = Metrics.histogram("poller." + getClass().getSimpleName());
   
   /**
    * run method implemented from Runnable class,
@@ -20,11 +28,11 @@ public abstract class ThreadControl implements Runnable{
     try {
       while (true) {
         if (!isStarted) {
-          Sound.beepSequence();
+          Game.getPlatform().beepSequence();
           wait();
         } else {
-          runMethod();
-          wait(WAIT_TIME);
+          runOnce();
+          Clock.wait(this, waitTime);
         }
       }
     } catch (InterruptedException e) {
@@ -40,6 +48,22 @@ public abstract class ThreadControl implements Runnable{
     return this.isStarted;
   }
   
+  /**
+   * get the period of this poller
+   * @return: the period in ms
+   */
+  public int getPeriod() {
+    return waitTime;
+  }
+
+  /**
+   * set the period of this poller when it runs in its own thread
+   * @param period: the period in ms
+   */
+  public void setPeriod(int period) {
+    waitTime = period;
+  }
+
   /**
    * start a paused thread or stop a runing thread
    * @param start
@@ -85,5 +109,14 @@ public abstract class ThreadControl implements Runnable{
     }
   }
   
+  /**
+   * poll once and record how long it took
+   */
+  public void runOnce() {
+    long start = Clock.nanos();
+    runMethod();
+    runTime.record(Clock.nanos() - start);
+  }
+
   protected abstract void runMethod();
 }
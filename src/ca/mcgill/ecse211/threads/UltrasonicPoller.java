@@ -1,6 +1,7 @@
 package ca.mcgill.ecse211.threads;
 
-import lejos.robotics.SampleProvider;
+import ca.mcgill.ecse211.hardware.SampleSource;
+import ca.mcgill.ecse211.odometer.OdometerData;
 
 /**
  * This class implements the Ultrasonic Sensor Poller for our Wall Follower.
@@ -13,37 +14,54 @@ import lejos.robotics.SampleProvider;
  * 
  */
 public class UltrasonicPoller extends ThreadControl{
-  private SampleProvider us;
+  private SampleSource us;
   private SensorData cont;
   private float[] usData;
+  private OdometerData odometer; // tags each sample with the heading, null if not set
+  private final double[] pose = new double[3];
 
   /**
    * This constructor creates an instance of the UltrasonicPoller class to provide distance data
    * from an ultrasonic sensor to our Wall Follower.
    * 
-   * @param us a SampleProvider class instance that helps us to store an array of ultrasonic sensor
+   * @param us a SampleSource class instance that helps us to store an array of ultrasonic sensor
    *        data.
    * @param usData an array of distance data to be used by our Wall Follower's
    *        UltrasonicControllers.
    * @param cont a BangBangController or PController instance that has accumulated distance data
    *        stored in usData passed to it.
    */
-  public UltrasonicPoller(SampleProvider us, float[] usData, SensorData cont) {
+  public UltrasonicPoller(SampleSource us, float[] usData, SensorData cont) {
     this.us = us;
     this.cont = cont;
     this.usData = usData;
     isStarted = true;
-    WAIT_TIME = 30;
+    waitTime = 30;
   }
   
+  /**
+   * Tags every sample with the heading of the robot read right after it, so a localizer can tell
+   * where the sensor was pointing without reading the odometer later.
+   * 
+   * @param odometer the odometer to read the heading from
+   */
+  public void setOdometer(OdometerData odometer) {
+    this.odometer = odometer;
+  }
+
   /**
    * get us sensor data
    */
   protected void runMethod() {
     us.fetchSample(usData, 0); // acquire data
-    // get distance from buffer, multiply by 100 for convenience and allow it to be cast to
-    // int
-    int distance = (int) (usData[0] * 100.0);
-    cont.setD(distance); // now take action depending on value
+    double heading = Double.NaN;
+    if (odometer != null) {
+      odometer.readInto(pose);
+      heading = pose[2];
+    }
+    // get distance from buffer, multiply by 100 for convenience. The sensor resolves less than
+    // a cm, so the distance is not cast to int
+    double distance = usData[0] * 100.0;
+    cont.setD(distance, heading); // now take action depending on value
   }
 }